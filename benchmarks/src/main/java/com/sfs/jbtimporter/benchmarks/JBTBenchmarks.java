@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+
+import com.sfs.jbtimporter.JBTException;
+import com.sfs.jbtimporter.JBTProcessor;
+
+/**
+ * The Class JBTBenchmarks.
+ * 
+ * The setup shared by the benchmarks, creating processors and temporary
+ * export directories.
+ */
+public final class JBTBenchmarks {
+
+    /** The Jira base url of the processors, never connected to. */
+    public static final String BASE_URL = "http://localhost:8080/";
+
+    /**
+     * Instantiates a new JBT benchmarks.
+     */
+    private JBTBenchmarks() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates a processor for the export directory.
+     *
+     * @param exportDir the export directory
+     * @param baseUrl the Jira base url
+     * @return the processor
+     * @throws JBTException the jBT exception
+     */
+    public static JBTProcessor createProcessor(final File exportDir, final String baseUrl)
+            throws JBTException {
+        return new JBTProcessor("admin", "admin", baseUrl,
+                exportDir.getAbsolutePath(), "", false);
+    }
+
+    /**
+     * Gets the special characters the importer escapes.
+     *
+     * @return the special characters
+     * @throws JBTException the jBT exception
+     */
+    public static char[] getSpecialCharacters() throws JBTException {
+
+        final JBTProcessor jbt = createProcessor(new File("."), BASE_URL);
+        try {
+            final Set<Character> keys = jbt.getSpecialCharacterMap().keySet();
+            final char[] characters = new char[keys.size()];
+            int i = 0;
+            for (Character c : keys) {
+                characters[i++] = c.charValue();
+            }
+            return characters;
+        } finally {
+            jbt.shutdown();
+        }
+    }
+
+    /**
+     * Creates a temporary export directory.
+     *
+     * @return the directory
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static File createExportDirectory() throws IOException {
+        return Files.createTempDirectory("jbt-export").toFile();
+    }
+
+    /**
+     * Delete a directory and everything in it.
+     *
+     * @param file the file or directory
+     */
+    public static void delete(final File file) {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
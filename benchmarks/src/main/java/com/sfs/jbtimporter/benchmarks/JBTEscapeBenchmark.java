@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sfs.jbtimporter.JBTEscapingWriter;
+import com.sfs.jbtimporter.JBTException;
+import com.sfs.jbtimporter.JBTProcessor;
+
+/**
+ * The Class JBTEscapeBenchmark.
+ * 
+ * Measures escaping the special characters of transformed output, as the
+ * XSLT serializer writes it through the escaping writer during a
+ * transformation, both as strings and as character arrays.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JBTEscapeBenchmark {
+
+    /** The size in characters of the text. */
+    @Param({"65536" })
+    private int size;
+
+    /** The proportion of special characters in the text. */
+    @Param({"0.0", "0.01", "0.1" })
+    private double specialRatio;
+
+    /** The text. */
+    private String text;
+
+    /** The text as a character array. */
+    private char[] chars;
+
+    /** The buffer the escaped text is written to. */
+    private CharArrayWriter buffer;
+
+    /** The escaping writer. */
+    private Writer writer;
+
+    /** The processor. */
+    private JBTProcessor jbt;
+
+    /**
+     * Generate the text.
+     *
+     * @throws JBTException the jBT exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws JBTException {
+        final JBTExportGenerator generator = new JBTExportGenerator(
+                JBTBenchmarks.getSpecialCharacters(), this.specialRatio);
+        this.text = generator.createText(new Random(1), this.size);
+        this.chars = this.text.toCharArray();
+        this.buffer = new CharArrayWriter(this.size * 2);
+        this.jbt = JBTBenchmarks.createProcessor(
+                new File("."), JBTBenchmarks.BASE_URL);
+        this.writer = new JBTEscapingWriter(this.buffer, this.jbt.getCharacterEscaper());
+    }
+
+    /**
+     * Shutdown the processor.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.jbt.shutdown();
+    }
+
+    /**
+     * Escape the text written as a string.
+     *
+     * @return the size of the escaped text
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public int escapeString() throws IOException {
+        this.buffer.reset();
+        this.writer.write(this.text, 0, this.text.length());
+        return this.buffer.size();
+    }
+
+    /**
+     * Escape the text written as a character array.
+     *
+     * @return the size of the escaped text
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public int escapeChars() throws IOException {
+        this.buffer.reset();
+        this.writer.write(this.chars, 0, this.chars.length);
+        return this.buffer.size();
+    }
+}
@@ -0,0 +1,223 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * The Class JBTExportGenerator.
+ * 
+ * Generates synthetic BugTrack exports for the benchmarks, an index.xml
+ * and a Jelly script file for each bug, laid out as the importer expects.
+ * The scripts are filled with comment text containing a proportion of the
+ * special characters the importer escapes. The content is generated from
+ * a fixed seed, so the same arguments always produce the same export.
+ * 
+ * Run from the command line to generate an export on disk:
+ * java -cp benchmarks.jar com.sfs.jbtimporter.benchmarks.JBTExportGenerator
+ * export_directory bugs [issue_size] [special_ratio]
+ */
+public final class JBTExportGenerator {
+
+    /** The default size in characters of each issue script. */
+    public static final int DEFAULT_ISSUE_SIZE = 4096;
+
+    /** The default proportion of special characters in the text. */
+    public static final double DEFAULT_SPECIAL_RATIO = 0.01;
+
+    /** The seed of the generated content. */
+    private static final long SEED = 20100101L;
+
+    /** The words the text is made of. */
+    private static final String[] WORDS = {
+        "the", "issue", "occurs", "when", "saving", "a", "record", "with",
+        "an", "attachment", "fails", "to", "load", "after", "upgrade", "and",
+        "server", "returns", "error", "page", "user", "reports", "screen",
+        "field", "value", "is", "not", "updated", "in", "report", "export"
+    };
+
+    /** The special characters the text contains. */
+    private final char[] specialCharacters;
+
+    /** The proportion of special characters in the text. */
+    private final double specialRatio;
+
+    /**
+     * Instantiates a new JBT export generator.
+     *
+     * @param specialCharactersValue the special characters the text contains
+     * @param specialRatioValue the proportion of special characters
+     */
+    public JBTExportGenerator(final char[] specialCharactersValue,
+            final double specialRatioValue) {
+        this.specialCharacters = specialCharactersValue.clone();
+        this.specialRatio = specialRatioValue;
+    }
+
+    /**
+     * Generate an export, the index and the script of every bug.
+     *
+     * @param exportDir the export directory
+     * @param bugs the number of bugs
+     * @param issueSize the size in characters of each issue script
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void generate(final File exportDir, final int bugs, final int issueSize)
+            throws IOException {
+
+        writeIndex(exportDir, bugs);
+        for (int id = 1; id <= bugs; id++) {
+            final File bugDir = new File(exportDir, "bugs/" + id);
+            bugDir.mkdirs();
+            this.writeIssue(new File(bugDir, id + ".xml"), id, issueSize);
+        }
+    }
+
+    /**
+     * Write the index.xml of an export, without the scripts of the bugs.
+     *
+     * @param exportDir the export directory
+     * @param bugs the number of bugs
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static void writeIndex(final File exportDir, final int bugs)
+            throws IOException {
+
+        exportDir.mkdirs();
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(new File(exportDir, "index.xml")), "UTF-8"));
+        try {
+            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<index>\n");
+            for (int id = 1; id <= bugs; id++) {
+                writer.write("  <bug id=\"" + id + "\" base=\"bugs/" + id + "\">");
+                writer.write("<file>attachment-" + id + ".txt</file>");
+                writer.write("<file primary=\"true\">" + id + ".xml</file>");
+                writer.write("</bug>\n");
+            }
+            writer.write("</index>\n");
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Write the Jelly script of an issue.
+     *
+     * @param file the file
+     * @param id the issue id
+     * @param size the size in characters of the script
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void writeIssue(final File file, final int id, final int size)
+            throws IOException {
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.write(this.createIssue(id, size));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Creates the Jelly script of an issue, an issue with comments added
+     * until it reaches the size.
+     *
+     * @param id the issue id
+     * @param size the approximate size in characters of the script
+     * @return the script
+     */
+    public String createIssue(final int id, final int size) {
+
+        final Random random = new Random(SEED + id);
+        final StringBuilder script = new StringBuilder(size + 256);
+        script.append("<JiraJelly xmlns:jira=\"jelly:com.atlassian.jira.jelly."
+                + "enterprise.JiraTagLib\" xmlns:j=\"jelly:core\">\n");
+        script.append("  <jira:CreateIssue project-key=\"BT\" issueType=\"Bug\" "
+                + "summary=\"" + this.createText(random, 60) + "\" "
+                + "reporter=\"user" + id % 50 + "\" issueKeyVar=\"key\">\n");
+        script.append("    <jira:AddComment comment=\"Imported from BugTrack #" 
+                + id + "\"/>\n");
+        while (script.length() < size) {
+            script.append("    <jira:AddComment comment=\"");
+            script.append(this.createText(random, 40 + random.nextInt(400)));
+            script.append("\"/>\n");
+        }
+        script.append("  </jira:CreateIssue>\n");
+        script.append("</JiraJelly>\n");
+        return script.toString();
+    }
+
+    /**
+     * Creates text of words, with the proportion of special characters.
+     *
+     * @param random the random source
+     * @param length the approximate length of the text
+     * @return the text
+     */
+    public String createText(final Random random, final int length) {
+
+        final StringBuilder text = new StringBuilder(length + 16);
+        while (text.length() < length) {
+            if (text.length() > 0) {
+                text.append(' ');
+            }
+            final String word = WORDS[random.nextInt(WORDS.length)];
+            for (int i = 0; i < word.length(); i++) {
+                if (this.specialCharacters.length > 0
+                        && random.nextDouble() < this.specialRatio) {
+                    text.append(this.specialCharacters[
+                            random.nextInt(this.specialCharacters.length)]);
+                } else {
+                    text.append(word.charAt(i));
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * The main method, generating an export on disk.
+     *
+     * @param args the arguments
+     * @throws Exception the exception
+     */
+    public static void main(final String[] args) throws Exception {
+
+        if (args.length < 2) {
+            System.out.println("Usage: export_directory bugs "
+                    + "[issue_size] [special_ratio]");
+            return;
+        }
+        final int bugs = Integer.parseInt(args[1]);
+        final int issueSize = args.length > 2
+                ? Integer.parseInt(args[2]) : DEFAULT_ISSUE_SIZE;
+        final double ratio = args.length > 3
+                ? Double.parseDouble(args[3]) : DEFAULT_SPECIAL_RATIO;
+
+        final JBTExportGenerator generator = new JBTExportGenerator(
+                JBTBenchmarks.getSpecialCharacters(), ratio);
+        generator.generate(new File(args[0]), bugs, issueSize);
+        System.out.println("Generated " + bugs + " bugs in " + args[0]);
+    }
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sfs.jbtimporter.JBTException;
+import com.sfs.jbtimporter.JBTProcessor;
+
+/**
+ * The Class JBTFileLoadBenchmark.
+ * 
+ * Measures reading an issue file into memory with loadXmlDataFile, from a
+ * kilobyte to the sizes of the largest BugTrack issues.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JBTFileLoadBenchmark {
+
+    /** The size in characters of the issue file. */
+    @Param({"1024", "65536", "1048576", "16777216" })
+    private int fileSize;
+
+    /** The export directory. */
+    private File exportDir;
+
+    /** The issue file. */
+    private File issueFile;
+
+    /** The processor. */
+    private JBTProcessor jbt;
+
+    /**
+     * Generate the issue file.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws JBTException the jBT exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, JBTException {
+        this.exportDir = JBTBenchmarks.createExportDirectory();
+        this.issueFile = new File(this.exportDir, "1.xml");
+        new JBTExportGenerator(JBTBenchmarks.getSpecialCharacters(),
+                JBTExportGenerator.DEFAULT_SPECIAL_RATIO)
+                .writeIssue(this.issueFile, 1, this.fileSize);
+        this.jbt = JBTBenchmarks.createProcessor(this.exportDir, JBTBenchmarks.BASE_URL);
+    }
+
+    /**
+     * Delete the issue file.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.jbt.shutdown();
+        JBTBenchmarks.delete(this.exportDir);
+    }
+
+    /**
+     * Load the issue file.
+     *
+     * @return the xml data
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public String loadXmlDataFile() throws IOException {
+        return this.jbt.loadXmlDataFile(this.issueFile.getPath());
+    }
+}
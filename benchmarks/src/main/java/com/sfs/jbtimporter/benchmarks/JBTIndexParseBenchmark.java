@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.SAXException;
+
+import com.sfs.jbtimporter.JBTException;
+import com.sfs.jbtimporter.JBTIssue;
+import com.sfs.jbtimporter.JBTIssueHandler;
+import com.sfs.jbtimporter.JBTProcessor;
+
+/**
+ * The Class JBTIndexParseBenchmark.
+ * 
+ * Measures streaming the index.xml of an export with parseXmlIndex, from
+ * a thousand to a million bugs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JBTIndexParseBenchmark {
+
+    /** The number of bugs in the index. */
+    @Param({"1000", "10000", "100000", "1000000" })
+    private int bugs;
+
+    /** The export directory. */
+    private File exportDir;
+
+    /** The processor. */
+    private JBTProcessor jbt;
+
+    /**
+     * Generate the index.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws JBTException the jBT exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, JBTException {
+        this.exportDir = JBTBenchmarks.createExportDirectory();
+        JBTExportGenerator.writeIndex(this.exportDir, this.bugs);
+        this.jbt = JBTBenchmarks.createProcessor(this.exportDir, JBTBenchmarks.BASE_URL);
+    }
+
+    /**
+     * Delete the index.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.jbt.shutdown();
+        JBTBenchmarks.delete(this.exportDir);
+    }
+
+    /**
+     * Parse the index, counting the issues read.
+     *
+     * @return the number of issues
+     * @throws SAXException the SAX exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public int parseXmlIndex() throws SAXException, IOException {
+
+        final int[] count = new int[1];
+        this.jbt.parseXmlIndex(new JBTIssueHandler() {
+            public void handleIssue(final JBTIssue issue) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,211 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+/**
+ * The Class JBTJellyPages.
+ * 
+ * The HTML pages returned by Jira's Jelly runner, modelled on those of
+ * Jira 4: the page holding the atl_token security key, the page with the
+ * output of a script, the page with a script exception, the page
+ * returned when the security key is rejected and the login page returned
+ * when the username or password is wrong. The form is returned with
+ * an empty script, the output of the script follows it escaped.
+ */
+public final class JBTJellyPages {
+
+    /** The text Jira reports when a file cannot be attached. */
+    public static final String ATTACHMENT_ERROR = 
+        "Unable to make temporary copy of file";
+
+    /** The text Jira reports when an issue cannot be transitioned. */
+    public static final String TRANSITION_ERROR = 
+        "that is not a valid workflow transition for the";
+
+    /** The text of the page returned when the security key is rejected. */
+    public static final String REJECTED_KEY_MARKER = "XSRF Security Token Missing";
+
+    /** The markers the importer looks for in a rejected key page. */
+    public static final String[] REJECTED_KEY_MARKERS = {
+        REJECTED_KEY_MARKER, "XSRF Security Token Invalid",
+        "missing form token", "invalid form token"
+    };
+
+    /** The header of every page. */
+    private static final String HEADER = "<!DOCTYPE html PUBLIC \"-//W3C//DTD "
+            + "HTML 4.01 Transitional//EN\">\n<html>\n<head>\n"
+            + "<title>Jelly Runner - Jira</title>\n"
+            + "<meta http-equiv=\"Content-Type\" content=\"text/html; "
+            + "charset=UTF-8\">\n"
+            + "<link rel=\"stylesheet\" type=\"text/css\" "
+            + "href=\"/s/en_US/styles/combined.css\" media=\"all\">\n"
+            + "</head>\n<body id=\"jira\" class=\"type-a\">\n"
+            + "<div id=\"header\"><div id=\"logo\"><a href=\"/secure/Dashboard.jspa\">"
+            + "<img src=\"/images/jira111x30.png\" alt=\"Jira\"></a></div></div>\n";
+
+    /** The footer of every page. */
+    private static final String FOOTER = "<div class=\"footer\">Powered by a free "
+            + "Atlassian Jira open source license</div>\n</body>\n</html>\n";
+
+    /**
+     * Instantiates a new JBT jelly pages.
+     */
+    private JBTJellyPages() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Gets the page holding the security key.
+     *
+     * @param token the atl_token security key
+     * @return the page
+     */
+    public static String keyPage(final String token) {
+        return HEADER + form(token) + FOOTER;
+    }
+
+    /**
+     * Gets the page with the output of a script that ran.
+     *
+     * @param token the atl_token security key
+     * @param output the output of the script
+     * @return the page
+     */
+    public static String outputPage(final String token, final String output) {
+        return HEADER + form(token)
+                + "<table class=\"jiraform maxWidth\"><tr><td class=\"jiraformheader\">"
+                + "<h3 class=\"formtitle\">Results</h3></td></tr>\n"
+                + "<tr><td class=\"jiraformbody\"><pre>"
+                + "&lt;JiraJelly xmlns:jira=&quot;jelly:com.atlassian.jira.jelly."
+                + "enterprise.JiraTagLib&quot; xmlns:j=&quot;jelly:core&quot;&gt;"
+                + escape(output) + "&lt;/JiraJelly&gt;</pre></td></tr></table>\n"
+                + FOOTER;
+    }
+
+    /**
+     * Gets the page with the exception thrown by a script.
+     *
+     * @param token the atl_token security key
+     * @param message the message of the exception
+     * @return the page
+     */
+    public static String exceptionPage(final String token, final String message) {
+        return HEADER + form(token)
+                + "<div class=\"errorArea\" id=\"scriptException\">"
+                + "<h3>Script Exception</h3>"
+                + "org.apache.commons.jelly.JellyTagException: " + escape(message)
+                + "<BR>\tat org.apache.commons.jelly.impl.TagScript.run(TagScript.java:279)"
+                + "<BR>\tat org.apache.commons.jelly.impl.ScriptBlock.run("
+                + "ScriptBlock.java:95)</div>\n"
+                + FOOTER;
+    }
+
+    /**
+     * Gets the page returned when the security key is rejected.
+     *
+     * @return the page
+     */
+    public static String rejectedKeyPage() {
+        return HEADER + "<div class=\"aui-message warning\"><p class=\"title\">"
+                + REJECTED_KEY_MARKER + "</p><p>Jira could not complete this action "
+                + "due to a missing form token.</p></div>\n" + FOOTER;
+    }
+
+    /**
+     * Gets the login page returned when the username or password is wrong.
+     *
+     * @return the page
+     */
+    public static String loginPage() {
+        return HEADER + "<form action=\"/login.jsp\" method=\"post\" name=\"loginform\">\n"
+                + "<div class=\"aui-message error\">Sorry, your username and password "
+                + "are incorrect - please try again.</div>\n"
+                + "<input type=\"text\" name=\"os_username\">\n"
+                + "<input type=\"password\" name=\"os_password\">\n"
+                + "<input type=\"submit\" name=\"login\" value=\"Log In\">\n</form>\n"
+                + FOOTER;
+    }
+
+    /**
+     * Gets the message of an attachment failure.
+     *
+     * @param fileName the name of the file
+     * @return the message
+     */
+    public static String attachmentFailure(final String fileName) {
+        return ATTACHMENT_ERROR + " " + fileName + " to the attachment directory.";
+    }
+
+    /**
+     * Gets the message of a transition failure.
+     *
+     * @param issueKey the key of the issue
+     * @return the message
+     */
+    public static String transitionFailure(final String issueKey) {
+        return "Found workflow transition with name/id 'Resolve Issue' but "
+                + TRANSITION_ERROR + " current state of issue '" + issueKey + "'.";
+    }
+
+    /**
+     * Gets the form of the Jelly runner, holding the security key.
+     *
+     * @param token the atl_token security key
+     * @return the form
+     */
+    private static String form(final String token) {
+        return "<form action=\"JellyRunner.jspa\" method=\"post\" name=\"jiraform\">\n"
+                + "<input type=\"hidden\" name=\"atl_token\" value=\"" + token + "\">\n"
+                + "<table class=\"jiraform maxWidth\"><tr><td class=\"jiraformheader\">"
+                + "<h3 class=\"formtitle\">Jelly Runner</h3></td></tr>\n"
+                + "<tr><td class=\"fieldLabelArea\">Jelly script:</td>"
+                + "<td class=\"fieldValueArea\"><textarea name=\"script\" rows=\"20\" "
+                + "cols=\"80\"></textarea></td></tr>\n"
+                + "<tr><td class=\"fullyCentered jiraformfooter\"><input type=\"submit\" "
+                + "name=\"Run now\" value=\"Run now\"></td></tr></table>\n</form>\n";
+    }
+
+    /**
+     * Escape text for HTML.
+     *
+     * @param text the text
+     * @return the escaped text
+     */
+    private static String escape(final String text) {
+        final StringBuilder escaped = new StringBuilder(text.length() + 64);
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    escaped.append("&lt;");
+                    break;
+                case '>':
+                    escaped.append("&gt;");
+                    break;
+                case '&':
+                    escaped.append("&amp;");
+                    break;
+                case '"':
+                    escaped.append("&quot;");
+                    break;
+                default:
+                    escaped.append(c);
+                    break;
+            }
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,255 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.sfs.jbtimporter.JBTImporter;
+
+/**
+ * The Class JBTLoadTest.
+ * 
+ * Drives the full importer against the mock Jira server and reports the
+ * throughput. An export is generated, the mock server is started with the
+ * requested latency, failures and concurrency limit, and the importer is
+ * run in this JVM as it is from the command line. Arguments the harness
+ * does not recognise are passed to the importer, so the importer options
+ * under test, such as the threads, batch size or transport, can be varied
+ * between runs. The run fails if any issue was created more than once.
+ * 
+ * Usage: java -cp benchmarks.jar com.sfs.jbtimporter.benchmarks.JBTLoadTest
+ * [--issues=n] [--issue-size=chars] [--export=directory] [--latency=ms]
+ * [--jitter=ms] [--max-concurrency=n] [--error-rate=fraction]
+ * [--attachment-failure-rate=fraction] [--transition-failure-rate=fraction]
+ * [--key-rotation=scripts] [importer options]
+ */
+public final class JBTLoadTest {
+
+    /** The default number of issues. */
+    private static final int DEFAULT_ISSUES = 1000;
+
+    /** The default latency of the mock server in milliseconds. */
+    private static final long DEFAULT_LATENCY = 50;
+
+    /** The metrics file written when the export is temporary. */
+    private static final String METRICS_FILE = "load-test.metrics.json";
+
+    /** The bytes in a megabyte. */
+    private static final double BYTES_PER_MEGABYTE = 1024.0 * 1024.0;
+
+    /** The number of issues to import. */
+    private int issues = DEFAULT_ISSUES;
+
+    /** The size in characters of each issue script. */
+    private int issueSize = JBTExportGenerator.DEFAULT_ISSUE_SIZE;
+
+    /** The export directory, or null to generate a temporary export. */
+    private File exportDir;
+
+    /** The latency in milliseconds. */
+    private long latency = DEFAULT_LATENCY;
+
+    /** The latency jitter in milliseconds. */
+    private long jitter = 0;
+
+    /** The concurrency limit of the mock server. */
+    private int maxConcurrency = JBTMockJira.DEFAULT_MAX_CONCURRENCY;
+
+    /** The server error rate. */
+    private double errorRate = 0;
+
+    /** The attachment failure rate. */
+    private double attachmentFailureRate = 0;
+
+    /** The transition failure rate. */
+    private double transitionFailureRate = 0;
+
+    /** The number of scripts run before the security key changes. */
+    private int keyRotation = 0;
+
+    /** The arguments passed to the importer. */
+    private final List<String> importerArgs = new ArrayList<String>();
+
+    /**
+     * Instantiates a new JBT load test.
+     */
+    private JBTLoadTest() {
+        super();
+    }
+
+    /**
+     * The main method.
+     *
+     * @param args the arguments
+     * @throws Exception the exception
+     */
+    public static void main(final String[] args) throws Exception {
+        final JBTLoadTest loadTest = new JBTLoadTest();
+        loadTest.processArguments(args);
+        loadTest.run();
+    }
+
+    /**
+     * Process the arguments, keeping those not recognised for the importer.
+     *
+     * @param args the arguments
+     */
+    private void processArguments(final String[] args) {
+
+        for (String s : args) {
+            if (s.startsWith("--issues=")) {
+                this.issues = Integer.parseInt(s.substring(9));
+            } else if (s.startsWith("--issue-size=")) {
+                this.issueSize = Integer.parseInt(s.substring(13));
+            } else if (s.startsWith("--export=")) {
+                this.exportDir = new File(s.substring(9));
+            } else if (s.startsWith("--latency=")) {
+                this.latency = Long.parseLong(s.substring(10));
+            } else if (s.startsWith("--jitter=")) {
+                this.jitter = Long.parseLong(s.substring(9));
+            } else if (s.startsWith("--max-concurrency=")) {
+                this.maxConcurrency = Integer.parseInt(s.substring(18));
+            } else if (s.startsWith("--error-rate=")) {
+                this.errorRate = Double.parseDouble(s.substring(13));
+            } else if (s.startsWith("--attachment-failure-rate=")) {
+                this.attachmentFailureRate = Double.parseDouble(s.substring(26));
+            } else if (s.startsWith("--transition-failure-rate=")) {
+                this.transitionFailureRate = Double.parseDouble(s.substring(26));
+            } else if (s.startsWith("--key-rotation=")) {
+                this.keyRotation = Integer.parseInt(s.substring(15));
+            } else {
+                this.importerArgs.add(s);
+            }
+        }
+    }
+
+    /**
+     * Generate the export, run the import against the mock server and
+     * report the throughput.
+     *
+     * @throws Exception the exception
+     */
+    private void run() throws Exception {
+
+        final boolean temporary = this.exportDir == null;
+        final File dir = temporary ? JBTBenchmarks.createExportDirectory() : this.exportDir;
+
+        final JBTMockJira jira = new JBTMockJira(0, this.maxConcurrency);
+        jira.setLatency(this.latency, this.jitter);
+        jira.setErrorRate(this.errorRate);
+        jira.setAttachmentFailureRate(this.attachmentFailureRate);
+        jira.setTransitionFailureRate(this.transitionFailureRate);
+        jira.setKeyRotation(this.keyRotation);
+        try {
+            System.out.println("Generating " + this.issues + " issues in " + dir);
+            new JBTExportGenerator(JBTBenchmarks.getSpecialCharacters(),
+                    JBTExportGenerator.DEFAULT_SPECIAL_RATIO)
+                    .generate(dir, this.issues, this.issueSize);
+            // Start each run from a clean import
+            new File(dir, "import.journal").delete();
+            new File(dir, "import.manifest").delete();
+
+            jira.start();
+
+            final List<String> args = new ArrayList<String>();
+            args.add("-u=admin");
+            args.add("-p=admin");
+            args.add("-h=" + jira.getBaseUrl());
+            args.add("-d=" + dir.getPath());
+            if (temporary && !this.hasImporterArg("--metrics=")) {
+                // Keep the metrics of the import once the export is deleted
+                args.add("--metrics=" + METRICS_FILE);
+            }
+            args.addAll(this.importerArgs);
+
+            final long start = System.nanoTime();
+            JBTImporter.main(args.toArray(new String[args.size()]));
+            final double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+            this.report(jira, seconds);
+            this.checkIssuesCreated(jira);
+        } finally {
+            jira.stop();
+            if (temporary) {
+                JBTBenchmarks.delete(dir);
+            }
+        }
+    }
+
+    /**
+     * Checks if an option was passed to the importer.
+     *
+     * @param prefix the prefix of the option
+     * @return true, if the option was passed
+     */
+    private boolean hasImporterArg(final String prefix) {
+        for (String arg : this.importerArgs) {
+            if (arg.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check that no issue was created more than once, as the mock server
+     * creates at most one issue for each issue of the export.
+     *
+     * @param jira the mock server
+     */
+    private void checkIssuesCreated(final JBTMockJira jira) {
+        if (jira.getIssuesCreated() > this.issues) {
+            throw new IllegalStateException(jira.getIssuesCreated() 
+                    + " issues were created from an export of " + this.issues
+                    + ", some issues were imported more than once");
+        }
+    }
+
+    /**
+     * Report the throughput of the import.
+     *
+     * @param jira the mock server
+     * @param seconds the time taken by the import in seconds
+     */
+    private void report(final JBTMockJira jira, final double seconds) {
+
+        final StringBuilder message = new StringBuilder();
+        message.append("-------------------------------------\n");
+        message.append("Load test\n");
+        message.append("-------------------------------------\n");
+        message.append("Importer arguments: " + this.importerArgs + "\n");
+        message.append("Mock latency: " + this.latency + "ms (+" + this.jitter 
+                + "ms jitter), concurrency limit: " + this.maxConcurrency + "\n");
+        message.append(String.format("Elapsed: %.2fs%n", seconds));
+        message.append(String.format("Issues created: %d (%.1f/s)%n",
+                jira.getIssuesCreated(), jira.getIssuesCreated() / seconds));
+        message.append(String.format("Scripts run: %d (%.1f/s)%n",
+                jira.getScriptsRun(), jira.getScriptsRun() / seconds));
+        message.append(String.format("Received: %.1fMB (%.2fMB/s)%n",
+                jira.getBytesReceived() / BYTES_PER_MEGABYTE,
+                jira.getBytesReceived() / BYTES_PER_MEGABYTE / seconds));
+        message.append("Key requests: " + jira.getKeyRequests() 
+                + ", rejected keys: " + jira.getRejectedKeys() + "\n");
+        message.append("Server errors: " + jira.getServerErrors() 
+                + ", attachment failures: " + jira.getAttachmentFailures() 
+                + ", transition failures: " + jira.getTransitionFailures() + "\n");
+        message.append("Most requests in flight: " + jira.getMaxRequestsInFlight() + "\n");
+
+        System.out.println(message.toString());
+    }
+}
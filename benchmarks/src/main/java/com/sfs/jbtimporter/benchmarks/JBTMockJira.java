@@ -0,0 +1,573 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class JBTMockJira.
+ * 
+ * An embedded stand-in for the Jelly runner of a Jira server, so the
+ * importer can be run end to end and load tested without a real Jira.
+ * JellyRunner!default.jspa returns the page holding the atl_token security
+ * key and JellyRunner.jspa runs a script, returning its output or a script
+ * exception, as Jira does. Only the loopback address is bound.
+ * 
+ * Each request is delayed by the latency, plus a random jitter, and at most
+ * the concurrency limit of requests are handled at once, the rest wait as
+ * they would for the request threads of Jira. Failures are injected at the
+ * configured rates: server errors, attachment and transition failures, and
+ * rotation of the security key. Whether an issue fails is decided by the
+ * content of its CreateIssue tag, so an issue that fails in a batch also
+ * fails when it is imported on its own.
+ */
+public class JBTMockJira {
+
+    /** The default concurrency limit. */
+    public static final int DEFAULT_MAX_CONCURRENCY = 16;
+
+    /** The path of the page holding the security key. */
+    private static final String KEY_PATH = "/secure/admin/util/JellyRunner!default.jspa";
+
+    /** The path of the Jelly runner. */
+    private static final String RUNNER_PATH = "/secure/admin/util/JellyRunner.jspa";
+
+    /** The content type of the pages. */
+    private static final String CONTENT_TYPE = "text/html;charset=UTF-8";
+
+    /** The pattern of the issue markers passed through a batch script. */
+    private static final Pattern MARKER = Pattern.compile(
+            "\\[\\[JBT-(START|END):[^\\]]*\\]\\]");
+
+    /** The pattern of the tag creating an issue. */
+    private static final Pattern CREATE_ISSUE = Pattern.compile(
+            "<[\\w-]+:CreateIssue\\b[^>]*>");
+
+    /** The characters of the security key. */
+    private static final String TOKEN_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+
+    static {
+        // The headers and body of a response are written separately, with
+        // Nagle's algorithm on the body waits for the client's delayed ACK.
+        // Read when the first server is created, so set before any is.
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    /** The http server. */
+    private final HttpServer server;
+
+    /** The executor handling the requests, one thread per concurrent request. */
+    private final ExecutorService executor;
+
+    /** The random source of the latency jitter, failures and keys. */
+    private final Random random = new Random(20100101L);
+
+    /** The username. */
+    private String username = "admin";
+
+    /** The password. */
+    private String password = "admin";
+
+    /** The latency of each request in milliseconds. */
+    private volatile long latency = 0;
+
+    /** The maximum random latency added to each request in milliseconds. */
+    private volatile long latencyJitter = 0;
+
+    /** The proportion of requests answered with a server error. */
+    private volatile double errorRate = 0;
+
+    /** The proportion of issues that fail to attach a file. */
+    private volatile double attachmentFailureRate = 0;
+
+    /** The proportion of issues that fail to transition. */
+    private volatile double transitionFailureRate = 0;
+
+    /** The number of scripts run before the security key changes. */
+    private volatile int keyRotation = 0;
+
+    /** The current security key. */
+    private volatile String securityKey;
+
+    /** The requests for the security key. */
+    private final AtomicLong keyRequests = new AtomicLong();
+
+    /** The scripts run. */
+    private final AtomicLong scriptsRun = new AtomicLong();
+
+    /** The issues created. */
+    private final AtomicLong issuesCreated = new AtomicLong();
+
+    /** The requests answered with a server error. */
+    private final AtomicLong serverErrors = new AtomicLong();
+
+    /** The requests with a rejected security key. */
+    private final AtomicLong rejectedKeys = new AtomicLong();
+
+    /** The attachment failures. */
+    private final AtomicLong attachmentFailures = new AtomicLong();
+
+    /** The transition failures. */
+    private final AtomicLong transitionFailures = new AtomicLong();
+
+    /** The bytes received. */
+    private final AtomicLong bytesReceived = new AtomicLong();
+
+    /** The requests being handled. */
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    /** The most requests handled at once. */
+    private final AtomicInteger maxRequestsInFlight = new AtomicInteger();
+
+    /**
+     * Instantiates a new JBT mock jira, bound to the port on localhost.
+     *
+     * @param port the port, zero for any free port
+     * @param maxConcurrency the most requests handled at once
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public JBTMockJira(final int port, final int maxConcurrency) throws IOException {
+        this.securityKey = this.createSecurityKey();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, maxConcurrency));
+        this.server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/", new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+    }
+
+    /**
+     * Start the server.
+     */
+    public final void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stop the server.
+     */
+    public final void stop() {
+        this.server.stop(0);
+        this.executor.shutdownNow();
+    }
+
+    /**
+     * Gets the base url of the server, as passed to the importer.
+     *
+     * @return the base url
+     */
+    public final String getBaseUrl() {
+        return "http://localhost:" + this.server.getAddress().getPort() + "/";
+    }
+
+    /**
+     * Sets the username and password accepted by the server.
+     *
+     * @param usernameValue the username
+     * @param passwordValue the password
+     */
+    public final void setCredentials(final String usernameValue,
+            final String passwordValue) {
+        this.username = usernameValue;
+        this.password = passwordValue;
+    }
+
+    /**
+     * Sets the latency of each request.
+     *
+     * @param latencyValue the latency in milliseconds
+     * @param latencyJitterValue the maximum random latency added
+     */
+    public final void setLatency(final long latencyValue, final long latencyJitterValue) {
+        this.latency = latencyValue;
+        this.latencyJitter = latencyJitterValue;
+    }
+
+    /**
+     * Sets the proportion of requests answered with a server error.
+     *
+     * @param errorRateValue the error rate
+     */
+    public final void setErrorRate(final double errorRateValue) {
+        this.errorRate = errorRateValue;
+    }
+
+    /**
+     * Sets the proportion of issues that fail to attach a file.
+     *
+     * @param attachmentFailureRateValue the attachment failure rate
+     */
+    public final void setAttachmentFailureRate(final double attachmentFailureRateValue) {
+        this.attachmentFailureRate = attachmentFailureRateValue;
+    }
+
+    /**
+     * Sets the proportion of issues that fail to transition.
+     *
+     * @param transitionFailureRateValue the transition failure rate
+     */
+    public final void setTransitionFailureRate(final double transitionFailureRateValue) {
+        this.transitionFailureRate = transitionFailureRateValue;
+    }
+
+    /**
+     * Sets the number of scripts run before the security key changes,
+     * as it does when the session of the importer expires.
+     *
+     * @param keyRotationValue the scripts run per key, zero to never change
+     */
+    public final void setKeyRotation(final int keyRotationValue) {
+        this.keyRotation = keyRotationValue;
+    }
+
+    /**
+     * Gets the requests for the security key.
+     *
+     * @return the key requests
+     */
+    public final long getKeyRequests() {
+        return this.keyRequests.get();
+    }
+
+    /**
+     * Gets the scripts run.
+     *
+     * @return the scripts run
+     */
+    public final long getScriptsRun() {
+        return this.scriptsRun.get();
+    }
+
+    /**
+     * Gets the issues created.
+     *
+     * @return the issues created
+     */
+    public final long getIssuesCreated() {
+        return this.issuesCreated.get();
+    }
+
+    /**
+     * Gets the requests answered with a server error.
+     *
+     * @return the server errors
+     */
+    public final long getServerErrors() {
+        return this.serverErrors.get();
+    }
+
+    /**
+     * Gets the requests with a rejected security key.
+     *
+     * @return the rejected keys
+     */
+    public final long getRejectedKeys() {
+        return this.rejectedKeys.get();
+    }
+
+    /**
+     * Gets the attachment failures.
+     *
+     * @return the attachment failures
+     */
+    public final long getAttachmentFailures() {
+        return this.attachmentFailures.get();
+    }
+
+    /**
+     * Gets the transition failures.
+     *
+     * @return the transition failures
+     */
+    public final long getTransitionFailures() {
+        return this.transitionFailures.get();
+    }
+
+    /**
+     * Gets the bytes received.
+     *
+     * @return the bytes received
+     */
+    public final long getBytesReceived() {
+        return this.bytesReceived.get();
+    }
+
+    /**
+     * Gets the most requests handled at once.
+     *
+     * @return the max requests in flight
+     */
+    public final int getMaxRequestsInFlight() {
+        return this.maxRequestsInFlight.get();
+    }
+
+    /**
+     * Serve a request.
+     *
+     * @param exchange the exchange
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+
+        final int inFlight = this.requestsInFlight.incrementAndGet();
+        int max = this.maxRequestsInFlight.get();
+        while (inFlight > max && !this.maxRequestsInFlight.compareAndSet(max, inFlight)) {
+            max = this.maxRequestsInFlight.get();
+        }
+        try {
+            final String path = exchange.getRequestURI().getPath();
+            if (!KEY_PATH.equals(path) && !RUNNER_PATH.equals(path)) {
+                respond(exchange, 404, "<html><body>Not found</body></html>");
+                return;
+            }
+            final Map<String, String> data = this.readForm(exchange);
+            this.delay();
+
+            if (this.random.nextDouble() < this.errorRate) {
+                this.serverErrors.incrementAndGet();
+                respond(exchange, 503, "<html><body>Service Unavailable</body></html>");
+                return;
+            }
+            if (!this.username.equals(data.get("os_username"))
+                    || !this.password.equals(data.get("os_password"))) {
+                respond(exchange, 200, JBTJellyPages.loginPage());
+                return;
+            }
+            if (KEY_PATH.equals(path)) {
+                this.keyRequests.incrementAndGet();
+                respond(exchange, 200, JBTJellyPages.keyPage(this.securityKey));
+            } else {
+                respond(exchange, 200, this.runScript(data.get("atl_token"),
+                        data.get("script")));
+            }
+        } finally {
+            this.requestsInFlight.decrementAndGet();
+            exchange.close();
+        }
+    }
+
+    /**
+     * Run a script, returning the page with its output or exception. The
+     * issues of a batch are run in order until one fails.
+     *
+     * @param key the security key supplied
+     * @param script the script
+     * @return the page
+     */
+    private String runScript(final String key, final String script) {
+
+        final String currentKey = this.securityKey;
+        if (!currentKey.equals(key)) {
+            this.rejectedKeys.incrementAndGet();
+            return JBTJellyPages.rejectedKeyPage();
+        }
+        final long run = this.scriptsRun.incrementAndGet();
+        final int rotation = this.keyRotation;
+        if (rotation > 0 && run % rotation == 0) {
+            this.securityKey = this.createSecurityKey();
+        }
+
+        final String body = script == null ? "" : script;
+        final StringBuilder output = new StringBuilder("\n");
+        final Matcher tags = CREATE_ISSUE.matcher(body);
+        final Matcher markers = MARKER.matcher(body);
+        int position = 0;
+
+        while (tags.find(position)) {
+            // Pass through the markers written before this issue
+            position = appendMarkers(markers, output, position, tags.start());
+
+            final double chance = fraction(tags.group());
+            if (chance < this.attachmentFailureRate) {
+                this.attachmentFailures.incrementAndGet();
+                return JBTJellyPages.exceptionPage(currentKey,
+                        JBTJellyPages.attachmentFailure("attachment.txt"));
+            }
+            if (chance < this.attachmentFailureRate + this.transitionFailureRate) {
+                this.transitionFailures.incrementAndGet();
+                return JBTJellyPages.exceptionPage(currentKey,
+                        JBTJellyPages.transitionFailure("BT-"
+                                + (this.issuesCreated.get() + 1)));
+            }
+            this.issuesCreated.incrementAndGet();
+            position = tags.end();
+        }
+        appendMarkers(markers, output, position, body.length());
+
+        return JBTJellyPages.outputPage(currentKey, output.toString());
+    }
+
+    /**
+     * Append the issue markers between the positions to the output.
+     *
+     * @param markers the marker matcher
+     * @param output the output
+     * @param start the position to search from
+     * @param end the position to search to
+     * @return the position after the last marker, or the start
+     */
+    private static int appendMarkers(final Matcher markers, final StringBuilder output,
+            final int start, final int end) {
+
+        int position = start;
+        markers.region(start, end);
+        while (markers.find()) {
+            output.append(markers.group()).append('\n');
+            position = markers.end();
+        }
+        return position;
+    }
+
+    /**
+     * Gets a fraction between zero and one decided by the text, so the
+     * same issue always fails or succeeds.
+     *
+     * @param text the text
+     * @return the fraction
+     */
+    private static double fraction(final String text) {
+        // Spread the bits of the hash code before taking the fraction
+        long hash = text.hashCode() * 0x9E3779B97F4A7C15L;
+        hash ^= hash >>> 32;
+        return (hash & 0xFFFFFFFL) / (double) 0x10000000L;
+    }
+
+    /**
+     * Delay the request by the latency and a random jitter.
+     */
+    private void delay() {
+
+        long delay = this.latency;
+        if (this.latencyJitter > 0) {
+            delay += (long) (this.random.nextDouble() * this.latencyJitter);
+        }
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Read the form posted with the request.
+     *
+     * @param exchange the exchange
+     * @return the form data
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private Map<String, String> readForm(final HttpExchange exchange) throws IOException {
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        final InputStream in = exchange.getRequestBody();
+        try {
+            final byte[] buffer = new byte[8192];
+            int read = in.read(buffer);
+            while (read >= 0) {
+                body.write(buffer, 0, read);
+                read = in.read(buffer);
+            }
+        } finally {
+            in.close();
+        }
+        this.bytesReceived.addAndGet(body.size());
+
+        final Map<String, String> data = new HashMap<String, String>();
+        for (String pair : body.toString("US-ASCII").split("&")) {
+            final int equals = pair.indexOf('=');
+            if (equals > 0) {
+                data.put(decode(pair.substring(0, equals)),
+                        decode(pair.substring(equals + 1)));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Decode a form value.
+     *
+     * @param value the encoded value
+     * @return the value
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    private static String decode(final String value) throws UnsupportedEncodingException {
+        return URLDecoder.decode(value, "UTF-8");
+    }
+
+    /**
+     * Creates a security key in the form used by Jira.
+     *
+     * @return the security key
+     */
+    private String createSecurityKey() {
+
+        final StringBuilder key = new StringBuilder();
+        for (int i = 0; i < 16; i++) {
+            if (i > 0 && i % 4 == 0) {
+                key.append('-');
+            }
+            key.append(TOKEN_CHARACTERS.charAt(
+                    this.random.nextInt(TOKEN_CHARACTERS.length())));
+        }
+        return key + "|" + Long.toHexString(this.random.nextLong()) + "|lin";
+    }
+
+    /**
+     * Send a page in response to the request.
+     *
+     * @param exchange the exchange
+     * @param status the status code
+     * @param page the page
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void respond(final HttpExchange exchange, final int status,
+            final String page) throws IOException {
+
+        final byte[] body = page.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+        exchange.sendResponseHeaders(status, body.length);
+        final OutputStream out = exchange.getResponseBody();
+        try {
+            out.write(body);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sfs.jbtimporter.JBTException;
+import com.sfs.jbtimporter.JBTImportResult;
+import com.sfs.jbtimporter.JBTProcessor;
+import com.sfs.jbtimporter.JBTRequest;
+import com.sfs.jbtimporter.JBTResponse;
+import com.sfs.jbtimporter.JBTResponseScanner;
+import com.sfs.jbtimporter.JBTTransport;
+
+/**
+ * The Class JBTResponseParseBenchmark.
+ * 
+ * Measures parsing the page returned by the Jelly runner: scanning it for
+ * the output or script exception, and the whole of importXML with a
+ * transport that answers from memory, which adds reformatting the HTML of
+ * the result and classifying it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JBTResponseParseBenchmark {
+
+    /** The security key of the pages. */
+    private static final String TOKEN = "B2RK-J4VZ-3X8A-QW1M|bench";
+
+    /** The outcome of the script. */
+    @Param({"SUCCESS", "ATTACHMENT_FAILURE", "TRANSITION_FAILURE" })
+    private String outcome;
+
+    /** The number of issues in the script, a batch if more than one. */
+    @Param({"1", "50" })
+    private int issues;
+
+    /** The page returned by the Jelly runner. */
+    private String page;
+
+    /** The processor. */
+    private JBTProcessor jbt;
+
+    /**
+     * Create the page and the processor.
+     *
+     * @throws JBTException the jBT exception
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws JBTException {
+
+        final StringBuilder output = new StringBuilder("\n");
+        for (int i = 1; i <= this.issues && this.issues > 1; i++) {
+            // The markers a batch passes through Jelly to the output
+            output.append("[[JBT-START:" + i + "]]\n[[JBT-END:" + i + "]]\n");
+        }
+        if ("ATTACHMENT_FAILURE".equals(this.outcome)) {
+            this.page = JBTJellyPages.exceptionPage(TOKEN, 
+                    JBTJellyPages.attachmentFailure("screenshot.png"));
+        } else if ("TRANSITION_FAILURE".equals(this.outcome)) {
+            this.page = JBTJellyPages.exceptionPage(TOKEN, 
+                    JBTJellyPages.transitionFailure("BT-1"));
+        } else {
+            this.page = JBTJellyPages.outputPage(TOKEN, output.toString());
+        }
+
+        this.jbt = JBTBenchmarks.createProcessor(new File("."), JBTBenchmarks.BASE_URL);
+        this.jbt.setTransport(new JBTTransport() {
+            public JBTResponse send(final JBTRequest request,
+                    final JBTResponseScanner scanner) throws IOException {
+                return scanner.scan(new StringReader(page));
+            }
+
+            public CompletableFuture<JBTResponse> sendAsync(final JBTRequest request,
+                    final JBTResponseScanner scanner) {
+                try {
+                    return CompletableFuture.completedFuture(send(request, scanner));
+                } catch (IOException ioe) {
+                    return CompletableFuture.failedFuture(ioe);
+                }
+            }
+
+            public boolean isAsync() {
+                return false;
+            }
+
+            public void shutdown() {
+                // Nothing to release
+            }
+        });
+    }
+
+    /**
+     * Shutdown the processor.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.jbt.shutdown();
+    }
+
+    /**
+     * Scan the page for the output or script exception.
+     *
+     * @return the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    @Benchmark
+    public JBTResponse scanResponse() throws IOException {
+        return JBTResponseScanner.forJellyRunner(JBTJellyPages.REJECTED_KEY_MARKERS)
+                .scan(new StringReader(this.page));
+    }
+
+    /**
+     * Import a script, scanning, reformatting and classifying the page.
+     *
+     * @return the import result
+     */
+    @Benchmark
+    public JBTImportResult importXML() {
+        return this.jbt.importXML(TOKEN, "<JiraJelly/>");
+    }
+}
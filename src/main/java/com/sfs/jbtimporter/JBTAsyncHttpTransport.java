@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The Class JBTAsyncHttpTransport.
+ * 
+ * A non-blocking transport built on the JDK HttpClient. Connections are
+ * driven by the client's selector thread and a small pool of threads, and
+ * sendAsync returns as soon as the request is under way, so the number of
+ * requests in flight is not tied to a thread each. HTTP/2 is used where
+ * Jira offers it, falling back to HTTP/1.1 otherwise.
+ * 
+ * The response is collected as it arrives, without holding a thread, and
+ * scanned once complete; the pages of the Jelly runner are small. The
+ * response timeout of the client only covers the headers, the body must
+ * then arrive within the socket timeout.
+ */
+public class JBTAsyncHttpTransport implements JBTTransport {
+
+    /** The size of the buffer used when encoding the script. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The executor of the client's asynchronous tasks. */
+    private final ExecutorService executor;
+
+    /** The http client. */
+    private final HttpClient httpClient;
+
+    /** The time to wait for a response, null to wait indefinitely. */
+    private final Duration responseTimeout;
+
+    /** The timer that fails a response whose body takes too long. */
+    private final ScheduledThreadPoolExecutor timer;
+
+    /** The handler collecting the body of each response. */
+    private final HttpResponse.BodyHandler<byte[]> bodyHandler;
+
+    /**
+     * Instantiates a new JBT async http transport. The proxy is taken from
+     * the default proxy selector, which reads the http(s).proxyHost and
+     * http(s).proxyPort system properties.
+     *
+     * @param connectTimeout the connect timeout in milliseconds
+     * @param socketTimeout the time to wait for a response in milliseconds,
+     *            zero waits indefinitely
+     */
+    public JBTAsyncHttpTransport(final int connectTimeout, final int socketTimeout) {
+
+        this.executor = Executors.newFixedThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+        final HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .proxy(ProxySelector.getDefault())
+                .executor(this.executor);
+        if (connectTimeout > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeout));
+        }
+        this.httpClient = builder.build();
+        this.responseTimeout = socketTimeout > 0 ? Duration.ofMillis(socketTimeout) : null;
+
+        this.timer = new ScheduledThreadPoolExecutor(1);
+        // The timeout of a body is cancelled as soon as it is complete
+        this.timer.setRemoveOnCancelPolicy(true);
+
+        this.bodyHandler = new HttpResponse.BodyHandler<byte[]>() {
+            public HttpResponse.BodySubscriber<byte[]> apply(
+                    final HttpResponse.ResponseInfo info) {
+                if (responseTimeout == null) {
+                    return HttpResponse.BodySubscribers.ofByteArray();
+                }
+                return new TimeoutBodySubscriber(timer, responseTimeout.toMillis());
+            }
+        };
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#send(com.sfs.jbtimporter.JBTRequest,
+     * com.sfs.jbtimporter.JBTResponseScanner)
+     */
+    public final JBTResponse send(final JBTRequest request,
+            final JBTResponseScanner scanner) throws IOException {
+
+        final CompletableFuture<JBTResponse> future = this.sendAsync(request, scanner);
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for Jira");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#sendAsync(com.sfs.jbtimporter.JBTRequest,
+     * com.sfs.jbtimporter.JBTResponseScanner)
+     */
+    public final CompletableFuture<JBTResponse> sendAsync(final JBTRequest request,
+            final JBTResponseScanner scanner) {
+
+        // The body is counted afresh each time it is opened, as it is retried
+        final AtomicReference<JBTCountingInputStream> sent =
+            new AtomicReference<JBTCountingInputStream>();
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.ofInputStream(
+                new Supplier<InputStream>() {
+                    public InputStream get() {
+                        final JBTCountingInputStream in =
+                            new JBTCountingInputStream(openBody(request));
+                        sent.set(in);
+                        return in;
+                    }
+                });
+        try {
+            // Only a script read from a file is sent chunked
+            final long length = request.getContentLength();
+            if (length > 0) {
+                body = HttpRequest.BodyPublishers.fromPublisher(body, length);
+            }
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(
+                URI.create(request.getUrl()))
+                .header("Content-Type", JBTRequest.CONTENT_TYPE)
+                .POST(body);
+        if (this.responseTimeout != null) {
+            builder.timeout(this.responseTimeout);
+        }
+
+        return this.httpClient.sendAsync(builder.build(), this.bodyHandler)
+                .thenApply(new Function<HttpResponse<byte[]>, JBTResponse>() {
+                    public JBTResponse apply(final HttpResponse<byte[]> response) {
+                        try {
+                            return scan(response, scanner, sent.get());
+                        } catch (IOException ioe) {
+                            throw new CompletionException(ioe);
+                        }
+                    }
+                });
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#isAsync()
+     */
+    public final boolean isAsync() {
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#shutdown()
+     */
+    public final void shutdown() {
+        this.executor.shutdown();
+        this.timer.shutdownNow();
+    }
+
+    /**
+     * Scan the body of the response.
+     *
+     * @param response the response
+     * @param scanner the scanner for the response
+     * @param sent the body of the request as it was sent, or null
+     * @return the scanned response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static JBTResponse scan(final HttpResponse<byte[]> response,
+            final JBTResponseScanner scanner, final JBTCountingInputStream sent)
+            throws IOException {
+
+        if (response.statusCode() >= 500) {
+            // Jira or a proxy in front of it failed, possibly after the
+            // script ran, so this is a transport failure
+            throw new IOException("Jira responded with HTTP status " 
+                    + response.statusCode());
+        }
+        final byte[] body = response.body();
+        final JBTResponse scanned = scanner.scan(new InputStreamReader(
+                new ByteArrayInputStream(body), getCharset(response)));
+        if (sent != null) {
+            scanned.setBytesSent(sent.getCount());
+        }
+        scanned.setBytesReceived(body.length);
+        return scanned;
+    }
+
+    /**
+     * Open the body of the request, the form parameters followed by the
+     * script encoded as it is read.
+     *
+     * @param request the request
+     * @return the body input stream
+     */
+    private static InputStream openBody(final JBTRequest request) {
+
+        try {
+            final InputStream prefix = new ByteArrayInputStream(
+                    request.getEncodedPrefix().getBytes(StandardCharsets.US_ASCII));
+            final Reader script = request.openScript();
+            if (script == null) {
+                return prefix;
+            }
+            return new SequenceInputStream(prefix, new FormEncodingInputStream(script));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException(ioe);
+        }
+    }
+
+    /**
+     * Gets the character set of the response from its content type.
+     *
+     * @param response the response
+     * @return the character set name
+     */
+    private static String getCharset(final HttpResponse<byte[]> response) {
+
+        final String contentType = response.headers().firstValue("Content-Type")
+                .orElse("");
+        final int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index >= 0) {
+            String charset = contentType.substring(index + "charset=".length());
+            if (charset.indexOf(';') >= 0) {
+                charset = charset.substring(0, charset.indexOf(';'));
+            }
+            return charset.replace("\"", "").trim();
+        }
+        return JBTRequest.FORM_CHARSET;
+    }
+
+    /**
+     * A subscriber collecting the body of a response into memory, failing
+     * with a timeout if the body is not complete within the time allowed,
+     * rather than leaving the request in flight on a stalled response.
+     */
+    private static class TimeoutBodySubscriber
+            implements HttpResponse.BodySubscriber<byte[]> {
+
+        /** The subscriber collecting the body. */
+        private final HttpResponse.BodySubscriber<byte[]> collector =
+            HttpResponse.BodySubscribers.ofByteArray();
+
+        /** The body, completed once collected or timed out. */
+        private final CompletableFuture<byte[]> body = new CompletableFuture<byte[]>();
+
+        /** The timer. */
+        private final ScheduledThreadPoolExecutor timer;
+
+        /** The time the body may take in milliseconds. */
+        private final long timeout;
+
+        /**
+         * Instantiates a new timeout body subscriber.
+         *
+         * @param timerValue the timer
+         * @param timeoutValue the time the body may take in milliseconds
+         */
+        TimeoutBodySubscriber(final ScheduledThreadPoolExecutor timerValue,
+                final long timeoutValue) {
+            this.timer = timerValue;
+            this.timeout = timeoutValue;
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Flow.Subscriber#onSubscribe(
+         * java.util.concurrent.Flow.Subscription)
+         */
+        public void onSubscribe(final Flow.Subscription subscription) {
+
+            final ScheduledFuture<?> expiry = this.timer.schedule(new Runnable() {
+                public void run() {
+                    if (body.completeExceptionally(new HttpTimeoutException(
+                            "Timed out reading the response after " + timeout + " ms"))) {
+                        // Stop reading the body and release the connection
+                        subscription.cancel();
+                    }
+                }
+            }, this.timeout, TimeUnit.MILLISECONDS);
+
+            this.collector.getBody().whenComplete(new BiConsumer<byte[], Throwable>() {
+                public void accept(final byte[] bytes, final Throwable error) {
+                    expiry.cancel(false);
+                    if (error != null) {
+                        body.completeExceptionally(error);
+                    } else {
+                        body.complete(bytes);
+                    }
+                }
+            });
+            this.collector.onSubscribe(subscription);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Flow.Subscriber#onNext(java.lang.Object)
+         */
+        public void onNext(final List<ByteBuffer> buffers) {
+            this.collector.onNext(buffers);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Flow.Subscriber#onError(java.lang.Throwable)
+         */
+        public void onError(final Throwable error) {
+            this.collector.onError(error);
+        }
+
+        /* (non-Javadoc)
+         * @see java.util.concurrent.Flow.Subscriber#onComplete()
+         */
+        public void onComplete() {
+            this.collector.onComplete();
+        }
+
+        /* (non-Javadoc)
+         * @see java.net.http.HttpResponse.BodySubscriber#getBody()
+         */
+        public CompletionStage<byte[]> getBody() {
+            return this.body;
+        }
+    }
+
+    /**
+     * An input stream that reads the script, encodes it into the form
+     * character set and URL encodes the bytes, a buffer at a time.
+     */
+    private static class FormEncodingInputStream extends InputStream {
+
+        /** The script reader. */
+        private final Reader reader;
+
+        /** The encoder of the form character set. */
+        private final CharsetEncoder encoder;
+
+        /** The characters read from the script. */
+        private final CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+        /** The characters encoded into the form character set. */
+        private final ByteBuffer bytes;
+
+        /** The URL encoded bytes. */
+        private final byte[] encoded;
+
+        /** The position of the next URL encoded byte. */
+        private int position;
+
+        /** The number of URL encoded bytes. */
+        private int limit;
+
+        /** The flag set once the whole script has been read. */
+        private boolean finished;
+
+        /**
+         * Instantiates a new form encoding input stream.
+         *
+         * @param readerValue the script reader
+         */
+        FormEncodingInputStream(final Reader readerValue) {
+            this.reader = readerValue;
+            // Unmappable characters are replaced as they would be by
+            // String.getBytes
+            this.encoder = Charset.forName(JBTRequest.FORM_CHARSET)
+                    .newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            this.bytes = ByteBuffer.allocate(
+                    (int) Math.ceil(BUFFER_SIZE * this.encoder.maxBytesPerChar()));
+            this.encoded = new byte[this.bytes.capacity() * JBTFormEncoder.MAX_EXPANSION];
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.InputStream#read()
+         */
+        @Override
+        public int read() throws IOException {
+            if (!this.fill()) {
+                return -1;
+            }
+            return this.encoded[this.position++] & 0xFF;
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.InputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!this.fill()) {
+                return -1;
+            }
+            final int count = Math.min(len, this.limit - this.position);
+            System.arraycopy(this.encoded, this.position, b, off, count);
+            this.position += count;
+            return count;
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.InputStream#close()
+         */
+        @Override
+        public void close() throws IOException {
+            this.reader.close();
+        }
+
+        /**
+         * Fill the buffer of URL encoded bytes once it has been read.
+         *
+         * @return true, if there are bytes to read
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        private boolean fill() throws IOException {
+
+            while (this.position >= this.limit) {
+                if (this.finished) {
+                    return false;
+                }
+                final boolean endOfInput = this.reader.read(this.chars) == -1;
+
+                this.chars.flip();
+                this.bytes.clear();
+                this.encoder.encode(this.chars, this.bytes, endOfInput);
+                if (endOfInput) {
+                    this.encoder.flush(this.bytes);
+                    this.finished = true;
+                }
+                // Keep any partial surrogate pair for the next read
+                this.chars.compact();
+                this.bytes.flip();
+
+                this.limit = JBTFormEncoder.encode(this.bytes.array(), 0,
+                        this.bytes.limit(), this.encoded, 0);
+                this.position = 0;
+            }
+            return true;
+        }
+    }
+}
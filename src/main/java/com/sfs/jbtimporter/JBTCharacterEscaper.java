@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+
+/**
+ * The Class JBTCharacterEscaper.
+ * 
+ * Replaces special characters with their entity references. The special
+ * character map is compiled into a table indexed by character, covering
+ * the range between the lowest and highest mapped characters, so each
+ * character is checked with a range test and an array read. Runs of
+ * characters that need no replacement are written in a single call.
+ */
+public class JBTCharacterEscaper {
+
+    /** The lowest character in the table. */
+    private final char first;
+
+    /** The replacements, indexed by character less the first character. */
+    private final char[][] table;
+
+    /**
+     * Instantiates a new JBT character escaper.
+     *
+     * @param specialCharacterMap the special character map
+     */
+    public JBTCharacterEscaper(final Map<Character, String> specialCharacterMap) {
+
+        char low = Character.MAX_VALUE;
+        char high = Character.MIN_VALUE;
+        for (Character c : specialCharacterMap.keySet()) {
+            low = (char) Math.min(low, c.charValue());
+            high = (char) Math.max(high, c.charValue());
+        }
+
+        if (specialCharacterMap.isEmpty()) {
+            this.first = Character.MAX_VALUE;
+            this.table = new char[0][];
+        } else {
+            this.first = low;
+            this.table = new char[high - low + 1][];
+            for (Map.Entry<Character, String> entry : specialCharacterMap.entrySet()) {
+                this.table[entry.getKey().charValue() - low] =
+                        entry.getValue().toCharArray();
+            }
+        }
+    }
+
+    /**
+     * Gets the replacement for the supplied character.
+     *
+     * @param c the character
+     * @return the replacement, or null if the character is not replaced
+     */
+    public final char[] getReplacement(final char c) {
+        final int index = c - this.first;
+        if (index < 0 || index >= this.table.length) {
+            return null;
+        }
+        return this.table[index];
+    }
+
+    /**
+     * Write the characters to the writer, replacing the special characters.
+     *
+     * @param cbuf the characters
+     * @param off the offset of the first character
+     * @param len the number of characters
+     * @param out the writer
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final void escape(final char[] cbuf, final int off, final int len,
+            final Writer out) throws IOException {
+
+        final int end = off + len;
+        int runStart = off;
+
+        for (int i = off; i < end; i++) {
+            final char[] replacement = this.getReplacement(cbuf[i]);
+            if (replacement != null) {
+                if (i > runStart) {
+                    out.write(cbuf, runStart, i - runStart);
+                }
+                out.write(replacement, 0, replacement.length);
+                runStart = i + 1;
+            }
+        }
+        if (end > runStart) {
+            out.write(cbuf, runStart, end - runStart);
+        }
+    }
+
+    /**
+     * Write the string to the writer, replacing the special characters.
+     *
+     * @param str the string
+     * @param off the offset of the first character
+     * @param len the number of characters
+     * @param out the writer
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final void escape(final String str, final int off, final int len,
+            final Writer out) throws IOException {
+
+        final int end = off + len;
+        int runStart = off;
+
+        for (int i = off; i < end; i++) {
+            final char[] replacement = this.getReplacement(str.charAt(i));
+            if (replacement != null) {
+                if (i > runStart) {
+                    out.write(str, runStart, i - runStart);
+                }
+                out.write(replacement, 0, replacement.length);
+                runStart = i + 1;
+            }
+        }
+        if (end > runStart) {
+            out.write(str, runStart, end - runStart);
+        }
+    }
+}
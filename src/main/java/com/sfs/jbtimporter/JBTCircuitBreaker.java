@@ -0,0 +1,135 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Class JBTCircuitBreaker.
+ * 
+ * Pauses every worker when Jira is clearly down. After a number of
+ * consecutive transport failures the breaker opens and workers wait before
+ * sending anything further. Once the pause has passed a single worker is let
+ * through to test Jira: if it succeeds the breaker closes and every worker
+ * resumes, if it fails the breaker opens for another pause.
+ */
+public class JBTCircuitBreaker {
+
+    /** The default number of consecutive failures that open the breaker. */
+    public static final int DEFAULT_THRESHOLD = 5;
+
+    /** The default pause in milliseconds once the breaker opens. */
+    public static final long DEFAULT_PAUSE = 30000;
+
+    /** The number of consecutive failures that open the breaker. */
+    private int threshold = DEFAULT_THRESHOLD;
+
+    /** The pause in milliseconds once the breaker opens. */
+    private long pause = DEFAULT_PAUSE;
+
+    /** The number of consecutive failures. */
+    private int consecutiveFailures;
+
+    /** The time the breaker stays open until, zero if closed. */
+    private long openUntil;
+
+    /** The flag set while a worker is testing whether Jira has recovered. */
+    private boolean trialInProgress;
+
+    /** The number of times the breaker has opened. */
+    private int openCount;
+
+    /**
+     * Sets the number of consecutive failures that open the breaker.
+     *
+     * @param thresholdValue the threshold
+     */
+    public final synchronized void setThreshold(final int thresholdValue) {
+        this.threshold = thresholdValue;
+    }
+
+    /**
+     * Sets the pause in milliseconds once the breaker opens.
+     *
+     * @param pauseValue the pause
+     */
+    public final synchronized void setPause(final long pauseValue) {
+        this.pause = pauseValue;
+    }
+
+    /**
+     * Wait until a request may be sent to Jira. Returns immediately while
+     * the breaker is closed.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public final synchronized void awaitPermission() throws InterruptedException {
+
+        while (true) {
+            if (this.openUntil == 0) {
+                return;
+            }
+            final long remaining = this.openUntil - System.currentTimeMillis();
+            if (remaining > 0) {
+                this.wait(remaining);
+            } else if (!this.trialInProgress) {
+                // Let this worker through to test whether Jira has recovered
+                this.trialInProgress = true;
+                return;
+            } else {
+                this.wait();
+            }
+        }
+    }
+
+    /**
+     * Record a request that reached Jira.
+     */
+    public final synchronized void recordSuccess() {
+
+        this.consecutiveFailures = 0;
+        if (this.openUntil != 0) {
+            System.out.println("Jira is responding, resuming all workers");
+            this.openUntil = 0;
+            this.trialInProgress = false;
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Record a request that could not reach Jira.
+     */
+    public final synchronized void recordFailure() {
+
+        this.consecutiveFailures++;
+        if (this.trialInProgress
+                || (this.openUntil == 0 && this.consecutiveFailures >= this.threshold)) {
+            this.openCount++;
+            this.openUntil = System.currentTimeMillis() + this.pause;
+            this.trialInProgress = false;
+            System.out.println("Jira appears to be unavailable, pausing all workers for "
+                    + this.pause + "ms");
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the number of times the breaker has opened.
+     *
+     * @return the open count
+     */
+    public final synchronized int getOpenCount() {
+        return this.openCount;
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Class JBTConcurrencyLimiter.
+ * 
+ * Adapts the number of requests in flight to what Jira can sustain using
+ * additive increase, multiplicative decrease (AIMD). The limit starts at one
+ * and doubles each round trip until Jira shows signs of congestion, after
+ * which it grows by one each round trip. When a request fails to reach Jira,
+ * or the smoothed latency rises well above the lowest latency seen, the
+ * limit is halved. The limit never exceeds the number of worker threads.
+ * A limiter that is not adaptive holds the limit at its maximum, bounding
+ * the requests in flight through an asynchronous transport.
+ */
+public class JBTConcurrencyLimiter {
+
+    /** The latency, as a multiple of the baseline, treated as congestion. */
+    public static final double DEFAULT_LATENCY_TOLERANCE = 2.0;
+
+    /** The factor the limit is reduced by on congestion. */
+    private static final double BACKOFF_RATIO = 0.5;
+
+    /** The weight of each sample in the smoothed latency. */
+    private static final double SMOOTHING = 0.2;
+
+    /** The rate the baseline drifts up so a slower Jira is relearned. */
+    private static final double BASELINE_DRIFT = 1.001;
+
+    /** The maximum limit. */
+    private int maxLimit;
+
+    /** The adaptive flag, the limit is held at the maximum if not set. */
+    private final boolean adaptive;
+
+    /** The latency, as a multiple of the baseline, treated as congestion. */
+    private double latencyTolerance = DEFAULT_LATENCY_TOLERANCE;
+
+    /** The current limit. */
+    private double limit = 1;
+
+    /** The number of requests in flight. */
+    private int inFlight;
+
+    /** The number of requests waiting to be sent. */
+    private int waiting;
+
+    /** The slow start flag, set until congestion is first seen. */
+    private boolean slowStart = true;
+
+    /** The smoothed latency in nanoseconds, negative until sampled. */
+    private double smoothedLatency = -1;
+
+    /** The baseline latency in nanoseconds. */
+    private double baselineLatency = Double.MAX_VALUE;
+
+    /** The time the limit was last decreased. */
+    private long lastDecrease;
+
+    /**
+     * Instantiates a new adaptive JBT concurrency limiter.
+     *
+     * @param maxLimitValue the maximum limit
+     */
+    public JBTConcurrencyLimiter(final int maxLimitValue) {
+        this(maxLimitValue, true);
+    }
+
+    /**
+     * Instantiates a new JBT concurrency limiter.
+     *
+     * @param maxLimitValue the maximum limit
+     * @param adaptiveValue true to adapt the limit, false to hold it at
+     *            the maximum
+     */
+    public JBTConcurrencyLimiter(final int maxLimitValue, final boolean adaptiveValue) {
+        this.maxLimit = Math.max(1, maxLimitValue);
+        this.adaptive = adaptiveValue;
+        if (!adaptiveValue) {
+            this.limit = this.maxLimit;
+        }
+        this.lastDecrease = System.nanoTime();
+    }
+
+    /**
+     * Sets the maximum limit.
+     *
+     * @param maxLimitValue the maximum limit
+     */
+    public final synchronized void setMaxLimit(final int maxLimitValue) {
+        this.maxLimit = Math.max(1, maxLimitValue);
+        this.limit = this.adaptive ? Math.min(this.limit, this.maxLimit) : this.maxLimit;
+        this.notifyAll();
+    }
+
+    /**
+     * Gets the maximum limit.
+     *
+     * @return the maximum limit
+     */
+    public final synchronized int getMaxLimit() {
+        return this.maxLimit;
+    }
+
+    /**
+     * Sets the latency, as a multiple of the baseline, treated as congestion.
+     *
+     * @param latencyToleranceValue the latency tolerance
+     */
+    public final synchronized void setLatencyTolerance(
+            final double latencyToleranceValue) {
+        this.latencyTolerance = latencyToleranceValue;
+    }
+
+    /**
+     * Wait until another request may be sent.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public final synchronized void acquire() throws InterruptedException {
+        this.waiting++;
+        try {
+            while (this.inFlight >= (int) this.limit) {
+                this.wait();
+            }
+        } finally {
+            this.waiting--;
+        }
+        this.inFlight++;
+    }
+
+    /**
+     * Record a completed request and adjust the limit.
+     *
+     * @param latency the latency of the request in nanoseconds
+     * @param failed true if the request did not reach Jira
+     */
+    public final synchronized void release(final long latency, final boolean failed) {
+
+        this.inFlight--;
+
+        if (!this.adaptive) {
+            this.notifyAll();
+            return;
+        }
+        if (!failed) {
+            this.smoothedLatency = this.smoothedLatency < 0 ? latency
+                    : this.smoothedLatency + SMOOTHING * (latency - this.smoothedLatency);
+            this.baselineLatency = Math.min(this.smoothedLatency,
+                    this.baselineLatency * BASELINE_DRIFT);
+        }
+        final long now = System.nanoTime();
+        final boolean congested = failed 
+                || this.smoothedLatency > this.latencyTolerance * this.baselineLatency;
+
+        if (congested) {
+            // Decrease once per round trip, requests in flight when
+            // congestion is seen all report the same event
+            if (now - this.lastDecrease > this.smoothedLatency) {
+                this.limit = Math.max(1, this.limit * BACKOFF_RATIO);
+                this.lastDecrease = now;
+                this.slowStart = false;
+            }
+        } else if (this.slowStart) {
+            this.limit = Math.min(this.maxLimit, this.limit + 1);
+        } else {
+            this.limit = Math.min(this.maxLimit, this.limit + 1 / this.limit);
+        }
+        this.notifyAll();
+    }
+
+    /**
+     * Gets the current limit.
+     *
+     * @return the limit
+     */
+    public final synchronized int getLimit() {
+        return (int) this.limit;
+    }
+
+    /**
+     * Gets the number of requests waiting to be sent.
+     *
+     * @return the requests waiting
+     */
+    public final synchronized int getWaiting() {
+        return this.waiting;
+    }
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import org.apache.commons.httpclient.HttpConnectionManager;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+/**
+ * The Class JBTConnectionPool.
+ * 
+ * A pool of keep-alive connections to Jira that is shared by the worker
+ * threads. Connections are returned to the pool once a response has been
+ * read so later requests avoid the cost of a new TCP/TLS handshake, and
+ * connections left idle for longer than the idle timeout are closed.
+ */
+public class JBTConnectionPool {
+
+    /** The default connect timeout in milliseconds. */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 30000;
+
+    /** The default socket timeout in milliseconds, zero waits indefinitely. */
+    public static final int DEFAULT_SOCKET_TIMEOUT = 0;
+
+    /** The default idle connection timeout in milliseconds. */
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    /** The connection manager. */
+    private final MultiThreadedHttpConnectionManager connectionManager;
+
+    /** The idle connection timeout in milliseconds. */
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+
+    /** The idle connection eviction thread. */
+    private IdleConnectionTimeoutThread evictionThread;
+
+    /**
+     * Instantiates a new JBT connection pool.
+     */
+    public JBTConnectionPool() {
+        this.connectionManager = new MultiThreadedHttpConnectionManager();
+
+        final HttpConnectionManagerParams params = this.connectionManager.getParams();
+        // Check pooled connections are still open before they are reused
+        params.setStaleCheckingEnabled(true);
+        params.setConnectionTimeout(DEFAULT_CONNECT_TIMEOUT);
+        params.setSoTimeout(DEFAULT_SOCKET_TIMEOUT);
+        this.setMaxConnectionsPerHost(1);
+    }
+
+    /**
+     * Gets the connection manager.
+     *
+     * @return the connection manager
+     */
+    public final HttpConnectionManager getConnectionManager() {
+        return this.connectionManager;
+    }
+
+    /**
+     * Sets the maximum number of connections per host.
+     *
+     * @param maxConnections the maximum number of connections per host
+     */
+    public final void setMaxConnectionsPerHost(final int maxConnections) {
+        final HttpConnectionManagerParams params = this.connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnections);
+        params.setMaxTotalConnections(maxConnections);
+    }
+
+    /**
+     * Gets the maximum number of connections per host.
+     *
+     * @return the maximum number of connections per host
+     */
+    public final int getMaxConnectionsPerHost() {
+        return this.connectionManager.getParams().getDefaultMaxConnectionsPerHost();
+    }
+
+    /**
+     * Sets the connect timeout.
+     *
+     * @param timeout the connect timeout in milliseconds
+     */
+    public final void setConnectTimeout(final int timeout) {
+        this.connectionManager.getParams().setConnectionTimeout(timeout);
+    }
+
+    /**
+     * Gets the connect timeout.
+     *
+     * @return the connect timeout in milliseconds
+     */
+    public final int getConnectTimeout() {
+        return this.connectionManager.getParams().getConnectionTimeout();
+    }
+
+    /**
+     * Sets the socket timeout.
+     *
+     * @param timeout the socket timeout in milliseconds
+     */
+    public final void setSocketTimeout(final int timeout) {
+        this.connectionManager.getParams().setSoTimeout(timeout);
+    }
+
+    /**
+     * Gets the socket timeout.
+     *
+     * @return the socket timeout in milliseconds
+     */
+    public final int getSocketTimeout() {
+        return this.connectionManager.getParams().getSoTimeout();
+    }
+
+    /**
+     * Sets the idle connection timeout.
+     *
+     * @param timeout the idle connection timeout in milliseconds
+     */
+    public final synchronized void setIdleTimeout(final long timeout) {
+        this.idleTimeout = timeout;
+        if (this.evictionThread != null) {
+            this.evictionThread.setConnectionTimeout(timeout);
+        }
+    }
+
+    /**
+     * Gets the idle connection timeout.
+     *
+     * @return the idle connection timeout in milliseconds
+     */
+    public final synchronized long getIdleTimeout() {
+        return this.idleTimeout;
+    }
+
+    /**
+     * Close the pooled connections that have been idle for longer than the
+     * idle timeout.
+     */
+    public final void evictIdleConnections() {
+        this.connectionManager.closeIdleConnections(this.getIdleTimeout());
+    }
+
+    /**
+     * Start a background thread that periodically evicts idle connections.
+     */
+    public final synchronized void startIdleConnectionEviction() {
+        if (this.evictionThread == null && this.idleTimeout > 0) {
+            this.evictionThread = new IdleConnectionTimeoutThread();
+            this.evictionThread.addConnectionManager(this.connectionManager);
+            this.evictionThread.setConnectionTimeout(this.idleTimeout);
+            this.evictionThread.setTimeoutInterval(Math.max(this.idleTimeout / 2, 1));
+            this.evictionThread.start();
+        }
+    }
+
+    /**
+     * Stop the eviction thread and close all pooled connections.
+     */
+    public final synchronized void shutdown() {
+        if (this.evictionThread != null) {
+            this.evictionThread.shutdown();
+            this.evictionThread = null;
+        }
+        this.connectionManager.shutdown();
+    }
+}
@@ -0,0 +1,124 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The Class JBTContentHasher.
+ * 
+ * Computes SHA-256 hashes of issue files and settings. A file is memory
+ * mapped, a window at a time, so it is digested straight from the page
+ * cache without being copied onto the heap.
+ */
+public final class JBTContentHasher {
+
+    /** The hash algorithm. */
+    private static final String ALGORITHM = "SHA-256";
+
+    /** The size of the window of the file mapped at a time. */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /** The hexadecimal digits. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * Instantiates a new JBT content hasher.
+     */
+    private JBTContentHasher() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Compute the SHA-256 hash of the file.
+     *
+     * @param file the file
+     * @return the hash as a hexadecimal string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static String hash(final File file) throws IOException {
+
+        final MessageDigest digest = newDigest();
+        final RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            final FileChannel channel = input.getChannel();
+            final long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                final long length = Math.min(MAP_WINDOW, size - position);
+                final MappedByteBuffer window = channel.map(
+                        FileChannel.MapMode.READ_ONLY, position, length);
+                digest.update(window);
+                position += length;
+            }
+        } finally {
+            input.close();
+        }
+
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Compute the SHA-256 hash of the UTF-8 encoding of the text.
+     *
+     * @param text the text
+     * @return the hash as a hexadecimal string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public static String hash(final String text) throws IOException {
+
+        final MessageDigest digest = newDigest();
+        digest.update(text.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Creates a new SHA-256 message digest.
+     *
+     * @return the message digest
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IOException("The " + ALGORITHM + " algorithm is not available");
+        }
+    }
+
+    /**
+     * Format the hash as a hexadecimal string.
+     *
+     * @param hash the hash
+     * @return the hexadecimal string
+     */
+    private static String toHex(final byte[] hash) {
+
+        final char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,92 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The Class JBTCountingInputStream.
+ * 
+ * An input stream that counts the bytes read through it.
+ */
+public class JBTCountingInputStream extends FilterInputStream {
+
+    /** The number of bytes read. */
+    private volatile long count = 0;
+
+    /**
+     * Instantiates a new JBT counting input stream.
+     *
+     * @param in the underlying input stream
+     */
+    public JBTCountingInputStream(final InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Gets the number of bytes read.
+     *
+     * @return the count
+     */
+    public final long getCount() {
+        return this.count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterInputStream#read()
+     */
+    @Override
+    public int read() throws IOException {
+        final int b = this.in.read();
+        if (b != -1) {
+            this.count++;
+        }
+        return b;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterInputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(final byte[] b, final int off, final int len) throws IOException {
+        final int read = this.in.read(b, off, len);
+        if (read > 0) {
+            this.count += read;
+        }
+        return read;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterInputStream#skip(long)
+     */
+    @Override
+    public long skip(final long n) throws IOException {
+        final long skipped = this.in.skip(n);
+        this.count += skipped;
+        return skipped;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterInputStream#markSupported()
+     */
+    @Override
+    public boolean markSupported() {
+        // A reset would count the same bytes twice
+        return false;
+    }
+}
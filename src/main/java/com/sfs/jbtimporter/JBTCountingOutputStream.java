@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The Class JBTCountingOutputStream.
+ * 
+ * An output stream that counts the bytes written through it.
+ */
+public class JBTCountingOutputStream extends FilterOutputStream {
+
+    /** The number of bytes written. */
+    private volatile long count = 0;
+
+    /**
+     * Instantiates a new JBT counting output stream.
+     *
+     * @param out the underlying output stream
+     */
+    public JBTCountingOutputStream(final OutputStream out) {
+        super(out);
+    }
+
+    /**
+     * Gets the number of bytes written.
+     *
+     * @return the count
+     */
+    public final long getCount() {
+        return this.count;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterOutputStream#write(int)
+     */
+    @Override
+    public void write(final int b) throws IOException {
+        this.out.write(b);
+        this.count++;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterOutputStream#write(byte[], int, int)
+     */
+    @Override
+    public void write(final byte[] b, final int off, final int len)
+            throws IOException {
+        this.out.write(b, off, len);
+        this.count += len;
+    }
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The Class JBTEscapingWriter.
+ * 
+ * A writer that replaces the special characters passing through it with
+ * their entity references, allowing the output of the XSLT transformation
+ * to be escaped as it is written.
+ */
+public class JBTEscapingWriter extends FilterWriter {
+
+    /** The character escaper. */
+    private final JBTCharacterEscaper escaper;
+
+    /**
+     * Instantiates a new JBT escaping writer.
+     *
+     * @param out the underlying writer
+     * @param escaperValue the character escaper
+     */
+    public JBTEscapingWriter(final Writer out,
+            final JBTCharacterEscaper escaperValue) {
+        super(out);
+        this.escaper = escaperValue;
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterWriter#write(int)
+     */
+    @Override
+    public final void write(final int c) throws IOException {
+        final char[] replacement = this.escaper.getReplacement((char) c);
+        if (replacement != null) {
+            this.out.write(replacement, 0, replacement.length);
+        } else {
+            this.out.write(c);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterWriter#write(char[], int, int)
+     */
+    @Override
+    public final void write(final char[] cbuf, final int off, final int len)
+            throws IOException {
+        this.escaper.escape(cbuf, off, len, this.out);
+    }
+
+    /* (non-Javadoc)
+     * @see java.io.FilterWriter#write(java.lang.String, int, int)
+     */
+    @Override
+    public final void write(final String str, final int off, final int len)
+            throws IOException {
+        this.escaper.escape(str, off, len, this.out);
+    }
+}
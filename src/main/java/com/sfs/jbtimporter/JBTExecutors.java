@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class JBTExecutors.
+ * 
+ * Creates the executors that issues are processed by, and waits for them
+ * to finish.
+ */
+public final class JBTExecutors {
+
+    /**
+     * Instantiates a new JBT executors.
+     */
+    private JBTExecutors() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Creates an executor with a bounded queue of waiting tasks. Once the
+     * queue is full the thread submitting a task blocks until a worker is
+     * free, so a slow executor holds back the work feeding it.
+     *
+     * @param threads the number of worker threads
+     * @param queueSize the number of tasks that can wait in the queue
+     * @return the executor service
+     */
+    public static ExecutorService newBlockingExecutor(final int threads,
+            final int queueSize) {
+
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(queueSize),
+                new RejectedExecutionHandler() {
+                    public void rejectedExecution(final Runnable task,
+                            final ThreadPoolExecutor executor) {
+                        if (executor.isShutdown()) {
+                            throw new RejectedExecutionException(
+                                    "The executor has been shutdown");
+                        }
+                        try {
+                            // Wait for space in the queue
+                            executor.getQueue().put(task);
+                        } catch (InterruptedException ie) {
+                            Thread.currentThread().interrupt();
+                            throw new RejectedExecutionException(ie);
+                        }
+                    }
+                });
+    }
+
+    /**
+     * Creates an executor that runs each task on its own virtual thread. The
+     * build targets Java 17 so the factory is looked up when run, null is
+     * returned if the JVM does not support virtual threads (before Java 21).
+     *
+     * @return the executor service, or null if not supported
+     */
+    public static ExecutorService newVirtualThreadExecutor() {
+
+        try {
+            final Method factory = Executors.class.getMethod(
+                    "newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException roe) {
+            return null;
+        }
+    }
+
+    /**
+     * Wait for the executor to finish processing the queued tasks.
+     *
+     * @param executor the executor service
+     */
+    public static void awaitCompletion(final ExecutorService executor) {
+
+        executor.shutdown();
+        try {
+            while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                // Keep waiting for the remaining issues
+            }
+        } catch (InterruptedException ie) {
+            System.out.println("ERROR waiting for issues to complete: " 
+                    + ie.getMessage());
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Class JBTFormEncoder.
+ * 
+ * URL encodes bytes using the rules for the
+ * application/x-www-form-urlencoded content type, as the script is streamed
+ * into a request body.
+ */
+public final class JBTFormEncoder {
+
+    /** The most bytes a single byte is encoded into. */
+    public static final int MAX_EXPANSION = 3;
+
+    /** The hexadecimal digits. */
+    private static final byte[] HEX = {
+        '0', '1', '2', '3', '4', '5', '6', '7',
+        '8', '9', 'A', 'B', 'C', 'D', 'E', 'F'
+    };
+
+    /**
+     * Instantiates a new JBT form encoder.
+     */
+    private JBTFormEncoder() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * URL encode the bytes into the output buffer, which must have space
+     * for MAX_EXPANSION bytes for each byte encoded.
+     *
+     * @param in the bytes to encode
+     * @param off the offset of the first byte to encode
+     * @param len the number of bytes to encode
+     * @param out the output buffer
+     * @param outOff the offset in the output buffer to write from
+     * @return the number of bytes written to the output buffer
+     */
+    public static int encode(final byte[] in, final int off, final int len,
+            final byte[] out, final int outOff) {
+
+        int count = outOff;
+        for (int i = off; i < off + len; i++) {
+            final int c = in[i] & 0xFF;
+            if (isUnreserved(c)) {
+                out[count++] = (byte) c;
+            } else if (c == ' ') {
+                out[count++] = '+';
+            } else {
+                out[count++] = '%';
+                out[count++] = HEX[c >> 4];
+                out[count++] = HEX[c & 0x0F];
+            }
+        }
+        return count - outOff;
+    }
+
+    /**
+     * Gets the number of bytes the bytes are URL encoded into.
+     *
+     * @param in the bytes to encode
+     * @param off the offset of the first byte to encode
+     * @param len the number of bytes to encode
+     * @return the encoded length
+     */
+    public static long encodedLength(final byte[] in, final int off, final int len) {
+
+        long length = 0;
+        for (int i = off; i < off + len; i++) {
+            final int c = in[i] & 0xFF;
+            length += isUnreserved(c) || c == ' ' ? 1 : MAX_EXPANSION;
+        }
+        return length;
+    }
+
+    /**
+     * Checks if the byte is written to the form as it is.
+     *
+     * @param c the unsigned byte
+     * @return true, if the byte is not encoded
+     */
+    private static boolean isUnreserved(final int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9') || c == '-' || c == '_'
+                || c == '.' || c == '*';
+    }
+}
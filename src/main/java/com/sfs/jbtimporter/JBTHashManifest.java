@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class JBTHashManifest.
+ * 
+ * The hash recorded for each issue when it was last processed, so a later
+ * run only processes the issues that are new or have changed. It holds the
+ * content hash of each imported issue file for an incremental import, and
+ * the inputs and output of each transformed file for an incremental
+ * transform. Hashes are appended to the manifest as issues are processed,
+ * the last recorded for an issue taking precedence, and the manifest is
+ * rewritten with a single entry per issue once it is closed.
+ */
+public class JBTHashManifest {
+
+    /** The manifest file. */
+    private final File file;
+
+    /** The hash of each processed issue, keyed by issue. */
+    private final Map<String, String> hashes = new ConcurrentHashMap<String, String>();
+
+    /** The writer. */
+    private Writer writer;
+
+    /**
+     * Instantiates a new JBT hash manifest.
+     *
+     * @param fileValue the manifest file
+     */
+    public JBTHashManifest(final File fileValue) {
+        this.file = fileValue;
+    }
+
+    /**
+     * Gets the manifest file.
+     *
+     * @return the file
+     */
+    public final File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Load the hashes of the issues processed by previous runs.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void load() throws IOException {
+
+        this.hashes.clear();
+        if (!this.file.exists()) {
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(this.file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                final int tab = line.lastIndexOf('\t');
+                if (tab > 0 && tab < line.length() - 1) {
+                    this.hashes.put(line.substring(0, tab), line.substring(tab + 1));
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Open the manifest for recording the issues processed by this run.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void open() throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(this.file, true), "UTF-8"));
+    }
+
+    /**
+     * Checks if the issue was processed with the same hash.
+     *
+     * @param id the issue key
+     * @param hash the hash of the issue
+     * @return true, if the issue is unchanged since it was processed
+     */
+    public final boolean isUnchanged(final String id, final String hash) {
+        return StringUtils.equals(this.hashes.get(cleanId(id)), hash);
+    }
+
+    /**
+     * Record the hash of a successfully processed issue.
+     *
+     * @param id the issue key
+     * @param hash the hash of the issue
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void record(final String id, final String hash)
+            throws IOException {
+
+        if (this.writer == null) {
+            throw new IOException("The manifest has not been opened");
+        }
+        final String cleanId = cleanId(id);
+        this.hashes.put(cleanId, hash);
+        this.writer.write(cleanId + "\t" + hash + "\n");
+        this.writer.flush();
+    }
+
+    /**
+     * Close the manifest, rewriting it with a single entry per issue. The
+     * new manifest is written alongside and moved into place, so the
+     * previous manifest is kept if the rewrite fails.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void close() throws IOException {
+
+        if (this.writer == null) {
+            return;
+        }
+        this.writer.close();
+        this.writer = null;
+
+        final File compacted = new File(this.file.getPath() + ".tmp");
+        final FileOutputStream out = new FileOutputStream(compacted);
+        final Writer compactWriter = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+        try {
+            for (Map.Entry<String, String> entry
+                    : new TreeMap<String, String>(this.hashes).entrySet()) {
+                compactWriter.write(entry.getKey() + "\t" + entry.getValue() + "\n");
+            }
+            compactWriter.flush();
+            out.getFD().sync();
+        } finally {
+            compactWriter.close();
+        }
+        Files.move(compacted.toPath(), this.file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Keep the issue id on a single line of the manifest.
+     *
+     * @param id the issue id
+     * @return the clean id
+     */
+    private static String cleanId(final String id) {
+        return StringUtils.replaceChars(id, "\t\r\n", "   ");
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class JBTHistogram.
+ * 
+ * A histogram of durations in the style of an HDR histogram. Values are
+ * counted in buckets that grow with the magnitude of the value, each power
+ * of two split into 64 sub-buckets, so any value is reported to within
+ * about 1.5% while the whole range of a long fits in a few thousand
+ * counters. Recording a value is a handful of arithmetic operations and
+ * an atomic increment, with no locking, so it can be called from every
+ * worker thread on each request.
+ */
+public class JBTHistogram {
+
+    /** The number of bits of a value counted exactly. */
+    private static final int SUB_BUCKET_BITS = 7;
+
+    /** The number of values counted exactly, from zero. */
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    /** The number of sub-buckets each power of two is split into. */
+    private static final int HALF_COUNT = SUB_BUCKET_COUNT / 2;
+
+    /** The number of buckets needed for every positive long. */
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT
+            + (Long.SIZE - SUB_BUCKET_BITS - 1) * HALF_COUNT;
+
+    /** The count of values in each bucket. */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    /** The sum of the values. */
+    private final LongAdder sum = new LongAdder();
+
+    /** The largest value. */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value, negative values are recorded as zero.
+     *
+     * @param value the value
+     */
+    public final void record(final long value) {
+
+        final long v = Math.max(0, value);
+        this.counts.incrementAndGet(getIndex(v));
+        this.sum.add(v);
+
+        long current = this.max.get();
+        while (v > current && !this.max.compareAndSet(current, v)) {
+            current = this.max.get();
+        }
+    }
+
+    /**
+     * Gets the number of values recorded.
+     *
+     * @return the count
+     */
+    public final long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            count += this.counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the sum of the values recorded.
+     *
+     * @return the sum
+     */
+    public final long getSum() {
+        return this.sum.sum();
+    }
+
+    /**
+     * Gets the mean of the values recorded.
+     *
+     * @return the mean, or zero if no values were recorded
+     */
+    public final double getMean() {
+        final long count = this.getCount();
+        return count == 0 ? 0 : (double) this.getSum() / count;
+    }
+
+    /**
+     * Gets the largest value recorded.
+     *
+     * @return the max
+     */
+    public final long getMax() {
+        return this.max.get();
+    }
+
+    /**
+     * Gets the value that the percentage of values recorded are at or below.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @return the value, or zero if no values were recorded
+     */
+    public final long getValueAtPercentile(final double percentile) {
+
+        final long[] snapshot = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = this.counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0) {
+            return 0;
+        }
+        final double fraction = Math.min(100, Math.max(0, percentile)) / 100;
+        final long target = Math.max(1, (long) Math.ceil(fraction * count));
+
+        long cumulative = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            cumulative += snapshot[i];
+            if (cumulative >= target) {
+                return Math.min(getUpperBound(i), this.getMax());
+            }
+        }
+        return this.getMax();
+    }
+
+    /**
+     * Gets the bucket a value is counted in.
+     *
+     * @param value the value, not negative
+     * @return the index of the bucket
+     */
+    static int getIndex(final long value) {
+
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        // Keep the top bits of the value, scaled into the upper half
+        final int shift = Long.SIZE - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        final int top = (int) (value >>> shift);
+        return SUB_BUCKET_COUNT + (shift - 1) * HALF_COUNT + (top - HALF_COUNT);
+    }
+
+    /**
+     * Gets the largest value counted in a bucket.
+     *
+     * @param index the index of the bucket
+     * @return the upper bound
+     */
+    static long getUpperBound(final int index) {
+
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        final int shift = (index - SUB_BUCKET_COUNT) / HALF_COUNT + 1;
+        final long top = (index - SUB_BUCKET_COUNT) % HALF_COUNT + HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+}
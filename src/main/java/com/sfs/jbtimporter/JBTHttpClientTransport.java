@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpException;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class JBTHttpClientTransport.
+ * 
+ * A blocking transport built on commons-httpclient, each request occupying
+ * its thread and a pooled connection until the response has been read.
+ */
+public class JBTHttpClientTransport implements JBTTransport {
+
+    /** The http client. */
+    private final HttpClient httpClient;
+
+    /**
+     * Instantiates a new JBT http client transport. The proxy is configured
+     * from the http(s).proxyHost and http(s).proxyPort system properties.
+     *
+     * @param connectionPool the http connection pool
+     * @param baseUrl the base url of Jira
+     */
+    public JBTHttpClientTransport(final JBTConnectionPool connectionPool,
+            final String baseUrl) {
+        this.httpClient = new HttpClient(connectionPool.getConnectionManager());
+
+        // Proxy configuration
+        String proxyHost = System.getProperty("http.proxyHost");
+        String proxyPortString = System.getProperty("http.proxyPort");
+        int proxyPort = -1;
+
+        if (baseUrl.startsWith("https")) {
+            proxyHost = System.getProperty("https.proxyHost");
+            proxyPortString = System.getProperty("https.proxyPort");
+        }
+        try {
+            proxyPort = Integer.parseInt(proxyPortString);
+        } catch (NumberFormatException nfe) {
+            proxyPort = -1;
+        }
+        if (StringUtils.isNotBlank(proxyHost) && proxyPort > 0) {
+            this.httpClient.getHostConfiguration().setProxy(proxyHost, proxyPort);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#send(com.sfs.jbtimporter.JBTRequest,
+     * com.sfs.jbtimporter.JBTResponseScanner)
+     */
+    public final JBTResponse send(final JBTRequest request,
+            final JBTResponseScanner scanner) throws IOException {
+
+        final PostMethod postMethod = new PostMethod(request.getUrl());
+        final JBTScriptRequestEntity entity = new JBTScriptRequestEntity(request);
+        postMethod.setRequestEntity(entity);
+        try {
+            // Execute the post request
+            final int status = this.httpClient.executeMethod(postMethod);
+            if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                // Jira or a proxy in front of it failed, possibly after the
+                // script ran, so this is a transport failure
+                throw new HttpException("Jira responded with HTTP status " 
+                        + status + " " + postMethod.getStatusText());
+            }
+
+            final InputStream body = postMethod.getResponseBodyAsStream();
+            if (body == null) {
+                final JBTResponse response = new JBTResponse();
+                response.setBytesSent(entity.getBytesWritten());
+                return response;
+            }
+            // Scan the response entity, any remainder is consumed when
+            // the connection is released so it can be reused
+            final JBTCountingInputStream counter = new JBTCountingInputStream(body);
+            final JBTResponse response = scanner.scan(new InputStreamReader(counter, 
+                    postMethod.getResponseCharSet()));
+            response.setBytesSent(entity.getBytesWritten());
+            response.setBytesReceived(counter.getCount());
+            return response;
+        } finally {
+            postMethod.releaseConnection();
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#sendAsync(com.sfs.jbtimporter.JBTRequest,
+     * com.sfs.jbtimporter.JBTResponseScanner)
+     */
+    public final CompletableFuture<JBTResponse> sendAsync(final JBTRequest request,
+            final JBTResponseScanner scanner) {
+        try {
+            // The request is sent on the calling thread
+            return CompletableFuture.completedFuture(this.send(request, scanner));
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#isAsync()
+     */
+    public final boolean isAsync() {
+        return false;
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTTransport#shutdown()
+     */
+    public final void shutdown() {
+        // The connection pool is shut down by the processor that owns it
+    }
+}
@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The Class JBTImportMonitor.
+ * 
+ * Monitors a running import, reading the metrics, the limiters and the
+ * queues of the pipeline as they change. It is registered as an MXBean
+ * with the platform MBean server, so it can be watched with jconsole or
+ * any JMX client, and it is read by the metrics endpoint.
+ */
+public class JBTImportMonitor implements JBTImportMonitorMXBean {
+
+    /** The name the monitor is registered with. */
+    public static final String OBJECT_NAME = "com.sfs.jbtimporter:type=Import";
+
+    /** The nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** The jbt processor. */
+    private final JBTProcessor jbt;
+
+    /** The import pipeline. */
+    private final JBTImportPipeline pipeline;
+
+    /** The name the monitor is registered with, null if not registered. */
+    private ObjectName objectName;
+
+    /**
+     * Instantiates a new JBT import monitor.
+     *
+     * @param jbtValue the jbt processor
+     * @param pipelineValue the import pipeline
+     */
+    public JBTImportMonitor(final JBTProcessor jbtValue,
+            final JBTImportPipeline pipelineValue) {
+        this.jbt = jbtValue;
+        this.pipeline = pipelineValue;
+    }
+
+    /**
+     * Register the monitor with the platform MBean server.
+     *
+     * @throws JMException the JMX exception
+     */
+    public final synchronized void register() throws JMException {
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        this.objectName = name;
+    }
+
+    /**
+     * Unregister the monitor from the platform MBean server.
+     *
+     * @throws JMException the JMX exception
+     */
+    public final synchronized void unregister() throws JMException {
+        if (this.objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * Gets the metrics of the import.
+     *
+     * @return the metrics
+     */
+    public final JBTMetrics getMetrics() {
+        return this.jbt.getMetrics();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getRequestsInFlight()
+     */
+    public final int getRequestsInFlight() {
+        return this.jbt.getMetrics().getRequestsInFlight();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getConcurrencyLimit()
+     */
+    public final int getConcurrencyLimit() {
+        final JBTConcurrencyLimiter limiter = this.jbt.getConcurrencyLimiter();
+        return limiter != null ? limiter.getLimit() : this.jbt.getThreads();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getMaxConcurrency()
+     */
+    public final int getMaxConcurrency() {
+        final JBTConcurrencyLimiter limiter = this.jbt.getConcurrencyLimiter();
+        return limiter != null ? limiter.getMaxLimit() : 0;
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#setMaxConcurrency(int)
+     */
+    public final void setMaxConcurrency(final int maxConcurrency) {
+        final JBTConcurrencyLimiter limiter = this.jbt.getConcurrencyLimiter();
+        if (limiter == null) {
+            throw new IllegalStateException("Adaptive concurrency is not enabled");
+        }
+        // The worker threads are the most requests that can be in flight
+        limiter.setMaxLimit(Math.min(maxConcurrency, this.jbt.getThreads()));
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getMaxRequestsPerSecond()
+     */
+    public final double getMaxRequestsPerSecond() {
+        return this.jbt.getMaxRequestsPerSecond();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#setMaxRequestsPerSecond(double)
+     */
+    public final void setMaxRequestsPerSecond(final double requestsPerSecond) {
+        this.jbt.setMaxRequestsPerSecond(requestsPerSecond);
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getQueueDepths()
+     */
+    public final Map<String, Integer> getQueueDepths() {
+        return this.pipeline.getQueueDepths();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getIssuesFound()
+     */
+    public final long getIssuesFound() {
+        return this.jbt.getMetrics().getIssuesFound();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getIssuesCompleted()
+     */
+    public final long getIssuesCompleted() {
+        return this.jbt.getMetrics().getIssuesCompleted();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getIssuesSkipped()
+     */
+    public final long getIssuesSkipped() {
+        return this.jbt.getMetrics().getIssuesSkipped();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getIssuesPerSecond()
+     */
+    public final double getIssuesPerSecond() {
+        return this.jbt.getMetrics().getIssuesPerSecond();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getOutcomeCounts()
+     */
+    public final Map<String, Long> getOutcomeCounts() {
+
+        final Map<String, Long> counts = new LinkedHashMap<String, Long>();
+        for (JBTResultType type : JBTResultType.values()) {
+            counts.put(type.name().toLowerCase(Locale.ROOT),
+                    this.jbt.getMetrics().getOutcomeCount(type));
+        }
+        return counts;
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getBytesSent()
+     */
+    public final long getBytesSent() {
+        return this.jbt.getMetrics().getBytesSent();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getBytesReceived()
+     */
+    public final long getBytesReceived() {
+        return this.jbt.getMetrics().getBytesReceived();
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getLatencyMillis()
+     */
+    public final Map<String, Double> getLatencyMillis() {
+
+        final JBTMetrics metrics = this.jbt.getMetrics();
+        final Map<String, Double> latencies = new LinkedHashMap<String, Double>();
+        for (JBTPhase phase : JBTPhase.values()) {
+            final JBTHistogram histogram = metrics.getHistogram(phase);
+            final String name = phase.name().toLowerCase(Locale.ROOT);
+            for (int percentile : metrics.getPercentiles()) {
+                latencies.put(name + ".p" + percentile, 
+                        histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI);
+            }
+            latencies.put(name + ".max", histogram.getMax() / NANOS_PER_MILLI);
+        }
+        return latencies;
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTImportMonitorMXBean#getCircuitBreakerOpenCount()
+     */
+    public final int getCircuitBreakerOpenCount() {
+        return this.jbt.getRetryHandler().getCircuitBreaker().getOpenCount();
+    }
+}
@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.Map;
+
+/**
+ * The Interface JBTImportMonitorMXBean.
+ * 
+ * The live counters and gauges of a running import, exposed through JMX.
+ * The maximum requests per second, and the maximum concurrency when it is
+ * adaptive, can be changed while the import runs.
+ */
+public interface JBTImportMonitorMXBean {
+
+    /**
+     * Gets the number of requests sent to Jira awaiting a response.
+     *
+     * @return the requests in flight
+     */
+    int getRequestsInFlight();
+
+    /**
+     * Gets the number of requests allowed in flight, the adaptive limit or
+     * otherwise the number of worker threads.
+     *
+     * @return the concurrency limit
+     */
+    int getConcurrencyLimit();
+
+    /**
+     * Gets the maximum the adaptive concurrency limit may grow to.
+     *
+     * @return the maximum concurrency, zero if not adaptive
+     */
+    int getMaxConcurrency();
+
+    /**
+     * Sets the maximum the adaptive concurrency limit may grow to, no more
+     * than the number of worker threads.
+     *
+     * @param maxConcurrency the maximum concurrency
+     */
+    void setMaxConcurrency(int maxConcurrency);
+
+    /**
+     * Gets the maximum requests sent to Jira per second.
+     *
+     * @return the requests per second, zero if unlimited
+     */
+    double getMaxRequestsPerSecond();
+
+    /**
+     * Sets the maximum requests sent to Jira per second.
+     *
+     * @param requestsPerSecond the requests per second, zero for unlimited
+     */
+    void setMaxRequestsPerSecond(double requestsPerSecond);
+
+    /**
+     * Gets the number of tasks waiting in front of each pipeline stage.
+     *
+     * @return the queue depths, keyed by stage
+     */
+    Map<String, Integer> getQueueDepths();
+
+    /**
+     * Gets the number of issues read from the index so far.
+     *
+     * @return the issues found
+     */
+    long getIssuesFound();
+
+    /**
+     * Gets the number of issues whose outcome has been recorded.
+     *
+     * @return the issues completed
+     */
+    long getIssuesCompleted();
+
+    /**
+     * Gets the number of issues skipped without being submitted.
+     *
+     * @return the issues skipped
+     */
+    long getIssuesSkipped();
+
+    /**
+     * Gets the issues completed per second since the import started.
+     *
+     * @return the issues per second
+     */
+    double getIssuesPerSecond();
+
+    /**
+     * Gets the number of issues completed with each result type.
+     *
+     * @return the counts, keyed by result type
+     */
+    Map<String, Long> getOutcomeCounts();
+
+    /**
+     * Gets the bytes sent to Jira.
+     *
+     * @return the bytes sent
+     */
+    long getBytesSent();
+
+    /**
+     * Gets the bytes received from Jira.
+     *
+     * @return the bytes received
+     */
+    long getBytesReceived();
+
+    /**
+     * Gets the latency percentiles of each phase in milliseconds.
+     *
+     * @return the latencies, keyed by phase and percentile, such as
+     *         jira_post.p99
+     */
+    Map<String, Double> getLatencyMillis();
+
+    /**
+     * Gets the number of times the workers were paused while Jira was
+     * unavailable.
+     *
+     * @return the circuit breaker open count
+     */
+    int getCircuitBreakerOpenCount();
+}
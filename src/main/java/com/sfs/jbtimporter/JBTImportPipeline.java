@@ -0,0 +1,572 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.BiConsumer;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class JBTImportPipeline.
+ * 
+ * Imports issues through a pipeline of stages, each with its own threads
+ * and a bounded queue in front of it:
+ * 
+ * load - checks and reads the issue files, small files are read into memory
+ * while larger files are left on disk to be streamed into the request, in
+ * incremental mode the files are hashed and unchanged issues dropped, by
+ * default on a thread for each processor;
+ * submit - sends the Jelly scripts to Jira, one thread per connection;
+ * aggregate - a single thread recording each outcome in the journal and
+ * the summary.
+ * 
+ * Reading the files of the next batch overlaps with waiting on Jira for the
+ * current one. In virtual thread mode each submission runs on its own
+ * virtual thread, with a semaphore capping the requests in flight, so a
+ * high concurrency does not need a large pool of platform threads. With an
+ * asynchronous transport the submit stage has no threads of its own: the
+ * load stage sends each script as soon as the limit of requests in flight
+ * allows, and the outcome is passed to the aggregate stage as the request
+ * completes, so no thread waits on Jira. Once
+ * the queue of a stage is full the stage feeding it blocks, back to the
+ * thread reading the index, so memory stays bounded whatever the size of
+ * the export.
+ */
+public class JBTImportPipeline {
+
+    /** The most threads loading the issue files by default. */
+    private static final int MAX_DEFAULT_LOAD_THREADS = 8;
+
+    /**
+     * The default number of threads loading the issue files, one for each
+     * processor, so the files of an incremental import are hashed in parallel.
+     */
+    public static final int DEFAULT_LOAD_THREADS = Math.min(
+            Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_LOAD_THREADS);
+
+    /** The size in bytes above which an issue file is streamed, not loaded. */
+    public static final long STREAM_THRESHOLD = 256 * 1024;
+
+    /** The jbt processor. */
+    private final JBTProcessor jbt;
+
+    /** The import summary. */
+    private final JBTImportSummary summary;
+
+    /** The executor of the load stage. */
+    private final ExecutorService loadExecutor;
+
+    /** The executor of the submit stage, null with an async transport. */
+    private final ExecutorService submitExecutor;
+
+    /** The flag set when the submit stage is driven by async requests. */
+    private final boolean async;
+
+    /** The most imports pending through the async transport. */
+    private final int maxPendingImports;
+
+    /** The imports pending through the async transport. */
+    private int pendingImports;
+
+    /** The permits of the submissions in flight, null for a thread pool. */
+    private final Semaphore submitPermits;
+
+    /** The executor of the aggregate stage. */
+    private final ExecutorService aggregateExecutor;
+
+    /**
+     * Instantiates a new JBT import pipeline, starting the threads of each
+     * stage.
+     *
+     * @param jbtValue the jbt processor
+     * @param summaryValue the import summary
+     */
+    public JBTImportPipeline(final JBTProcessor jbtValue,
+            final JBTImportSummary summaryValue) {
+        this.jbt = jbtValue;
+        this.summary = summaryValue;
+
+        final int loadThreads = jbtValue.getLoadThreads();
+        final int submitThreads = jbtValue.getThreads();
+
+        this.loadExecutor = JBTExecutors.newBlockingExecutor(
+                loadThreads, loadThreads * 2);
+        this.async = jbtValue.getTransport().isAsync();
+        this.maxPendingImports = submitThreads * 2;
+        ExecutorService virtualExecutor = null;
+        if (jbtValue.getVirtualThreads() && !this.async) {
+            virtualExecutor = JBTExecutors.newVirtualThreadExecutor();
+            if (virtualExecutor == null) {
+                System.out.println("Virtual threads are not supported by this JVM, "
+                        + "using " + submitThreads + " platform threads");
+            }
+        }
+        if (this.async) {
+            // The requests in flight are limited by the processor
+            this.submitExecutor = null;
+            this.submitPermits = null;
+        } else if (virtualExecutor != null) {
+            this.submitExecutor = virtualExecutor;
+            this.submitPermits = new Semaphore(submitThreads);
+        } else {
+            this.submitExecutor = JBTExecutors.newBlockingExecutor(
+                    submitThreads, submitThreads * 2);
+            this.submitPermits = null;
+        }
+        this.aggregateExecutor = JBTExecutors.newBlockingExecutor(
+                1, submitThreads * jbtValue.getBatchSize() * 2);
+    }
+
+    /**
+     * Pass a batch of issues into the pipeline. Blocks while the load stage
+     * is full.
+     *
+     * @param issues the issues
+     */
+    public final void importIssues(final List<JBTIssue> issues) {
+        this.loadExecutor.execute(new Runnable() {
+            public void run() {
+                loadIssues(issues);
+            }
+        });
+    }
+
+    /**
+     * Wait for every issue passed into the pipeline to be imported, and stop
+     * the threads of each stage.
+     */
+    public final void finish() {
+        JBTExecutors.awaitCompletion(this.loadExecutor);
+        if (this.async) {
+            this.awaitPendingImports();
+        } else {
+            JBTExecutors.awaitCompletion(this.submitExecutor);
+        }
+        JBTExecutors.awaitCompletion(this.aggregateExecutor);
+    }
+
+    /**
+     * Gets the number of tasks waiting in front of each stage. With virtual
+     * threads the submissions waiting for a permit are counted, with an
+     * async transport the requests waiting for the in flight limit.
+     *
+     * @return the queue depth of each stage
+     */
+    public final Map<String, Integer> getQueueDepths() {
+
+        final Map<String, Integer> depths = new LinkedHashMap<String, Integer>();
+        depths.put("load", getQueueDepth(this.loadExecutor));
+        if (this.async) {
+            depths.put("submit", this.jbt.getInFlightLimiter().getWaiting());
+        } else if (this.submitPermits != null) {
+            depths.put("submit", this.submitPermits.getQueueLength());
+        } else {
+            depths.put("submit", getQueueDepth(this.submitExecutor));
+        }
+        depths.put("aggregate", getQueueDepth(this.aggregateExecutor));
+        return depths;
+    }
+
+    /**
+     * Gets the number of tasks waiting in the queue of an executor.
+     *
+     * @param executor the executor
+     * @return the queue depth, zero if the executor has no queue
+     */
+    private static int getQueueDepth(final ExecutorService executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return 0;
+    }
+
+    /**
+     * Load the files of a batch of issues and pass them to the submit
+     * stage. Issues that are too large are submitted on their own, and
+     * issues that cannot be read are passed straight to the aggregate stage.
+     *
+     * @param issues the issues
+     */
+    private void loadIssues(final List<JBTIssue> issues) {
+
+        final Map<String, String> scripts = new LinkedHashMap<String, String>();
+        final List<JBTIssue> batch = new ArrayList<JBTIssue>();
+
+        for (JBTIssue issue : issues) {
+            final long start = System.nanoTime();
+            final File xmlfile = new File(issue.getFullFileName());
+
+            if (!xmlfile.isFile()) {
+                aggregate(issue, JBTImportResult.failure(JBTResultType.FILE_FAILURE,
+                        "ERROR loading XML: " + xmlfile.getPath() + " does not exist"));
+                continue;
+            }
+            if (this.jbt.getIncremental()) {
+                try {
+                    final String hash = JBTContentHasher.hash(xmlfile);
+                    if (this.jbt.getManifest().isUnchanged(issue.getId(), hash)) {
+                        // Unchanged since it was last imported
+                        this.summary.addUnchanged();
+                        this.jbt.getMetrics().addSkipped();
+                        continue;
+                    }
+                    issue.setContentHash(hash);
+                } catch (IOException ioe) {
+                    aggregate(issue, JBTImportResult.failure(JBTResultType.FILE_FAILURE,
+                            "ERROR hashing XML: " + ioe.getMessage()));
+                    continue;
+                }
+            }
+            if (xmlfile.length() > STREAM_THRESHOLD) {
+                // Stream the large XML file from disk on its own
+                submitFile(issue, xmlfile);
+                continue;
+            }
+            String xmldata = "";
+            try {
+                xmldata = this.jbt.loadXmlDataFile(issue.getFullFileName());
+            } catch (IOException ioe) {
+                aggregate(issue, JBTImportResult.failure(JBTResultType.FILE_FAILURE,
+                        "ERROR loading XML: " + ioe.getMessage()));
+                continue;
+            }
+            this.jbt.getMetrics().record(JBTPhase.FILE_LOAD, System.nanoTime() - start);
+
+            if (StringUtils.isBlank(xmldata)) {
+                aggregate(issue, JBTImportResult.failure(JBTResultType.FILE_FAILURE,
+                        "ERROR: The file was empty"));
+            } else if (scripts.containsKey(issue.getId())) {
+                // A duplicate issue id, import it on its own
+                final Map<String, String> script = new LinkedHashMap<String, String>();
+                script.put(issue.getId(), xmldata);
+                final List<JBTIssue> single = new ArrayList<JBTIssue>();
+                single.add(issue);
+                submitScripts(single, script);
+            } else {
+                scripts.put(issue.getId(), xmldata);
+                batch.add(issue);
+            }
+        }
+        if (!batch.isEmpty()) {
+            submitScripts(batch, scripts);
+        }
+    }
+
+    /**
+     * Pass the loaded scripts of a batch of issues to the submit stage. If
+     * the scripts could not be joined into a single script, and so were
+     * not sent, the issues are imported one at a time.
+     *
+     * @param issues the issues
+     * @param scripts the xmldata of each issue, keyed by issue id
+     */
+    private void submitScripts(final List<JBTIssue> issues,
+            final Map<String, String> scripts) {
+
+        if (this.async) {
+            this.submitScriptsAsync(issues, scripts);
+            return;
+        }
+        submit(new Runnable() {
+            public void run() {
+                Map<String, JBTImportResult> results = null;
+                if (issues.size() > 1) {
+                    // The cached security key is reused for every issue
+                    results = jbt.importXMLBatch(null, scripts);
+                }
+                for (JBTIssue issue : issues) {
+                    if (results != null) {
+                        aggregate(issue, results.get(issue.getId()));
+                    } else {
+                        aggregate(issue, jbt.importXML(null, scripts.get(issue.getId())));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Pass an issue to the submit stage that is streamed from its file.
+     *
+     * @param issue the issue
+     * @param xmlfile the xml file
+     */
+    private void submitFile(final JBTIssue issue, final File xmlfile) {
+
+        if (this.async) {
+            this.startPendingImport();
+            CompletableFuture<JBTImportResult> future = null;
+            try {
+                future = this.jbt.importXMLAsync(null, xmlfile);
+            } finally {
+                if (future == null) {
+                    this.finishPendingImport();
+                }
+            }
+            this.aggregateAsync(issue, future);
+            return;
+        }
+        submit(new Runnable() {
+            public void run() {
+                aggregate(issue, jbt.importXML(null, xmlfile));
+            }
+        });
+    }
+
+    /**
+     * Pass a task to the submit stage. With virtual threads the caller
+     * blocks until a permit is free, otherwise it blocks while the queue of
+     * the thread pool is full.
+     *
+     * @param task the task
+     */
+    private void submit(final Runnable task) {
+
+        if (this.submitPermits == null) {
+            this.submitExecutor.execute(task);
+            return;
+        }
+        try {
+            this.submitPermits.acquire();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ie);
+        }
+        try {
+            this.submitExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        submitPermits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            this.submitPermits.release();
+            throw ree;
+        }
+    }
+
+    /**
+     * Send the loaded scripts of a batch of issues through the async
+     * transport. If the scripts could not be joined into a single script
+     * the issues are sent one at a time.
+     *
+     * @param issues the issues
+     * @param scripts the xmldata of each issue, keyed by issue id
+     */
+    private void submitScriptsAsync(final List<JBTIssue> issues,
+            final Map<String, String> scripts) {
+
+        if (issues.size() > 1) {
+            this.startPendingImport();
+            CompletableFuture<Map<String, JBTImportResult>> batch = null;
+            try {
+                // The cached security key is reused for every issue
+                batch = this.jbt.importXMLBatchAsync(null, scripts);
+            } finally {
+                if (batch == null) {
+                    this.finishPendingImport();
+                }
+            }
+            if (batch != null) {
+                batch.whenComplete(
+                        new BiConsumer<Map<String, JBTImportResult>, Throwable>() {
+                            public void accept(final Map<String, JBTImportResult> results,
+                                    final Throwable error) {
+                                try {
+                                    for (JBTIssue issue : issues) {
+                                        aggregate(issue, error == null
+                                                ? results.get(issue.getId())
+                                                : asyncFailure(error));
+                                    }
+                                } finally {
+                                    finishPendingImport();
+                                }
+                            }
+                        });
+                return;
+            }
+        }
+        for (JBTIssue issue : issues) {
+            this.startPendingImport();
+            CompletableFuture<JBTImportResult> future = null;
+            try {
+                future = this.jbt.importXMLAsync(null, scripts.get(issue.getId()));
+            } finally {
+                if (future == null) {
+                    this.finishPendingImport();
+                }
+            }
+            this.aggregateAsync(issue, future);
+        }
+    }
+
+    /**
+     * Pass the outcome of importing an issue through the async transport to
+     * the aggregate stage once it completes.
+     *
+     * @param issue the issue
+     * @param future the future import result
+     */
+    private void aggregateAsync(final JBTIssue issue,
+            final CompletableFuture<JBTImportResult> future) {
+
+        future.whenComplete(new BiConsumer<JBTImportResult, Throwable>() {
+            public void accept(final JBTImportResult result, final Throwable error) {
+                try {
+                    aggregate(issue, error == null ? result : asyncFailure(error));
+                } finally {
+                    finishPendingImport();
+                }
+            }
+        });
+    }
+
+    /**
+     * Gets the failure of an import through the async transport that
+     * completed with an unexpected error.
+     *
+     * @param error the error
+     * @return the import result
+     */
+    private static JBTImportResult asyncFailure(final Throwable error) {
+        return JBTImportResult.failure(JBTResultType.TRANSPORT_FAILURE,
+                "ERROR importing the issue: " + error);
+    }
+
+    /**
+     * Wait until fewer than the maximum imports are pending through the
+     * async transport, and count another.
+     */
+    private synchronized void startPendingImport() {
+        try {
+            while (this.pendingImports >= this.maxPendingImports) {
+                this.wait();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(ie);
+        }
+        this.pendingImports++;
+    }
+
+    /**
+     * Count an import through the async transport as complete.
+     */
+    private synchronized void finishPendingImport() {
+        this.pendingImports--;
+        this.notifyAll();
+    }
+
+    /**
+     * Wait for every import pending through the async transport to complete.
+     */
+    private synchronized void awaitPendingImports() {
+        try {
+            while (this.pendingImports > 0) {
+                this.wait();
+            }
+        } catch (InterruptedException ie) {
+            System.out.println("ERROR waiting for issues to complete: " 
+                    + ie.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Pass the outcome of importing an issue to the aggregate stage.
+     *
+     * @param issue the issue
+     * @param result the import result
+     */
+    private void aggregate(final JBTIssue issue, final JBTImportResult result) {
+
+        this.aggregateExecutor.execute(new Runnable() {
+            public void run() {
+                recordOutcome(issue, result);
+            }
+        });
+    }
+
+    /**
+     * Record the outcome of importing an issue.
+     *
+     * @param issue the issue
+     * @param result the import result
+     */
+    private void recordOutcome(final JBTIssue issue, final JBTImportResult result) {
+        
+        this.jbt.getMetrics().addCompleted(result.getType());
+        try {
+            this.jbt.getJournal().record(issue.getId(), result.isSuccess()
+                    ? JBTJournal.SUCCESS : result.getType().name());
+        } catch (IOException ioe) {
+            System.out.println("ERROR writing to the import journal: " 
+                    + ioe.getMessage());
+        }
+        // An issue created with errors, or that may have been created, is
+        // not imported again either
+        if (result.getType().isComplete() && issue.getContentHash() != null) {
+            try {
+                this.jbt.getManifest().record(issue.getId(), issue.getContentHash());
+            } catch (IOException ioe) {
+                System.out.println("ERROR writing to the import manifest: " 
+                        + ioe.getMessage());
+            }
+        }
+        
+        if (!result.isSuccess()) {
+            if (result.hasFailure(JBTResultType.ATTACHMENT_FAILURE)) {
+                // File attachment error
+                this.summary.addFileError(issue.getId());
+            }
+            if (result.hasFailure(JBTResultType.TRANSITION_FAILURE)) {
+                // Issue transition error
+                this.summary.addTransitionError(issue.getId());
+            }
+            if (result.getType() == JBTResultType.UNCONFIRMED) {
+                // The issue may exist in Jira
+                this.summary.addUnconfirmed(issue.getId());
+            }
+
+            // There was an issue processing this issue
+            this.summary.addError(issue.getId());
+        
+            final StringBuilder message = new StringBuilder();
+            message.append("Error processing Issue ID: " + issue.getId() + "\n");
+            message.append("Filename: " + issue.getFullFileName() + "\n");
+            message.append("Result: " + result.getType() + "\n");
+            message.append(result.getMessage() + "\n");
+            message.append("-------------------------------------");
+            System.out.println(message.toString());
+        }  else {
+            this.summary.addSuccess();
+        }
+    }
+}
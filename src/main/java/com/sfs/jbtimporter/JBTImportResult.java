@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * The Class JBTImportResult.
+ * 
+ * The typed outcome of importing an issue. An issue may match more than one
+ * failure class, for example both an attachment and a transition failure,
+ * the type is the first of these in rule order.
+ */
+public class JBTImportResult {
+
+    /** The type. */
+    private final JBTResultType type;
+
+    /** The message. */
+    private final String message;
+
+    /** The failure classes the result matched. */
+    private final Set<JBTResultType> failures;
+
+    /**
+     * Instantiates a new JBT import result.
+     *
+     * @param typeValue the type
+     * @param messageValue the message
+     * @param failuresValue the failure classes the result matched
+     */
+    public JBTImportResult(final JBTResultType typeValue, final String messageValue,
+            final Set<JBTResultType> failuresValue) {
+        this.type = typeValue;
+        this.message = messageValue != null ? messageValue : "";
+        this.failures = Collections.unmodifiableSet(failuresValue);
+    }
+
+    /**
+     * Creates a successful result.
+     *
+     * @param messageValue the output of the Jelly script
+     * @return the import result
+     */
+    public static JBTImportResult success(final String messageValue) {
+        return new JBTImportResult(JBTResultType.SUCCESS, messageValue,
+                EnumSet.noneOf(JBTResultType.class));
+    }
+
+    /**
+     * Creates a failed result of a single failure class.
+     *
+     * @param typeValue the type
+     * @param messageValue the message
+     * @return the import result
+     */
+    public static JBTImportResult failure(final JBTResultType typeValue,
+            final String messageValue) {
+        return new JBTImportResult(typeValue, messageValue, EnumSet.of(typeValue));
+    }
+
+    /**
+     * Gets the type.
+     *
+     * @return the type
+     */
+    public final JBTResultType getType() {
+        return this.type;
+    }
+
+    /**
+     * Gets the message, the output of the Jelly script or the error.
+     *
+     * @return the message
+     */
+    public final String getMessage() {
+        return this.message;
+    }
+
+    /**
+     * Checks if the issue was imported cleanly.
+     *
+     * @return true, if successful
+     */
+    public final boolean isSuccess() {
+        return this.type == JBTResultType.SUCCESS;
+    }
+
+    /**
+     * Checks if the result matched the failure class.
+     *
+     * @param failure the failure class
+     * @return true, if the result matched
+     */
+    public final boolean hasFailure(final JBTResultType failure) {
+        return this.failures.contains(failure);
+    }
+
+    /**
+     * Gets the failure classes the result matched.
+     *
+     * @return the failures
+     */
+    public final Set<JBTResultType> getFailures() {
+        return this.failures;
+    }
+}
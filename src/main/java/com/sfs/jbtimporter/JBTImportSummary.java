@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class JBTImportSummary.
+ * 
+ * Collects the outcome of each issue processed during an import. The
+ * summary may be updated by several worker threads at once.
+ */
+public class JBTImportSummary {
+
+    /** The success count. */
+    private int successCount = 0;
+
+    /** The count of issues skipped as already imported. */
+    private int skippedCount = 0;
+
+    /** The count of issues skipped as unchanged since they were imported. */
+    private int unchangedCount = 0;
+
+    /** The issues with transition errors. */
+    private final List<String> transitionErrors = new ArrayList<String>();
+
+    /** The issues with file attachment errors. */
+    private final List<String> fileErrors = new ArrayList<String>();
+
+    /** The issues with errors. */
+    private final List<String> errors = new ArrayList<String>();
+
+    /** The issues that may have been created by a batch that threw. */
+    private final List<String> unconfirmed = new ArrayList<String>();
+
+    /**
+     * Record a successfully imported issue.
+     */
+    public final synchronized void addSuccess() {
+        this.successCount++;
+    }
+
+    /**
+     * Record an issue skipped as it was imported by a previous run.
+     */
+    public final synchronized void addSkipped() {
+        this.skippedCount++;
+    }
+
+    /**
+     * Record an issue skipped as it is unchanged since it was imported.
+     */
+    public final synchronized void addUnchanged() {
+        this.unchangedCount++;
+    }
+
+    /**
+     * Record an issue with a file attachment error.
+     *
+     * @param id the issue id
+     */
+    public final synchronized void addFileError(final String id) {
+        this.fileErrors.add(id);
+    }
+
+    /**
+     * Record an issue with a transition error.
+     *
+     * @param id the issue id
+     */
+    public final synchronized void addTransitionError(final String id) {
+        this.transitionErrors.add(id);
+    }
+
+    /**
+     * Record an issue that failed due to an error.
+     *
+     * @param id the issue id
+     */
+    public final synchronized void addError(final String id) {
+        this.errors.add(id);
+    }
+
+    /**
+     * Record an issue that may have been created by a batch that threw.
+     *
+     * @param id the issue id
+     */
+    public final synchronized void addUnconfirmed(final String id) {
+        this.unconfirmed.add(id);
+    }
+
+    /**
+     * Gets the success count.
+     *
+     * @return the success count
+     */
+    public final synchronized int getSuccessCount() {
+        return this.successCount;
+    }
+
+    /**
+     * Gets the count of issues skipped as already imported.
+     *
+     * @return the skipped count
+     */
+    public final synchronized int getSkippedCount() {
+        return this.skippedCount;
+    }
+
+    /**
+     * Gets the count of issues skipped as unchanged since they were imported.
+     *
+     * @return the unchanged count
+     */
+    public final synchronized int getUnchangedCount() {
+        return this.unchangedCount;
+    }
+
+    /**
+     * Gets the issues with file attachment errors.
+     *
+     * @return the file errors
+     */
+    public final synchronized List<String> getFileErrors() {
+        return new ArrayList<String>(this.fileErrors);
+    }
+
+    /**
+     * Gets the issues with transition errors.
+     *
+     * @return the transition errors
+     */
+    public final synchronized List<String> getTransitionErrors() {
+        return new ArrayList<String>(this.transitionErrors);
+    }
+
+    /**
+     * Gets the issues that failed due to errors.
+     *
+     * @return the errors
+     */
+    public final synchronized List<String> getErrors() {
+        return new ArrayList<String>(this.errors);
+    }
+
+    /**
+     * Gets the issues that may have been created by a batch that threw.
+     *
+     * @return the unconfirmed issues
+     */
+    public final synchronized List<String> getUnconfirmed() {
+        return new ArrayList<String>(this.unconfirmed);
+    }
+}
@@ -15,16 +15,19 @@
  ******************************************************************************/
 package com.sfs.jbtimporter;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.InputStreamReader;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
-import java.util.ArrayList;
+import java.io.Writer;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.management.JMException;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Source;
 import javax.xml.transform.Templates;
@@ -82,14 +85,34 @@ public class JBTImporter {
                     // An XSLT transformation has been requested
                     performTransformation(jbt);
                 }
-            }            
+            }
+            jbt.shutdown();
         } else {
             // Print the usage
             System.out.println("Usage (import): -u=username -p=password -h=jira_base_url "
-                    + "-d=bugtrack_export_directory");
+                    + "-d=bugtrack_export_directory [-t=threads] [-b=batch_size] "
+                    + "[--load-threads=n] [--virtual-threads] "
+                    + "[--max-connections=n] [--transport=blocking|async] "
+                    + "[--connect-timeout=ms] [--socket-timeout=ms] [--idle-timeout=ms] "
+                    + "[--resume] [--incremental] [--rules=classification_rules_file] "
+                    + "[--retries=n] [--retry-delay=ms] "
+                    + "[--breaker-threshold=n] [--breaker-pause=ms] "
+                    + "[--max-rps=n] [--adaptive] "
+                    + "[--progress=seconds] [--metrics=metrics_file] "
+                    + "[--metrics-port=n]");
+            System.out.println("  --retries retries scripts that may have reached Jira, "
+                    + "which can create duplicate issues (default 0)");
+            System.out.println("  --transport=async keeps up to -t requests in flight "
+                    + "without a thread waiting on each, --virtual-threads is not needed");
+            System.out.println("  --load-threads reads and hashes the issue files "
+                    + "in parallel (default " + JBTImportPipeline.DEFAULT_LOAD_THREADS
+                    + ", one per processor)");
+            System.out.println("  --virtual-threads needs a Java 21 runtime, on Java 17 "
+                    + "it has no effect and -t platform threads are used");
             System.out.println("Usage (transform): -x=xslt_filename "
-                    + "-d=bugtrack_export_directory");
-            System.out.println("Usage (revert): -d=bugtrack_export_directory -r");
+                    + "-d=bugtrack_export_directory [-t=threads] [--incremental]");
+            System.out.println("Usage (revert): -d=bugtrack_export_directory -r "
+                    + "[-t=threads] [--rollback]");
         }
         System.out.println();
     }
@@ -106,139 +129,304 @@ public class JBTImporter {
         System.out.println("Jira host: " + jbt.getBaseUrl());
         System.out.println("Export directory: " + jbt.getExportBase());
         
-        List<JBTIssue> issues = new ArrayList<JBTIssue>();
+        final JBTJournal journal = jbt.getJournal();
         try {
-            issues = jbt.parseXmlIndex();
+            if (jbt.getResume()) {
+                // Load the issues imported by the previous run
+                journal.load();
+            }
+            journal.open(jbt.getResume());
+        } catch (IOException ioe) {
+            System.out.println("ERROR opening the import journal: " + ioe.getMessage());
+            return;
+        }
+        if (jbt.getIncremental()) {
+            try {
+                // Load the content hashes of the issues already imported
+                jbt.getManifest().load();
+                jbt.getManifest().open();
+            } catch (IOException ioe) {
+                System.out.println("ERROR opening the import manifest: " 
+                        + ioe.getMessage());
+                return;
+            }
+        }
+        
+        jbt.getConnectionPool().startIdleConnectionEviction();
+        
+        final JBTMetrics metrics = jbt.getMetrics();
+        metrics.start(jbt.getProgressInterval());
+        
+        final JBTImportSummary summary = new JBTImportSummary();
+        final JBTImportPipeline pipeline = new JBTImportPipeline(jbt, summary);
+        final JBTImportMonitor monitor = new JBTImportMonitor(jbt, pipeline);
+        try {
+            monitor.register();
+        } catch (JMException jme) {
+            System.out.println("ERROR registering the import MBean: " + jme.getMessage());
+        }
+        final JBTMetricsServer metricsServer = startMetricsServer(monitor, 
+                jbt.getMetricsPort());
+        final JBTIssueBatcher batcher = new JBTIssueBatcher(jbt.getBatchSize()) {
+            protected void handleBatch(final List<JBTIssue> issues) {
+                pipeline.importIssues(issues);
+            }
+        };
+        try {
+            // Process the issues as they are read from the XML file
+            jbt.parseXmlIndex(metrics.timeIndex(new JBTIssueHandler() {
+                public void handleIssue(final JBTIssue issue) {
+                    if (journal.isComplete(issue.getId())) {
+                        // Imported by the previous run
+                        summary.addSkipped();
+                        metrics.addSkipped();
+                    } else {
+                        batcher.handleIssue(issue);
+                    }
+                }
+            }));
+            metrics.setIndexComplete();
+            // Submit any remaining issues
+            batcher.flush();
         } catch (IOException ioe) {
             System.out.println("ERROR loading index.xml file: " + ioe.getMessage());                
         } catch (SAXException se) {
             System.out.println("ERROR parsing index.xml file: " + se.getMessage());
         }
-        // Process the issues in the XML file
-        processIssues(jbt, issues);
+        pipeline.finish();
+        metrics.stop();
+        
+        try {
+            journal.close();
+        } catch (IOException ioe) {
+            System.out.println("ERROR closing the import journal: " + ioe.getMessage());
+        }
+        if (jbt.getIncremental()) {
+            try {
+                jbt.getManifest().close();
+            } catch (IOException ioe) {
+                System.out.println("ERROR closing the import manifest: " 
+                        + ioe.getMessage());
+            }
+        }
+        printSummary(summary, jbt.getRetryHandler(), jbt.getConcurrencyLimiter());
+        printMetrics(metrics, jbt.getMetricsFile());
+        
+        if (metricsServer != null) {
+            metricsServer.stop();
+        }
+        try {
+            monitor.unregister();
+        } catch (JMException jme) {
+            System.out.println("ERROR unregistering the import MBean: " 
+                    + jme.getMessage());
+        }
     }
     
     
     /**
-     * Perform a transformation.
+     * Start serving the live metrics of the import on localhost.
      *
-     * @param jbt the jbt
+     * @param monitor the import monitor
+     * @param port the port, zero to not serve the metrics
+     * @return the metrics server, or null if not started
      */
-    private static void performTransformation(final JBTProcessor jbt) {
+    private static JBTMetricsServer startMetricsServer(final JBTImportMonitor monitor,
+            final int port) {
         
-        System.out.println("Beginning transformation...");
-        System.out.println("XSLT file: " + jbt.getXsltFileName());
-        System.out.println("Export directory: " + jbt.getExportBase());
-        
-        List<JBTIssue> issues = new ArrayList<JBTIssue>();
+        if (port <= 0) {
+            return null;
+        }
         try {
-            issues = jbt.parseXmlIndex();
+            final JBTMetricsServer metricsServer = new JBTMetricsServer(monitor, port);
+            metricsServer.start();
+            System.out.println("Metrics served at " + metricsServer.getUrl());
+            return metricsServer;
         } catch (IOException ioe) {
-            System.out.println("ERROR loading index.xml file: " + ioe.getMessage());                
-        } catch (SAXException se) {
-            System.out.println("ERROR parsing index.xml file: " + se.getMessage());
+            System.out.println("ERROR starting the metrics endpoint: " 
+                    + ioe.getMessage());
+            return null;
         }
-        // Process the issues in the XML file
-        transformIssues(jbt, issues);
     }
     
+    
     /**
-     * Process the issues that require importing.
+     * Perform a transformation.
      *
-     * @param jbt the jbt processor
-     * @param issues the issues
+     * @param jbt the jbt
      */
-    private static void processIssues(final JBTProcessor jbt, 
-            final List<JBTIssue> issues) {
+    private static void performTransformation(final JBTProcessor jbt) {
         
-        int successCount = 0;
-        List<String> transitionErrors = new ArrayList<String>();
-        List<String> fileErrors = new ArrayList<String>();
-        List<String> errors = new ArrayList<String>();
+        System.out.println("Beginning transformation...");
+        System.out.println("XSLT file: " + jbt.getXsltFileName());
+        System.out.println("Export directory: " + jbt.getExportBase());
         
-        for (JBTIssue issue : issues) {
-            
-            String error = "";            
-            String xmldata = "";      
+        final File xsltFile = new File(jbt.getXsltFileName());
+
+        final Source xsltSource = new StreamSource(xsltFile);
+        final TransformerFactory transFact = TransformerFactory.newInstance();
+        Templates cachedXSLT = null;
+        
+        try {
+            // The stylesheet is compiled and validated once, up front
+            cachedXSLT = transFact.newTemplates(xsltSource);
+        } catch (TransformerConfigurationException tce) {
+            System.out.println("ERROR configuring XSLT engine: " + tce.getMessage());
+        }
+        
+        // The hash of the stylesheet and escaping, combined with the hash
+        // of each source file to tell if its transformed file is current
+        String settingsHash = null;
+        if (jbt.getIncremental()) {
             try {
-                xmldata = jbt.loadXmlDataFile(issue.getFullFileName());
+                settingsHash = JBTContentHasher.hash(JBTContentHasher.hash(xsltFile)
+                        + "\n" + jbt.getSpecialCharacterMapHash());
+                jbt.getTransformManifest().load();
+                jbt.getTransformManifest().open();
             } catch (IOException ioe) {
-                error = "ERROR loading XML: " + ioe.getMessage();
-            }
-                
-            if (StringUtils.isNotBlank(xmldata)) {
-                // Import the XML data into Jira
-                // Get a valid key
-                String key = "";
-                try {
-                    key = jbt.getKey();
-                } catch (IOException ioe) {
-                    error = "ERROR getting security key: " + ioe.getMessage();
+                System.out.println("ERROR opening the transform manifest: " 
+                        + ioe.getMessage());
+                return;
+            }
+        }
+        final AtomicInteger unchangedCount = new AtomicInteger();
+        
+        if (cachedXSLT != null) {
+            // A transformer is not thread safe, so each worker thread
+            // creates its own from the compiled stylesheet when it first
+            // needs one
+            final Templates templates = cachedXSLT;
+            final String transformSettings = settingsHash;
+            final ThreadLocal<Transformer> transformers = new ThreadLocal<Transformer>() {
+                protected Transformer initialValue() {
+                    return createTransformer(templates);
                 }
-                if (StringUtils.isNotBlank(key)) {
-                    try {                        
-                        final String result = jbt.importXML(key, xmldata);
-                        // If the result is long then an error was thrown
-                        if (result.length() > 30) {
-                            error = result;
-                        }
-                    } catch (IOException ioe) {
-                        error = "ERROR communicating with Jira: " + ioe.getMessage();
+            };
+            final ExecutorService executor = JBTExecutors.newBlockingExecutor(
+                    jbt.getThreads(), jbt.getThreads() * 2);
+            try {
+                // Process the issues as they are read from the XML file
+                jbt.parseXmlIndex(new JBTIssueHandler() {
+                    public void handleIssue(final JBTIssue issue) {
+                        executor.execute(new Runnable() {
+                            public void run() {
+                                transformIssue(jbt, transformers.get(), issue,
+                                        transformSettings, unchangedCount);
+                            }
+                        });
                     }
-                } else {
-                    error = "ERROR: The security key is not valid";
-                }                
-            } else {
-                error = "ERROR: The file was empty";
+                });
+            } catch (IOException ioe) {
+                System.out.println("ERROR loading index.xml file: " + ioe.getMessage());                
+            } catch (SAXException se) {
+                System.out.println("ERROR parsing index.xml file: " + se.getMessage());
             }
-            
-            if (StringUtils.isNotBlank(error)) {
-                if (error.contains("Unable to make temporary copy of file")) {
-                    // File attachment error
-                    fileErrors.add(issue.getId());
-                }
-                if (error.contains("that is not a valid workflow transition for the")) {
-                    // Issue transition error
-                    transitionErrors.add(issue.getId());
-                }
-
-                // There was an issue processing this issue
-                errors.add(issue.getId());
-            
-                System.out.println("Error processing Issue ID: " + issue.getId());
-                System.out.println("Filename: " + issue.getFullFileName());                
-                System.out.println(error);                
-                System.out.println("-------------------------------------");
-            }  else {
-                successCount++;
+            JBTExecutors.awaitCompletion(executor);
+        }
+        if (jbt.getIncremental()) {
+            try {
+                jbt.getTransformManifest().close();
+            } catch (IOException ioe) {
+                System.out.println("ERROR closing the transform manifest: " 
+                        + ioe.getMessage());
             }
+            System.out.println(unchangedCount.get() 
+                    + " skipped as unchanged since they were transformed");
+        }
+    }
+    
+    /**
+     * Creates a transformer from the compiled stylesheet.
+     *
+     * @param templates the compiled stylesheet
+     * @return the transformer, or null if it could not be created
+     */
+    private static Transformer createTransformer(final Templates templates) {
+        
+        Transformer trans = null;
+        try {
+            trans = templates.newTransformer();
+            // Enable indenting and UTF8 encoding
+            trans.setOutputProperty(OutputKeys.INDENT, "yes");
+            trans.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        } catch (TransformerConfigurationException tce) {
+            System.out.println("ERROR configuring XSLT engine: " + tce.getMessage());
         }
+        return trans;
+    }
+    
+    /**
+     * Print the summary of the import.
+     *
+     * @param summary the import summary
+     * @param retryHandler the retry handler
+     * @param concurrencyLimiter the concurrency limiter, or null if not adaptive
+     */
+    private static void printSummary(final JBTImportSummary summary,
+            final JBTRetryHandler retryHandler,
+            final JBTConcurrencyLimiter concurrencyLimiter) {
+        
         System.out.println();
         System.out.println("=====================================");
         System.out.println("Import complete.");
-        System.out.println(successCount + " imported cleanly");
-        System.out.println(fileErrors.size() + " imported with file attachment errors");
-        System.out.println(transitionErrors.size() + " imported with transition errors");
-        System.out.println(errors.size() + " failed due to errors");
+        if (summary.getSkippedCount() > 0) {
+            System.out.println(summary.getSkippedCount() 
+                    + " skipped as imported by a previous run");
+        }
+        if (summary.getUnchangedCount() > 0) {
+            System.out.println(summary.getUnchangedCount() 
+                    + " skipped as unchanged since they were imported");
+        }
+        System.out.println(summary.getSuccessCount() + " imported cleanly");
+        System.out.println(summary.getFileErrors().size() 
+                + " imported with file attachment errors");
+        System.out.println(summary.getTransitionErrors().size() 
+                + " imported with transition errors");
+        System.out.println(summary.getErrors().size() + " failed due to errors");
+        if (summary.getUnconfirmed().size() > 0) {
+            System.out.println(summary.getUnconfirmed().size() 
+                    + " of them may have been created, reconcile them with Jira");
+        }
+        for (Map.Entry<JBTResultType, Integer> retries 
+                : retryHandler.getRetryCounts().entrySet()) {
+            System.out.println(retries.getValue() + " retries after " 
+                    + retries.getKey().name().toLowerCase(Locale.ROOT).replace('_', ' ') + "s");
+        }
+        if (concurrencyLimiter != null) {
+            System.out.println("Adaptive concurrency finished at " 
+                    + concurrencyLimiter.getLimit() + " requests in flight");
+        }
+        if (retryHandler.getCircuitBreaker().getOpenCount() > 0) {
+            System.out.println("Workers paused " 
+                    + retryHandler.getCircuitBreaker().getOpenCount()
+                    + " times while Jira was unavailable");
+        }
         System.out.println("=====================================");
         
-        if (fileErrors.size() > 0) {
+        if (summary.getFileErrors().size() > 0) {
             System.out.println("Issues with file attachment problems: ");
-            for (String id : fileErrors) {
+            for (String id : summary.getFileErrors()) {
                 System.out.print(id);
                 System.out.print(", ");
             }
         }
-        if (transitionErrors.size() > 0) {
+        if (summary.getTransitionErrors().size() > 0) {
             System.out.println("Issues with transition problems: ");
-            for (String id : transitionErrors) {
+            for (String id : summary.getTransitionErrors()) {
                 System.out.print(id);
                 System.out.print(", ");
             }
         }
-        if (errors.size() > 0) {
+        if (summary.getErrors().size() > 0) {
             System.out.println("Issues with serious errors: ");
-            for (String id : errors) {
+            for (String id : summary.getErrors()) {
+                System.out.print(id);
+                System.out.print(", ");
+            }
+        }
+        if (summary.getUnconfirmed().size() > 0) {
+            System.out.println("Issues to reconcile with Jira: ");
+            for (String id : summary.getUnconfirmed()) {
                 System.out.print(id);
                 System.out.print(", ");
             }
@@ -247,156 +435,179 @@ public class JBTImporter {
     }
     
     /**
-     * Revert the transformed issue XML files.
+     * Print the throughput and the time taken by each phase of the import,
+     * and write the metrics to the metrics file.
+     *
+     * @param metrics the metrics
+     * @param metricsFile the metrics file
+     */
+    private static void printMetrics(final JBTMetrics metrics, final File metricsFile) {
+        
+        System.out.println(String.format(Locale.ROOT, 
+                "%.1f issues/s over %.1fs, %d bytes sent, %d bytes received", 
+                metrics.getIssuesPerSecond(), metrics.getElapsedSeconds(),
+                metrics.getBytesSent(), metrics.getBytesReceived()));
+        for (JBTPhase phase : JBTPhase.values()) {
+            final String phaseSummary = metrics.getPhaseSummary(phase);
+            if (phaseSummary != null) {
+                System.out.println(phaseSummary);
+            }
+        }
+        try {
+            metrics.writeJson(metricsFile);
+            System.out.println("Metrics written to " + metricsFile.getPath());
+        } catch (IOException ioe) {
+            System.out.println("ERROR writing the metrics: " + ioe.getMessage());
+        }
+    }
+    
+    /**
+     * Revert the transformed issue XML files, or roll back an interrupted
+     * revert.
      *
      * @param jbt the jbt
      */
     private static void revertTransformation(final JBTProcessor jbt) {
         
-        System.out.println("Reverting transformation...");
+        if (jbt.getRollback()) {
+            System.out.println("Rolling back the revert...");
+        } else {
+            System.out.println("Reverting transformation...");
+        }
         System.out.println("Export directory: " + jbt.getExportBase());
+        System.out.println("Threads: " + jbt.getThreads());
         
-        List<JBTIssue> issues = new ArrayList<JBTIssue>();
-        try {
-            issues = jbt.parseXmlIndex();
-        } catch (IOException ioe) {
-            System.out.println("ERROR loading index.xml file: " + ioe.getMessage());                
-        } catch (SAXException se) {
-            System.out.println("ERROR parsing index.xml file: " + se.getMessage());
+        final JBTReverter reverter = new JBTReverter(jbt);
+        if (jbt.getRollback()) {
+            reverter.rollback();
+        } else {
+            reverter.revert();
         }
-        // Process the issues in the XML file
-        revertIssues(jbt, issues);
+        System.out.println("=====================================");
     }
     
-    
     /**
-     * Transform the issues to the new XML format.
+     * Transform the issue to the new XML format.
      *
      * @param jbt the jbt processor
-     * @param issues the issues
+     * @param trans the transformer
+     * @param issue the issue
+     * @param settingsHash the hash of the stylesheet and escaping, or null
+     *            if the transform is not incremental
+     * @param unchangedCount the count of files skipped as unchanged
      */
-    private static void transformIssues(final JBTProcessor jbt, 
-            final List<JBTIssue> issues) {
+    private static void transformIssue(final JBTProcessor jbt, 
+            final Transformer trans, final JBTIssue issue,
+            final String settingsHash, final AtomicInteger unchangedCount) {
         
-        final File xsltFile = new File(jbt.getXsltFileName());
-
-        final Source xsltSource = new StreamSource(xsltFile);
-        final TransformerFactory transFact = TransformerFactory.newInstance();
-        Transformer trans = null;
+        // Print the messages as one block so the output of
+        // concurrent workers does not interleave
+        final StringBuilder message = new StringBuilder();
+        message.append("Processing Issue ID: " + issue.getId() + "\n");
+        message.append("Filename: " + issue.getFullFileName() + "\n");
         
-        try {
-            final Templates cachedXSLT = transFact.newTemplates(xsltSource);
-            trans = cachedXSLT.newTransformer();
-        } catch (TransformerConfigurationException tce) {
-            System.out.println("ERROR configuring XSLT engine: " + tce.getMessage());
+        if (trans == null) {
+            message.append("ERROR: The XSLT engine is not configured\n");
+            message.append("-------------------------------------");
+            System.out.println(message.toString());
+            return;
         }
-        // Enable indenting and UTF8 encoding
-        trans.setOutputProperty(OutputKeys.INDENT, "yes");
-        trans.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-        
-        if (trans != null) {
-            for (JBTIssue issue : issues) {
-                System.out.println("Processing Issue ID: " + issue.getId());
-                System.out.println("Filename: " + issue.getFullFileName());
-                     
-                // Read the XML file
-                final File xmlFile = new File(issue.getFullFileName());
-                final File tempFile = new File(issue.getFullFileName() + ".tmp");
-                final File originalFile = new File(issue.getFullFileName() + ".old");
-                
-                Source xmlSource = null;
-                if (originalFile.exists()) {
-                    // The original file exists, use that as the XML source
-                    xmlSource = new StreamSource(originalFile);
-                } else {
-                    // No backup exists, use the .xml file.
-                    xmlSource = new StreamSource(xmlFile);
+             
+        // Read the XML file
+        final File xmlFile = new File(issue.getFullFileName());
+        final File tempFile = new File(issue.getFullFileName() + ".tmp");
+        final File originalFile = new File(issue.getFullFileName() + ".old");
+        final String manifestKey = issue.getBase() + "/" + issue.getFileName();
+        
+        String transformKey = null;
+        if (settingsHash != null) {
+            try {
+                transformKey = JBTContentHasher.hash(JBTContentHasher.hash(
+                        originalFile.exists() ? originalFile : xmlFile)
+                        + "\n" + settingsHash);
+                // The transformed file is current if it was produced from the
+                // same inputs and has not been changed or reverted since
+                if (originalFile.exists() && xmlFile.isFile()
+                        && jbt.getTransformManifest().isUnchanged(manifestKey,
+                                transformKey + ":" + JBTContentHasher.hash(xmlFile))) {
+                    unchangedCount.incrementAndGet();
+                    return;
                 }
-                
-                // Transform the XML file
-                try {
-                    trans.transform(xmlSource, new StreamResult(tempFile));
-                    
-                    if (originalFile.exists()) {
-                        // Delete the .xml file as it needs to be replaced
-                        xmlFile.delete();                        
-                    } else {
-                        // Rename the existing file with the .old extension
-                        xmlFile.renameTo(originalFile);                        
-                    }                    
-                } catch (TransformerException te) {
-                    System.out.println("ERROR transforming XML: " + te.getMessage());
+            } catch (IOException ioe) {
+                message.append("ERROR hashing XML: " + ioe.getMessage() + "\n");
+                transformKey = null;
+            }
+        }
+        
+        Source xmlSource = null;
+        if (originalFile.exists()) {
+            // The original file exists, use that as the XML source
+            xmlSource = new StreamSource(originalFile);
+        } else {
+            // No backup exists, use the .xml file.
+            xmlSource = new StreamSource(xmlFile);
+        }
+        
+        // Transform the XML file, converting the special characters as
+        // the output is written to the temporary file
+        boolean transformed = false;
+        Writer out = null;
+        try {
+            out = new JBTEscapingWriter(new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(tempFile), "UTF-8")), 
+                    jbt.getCharacterEscaper());
+            
+            trans.transform(xmlSource, new StreamResult(out));
+            out.close();
+            out = null;
+            transformed = true;
+        } catch (TransformerException te) {
+            message.append("ERROR transforming XML: " + te.getMessage() + "\n");
+        } catch (IOException ie) {
+            message.append("ERROR converting special characters: " 
+                    + ie.getMessage() + "\n");                    
+        } finally {
+            try {
+                if (out != null) {
+                    out.close();
                 }
-                
-                // Read the xmlFile and convert the special characters
-                
-                OutputStreamWriter out = null;
-                try {
-                    
-                    final BufferedReader in = new BufferedReader(new InputStreamReader(
-                            new FileInputStream(tempFile), "UTF8"));
-                    
-                    out = new OutputStreamWriter(new FileOutputStream(xmlFile), "UTF-8");
-                                        
-                    int ch = -1;
-                    ch = in.read();
-                    while (ch != -1) {
-                        final char c = (char) ch;
-
-                        if (jbt.getSpecialCharacterMap().containsKey(c)) {
-                            // System.out.println("Replacing character: " + c 
-                            //        + ", " + jbt.getSpecialCharacterMap().get(c));
-                            out.write(jbt.getSpecialCharacterMap().get(c)); 
-                        } else {
-                            out.write(c);
-                        }
-                        ch = in.read();
-                    }                  
-                } catch (IOException ie) {
-                    System.out.println("ERROR converting special characters: " 
-                            + ie.getMessage());                    
-                } finally {
-                    try {
-                        if (out != null) {
-                            out.close();
-                        }
-                    } catch ( IOException ie) {
-                        System.out.println("ERROR closing the XML file: " 
-                                + ie.getMessage());
-                    }
-                    // Delete the temporary file
-                    tempFile.delete();
-                }                                
-                
-                System.out.println("-------------------------------------");
+            } catch (IOException ie) {
+                message.append("ERROR closing the XML file: " 
+                        + ie.getMessage() + "\n");
             }
         }
-    }
-    
-    
-    /**
-     * Revert the issues to the old format.
-     *
-     * @param jbt the jbt processor
-     * @param issues the issues
-     */
-    private static void revertIssues(final JBTProcessor jbt, 
-            final List<JBTIssue> issues) {
-        
-        for (JBTIssue issue : issues) {
-            System.out.println("Reverting Issue ID: " + issue.getId());
-            System.out.println("Filename: " + issue.getFullFileName());
-                 
-            // Read the XML file
-            final File xmlFile = new File(issue.getFullFileName());
-            final File originalFile = new File(issue.getFullFileName() + ".old");
-                                        
-            if (originalFile.exists()) {
-                // Rename the old file to the original file
-                originalFile.renameTo(xmlFile);                      
-            }
-            System.out.println("-------------------------------------");
+        
+        if (transformed) {
+            if (!originalFile.exists() && !xmlFile.renameTo(originalFile)) {
+                // Without a backup the original XML would be lost
+                message.append("ERROR creating the .old backup of the XML file\n");
+                transformed = false;
+            }
+        }
+        if (transformed) {
+            // Replace the .xml file with the transformed file
+            if (!tempFile.renameTo(xmlFile)) {
+                xmlFile.delete();
+                if (!tempFile.renameTo(xmlFile)) {
+                    message.append("ERROR replacing the XML file\n");
+                    transformed = false;
+                }
+            }
         }
+        if (transformed && transformKey != null) {
+            try {
+                jbt.getTransformManifest().record(manifestKey, 
+                        transformKey + ":" + JBTContentHasher.hash(xmlFile));
+            } catch (IOException ioe) {
+                message.append("ERROR writing to the transform manifest: " 
+                        + ioe.getMessage() + "\n");
+            }
+        }
+        // Remove the temporary file if it was not renamed
+        tempFile.delete();
+        
+        message.append("-------------------------------------");
+        System.out.println(message.toString());
     }
     
     
@@ -415,7 +626,29 @@ public class JBTImporter {
         String baseUrl = "";
         String exportBase = "";
         String xsltFilename = "";
+        String threads = "";
+        String batchSize = "";
+        String loadThreads = "";
+        String maxConnections = "";
+        String connectTimeout = "";
+        String socketTimeout = "";
+        String idleTimeout = "";
+        String rulesFilename = "";
+        String retries = "";
+        String retryDelay = "";
+        String breakerThreshold = "";
+        String breakerPause = "";
+        String maxRps = "";
+        String progress = "";
+        String metricsFilename = "";
+        String metricsPort = "";
+        boolean adaptive = false;
+        boolean virtualThreads = false;
+        String transport = "";
         boolean revert = false;
+        boolean rollback = false;
+        boolean resume = false;
+        boolean incremental = false;
         
         for (String s : args) {
             
@@ -439,13 +672,236 @@ public class JBTImporter {
                 // XSLT filename set
                 xsltFilename = s.substring(s.indexOf("=") + 1, s.length());
             }
+            if (s.startsWith("-t=")) {
+                // Number of worker threads set
+                threads = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("-b=")) {
+                // Number of issues per Jelly script set
+                batchSize = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--load-threads=")) {
+                // Number of threads loading the issue files set
+                loadThreads = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--max-connections=")) {
+                // Maximum number of pooled connections set
+                maxConnections = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--connect-timeout=")) {
+                // Connect timeout set
+                connectTimeout = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--socket-timeout=")) {
+                // Socket timeout set
+                socketTimeout = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--idle-timeout=")) {
+                // Idle connection timeout set
+                idleTimeout = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--rules=")) {
+                // Result classification rules set
+                rulesFilename = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--retries=")) {
+                // Maximum retries of a failure after the script was sent set
+                retries = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--retry-delay=")) {
+                // Base retry delay set
+                retryDelay = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--breaker-threshold=")) {
+                // Consecutive failures that pause the workers set
+                breakerThreshold = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--breaker-pause=")) {
+                // Pause once Jira appears to be unavailable set
+                breakerPause = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--max-rps=")) {
+                // Maximum requests per second set
+                maxRps = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--progress=")) {
+                // Seconds between progress lines set
+                progress = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--metrics=")) {
+                // File the metrics are written to set
+                metricsFilename = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--metrics-port=")) {
+                // Localhost port the live metrics are served on set
+                metricsPort = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.startsWith("--transport=")) {
+                // Transport sending requests to Jira set
+                transport = s.substring(s.indexOf("=") + 1, s.length());
+            }
+            if (s.equals("--virtual-threads")) {
+                // Submit each issue on its own virtual thread
+                virtualThreads = true;
+            }
+            if (s.equals("--adaptive")) {
+                // Adapt the requests in flight to Jira's latency
+                adaptive = true;
+            }
+            if (s.equals("--incremental")) {
+                // Only import the issues that are new or changed
+                incremental = true;
+            }
+            if (s.equals("--rollback")) {
+                // Roll back an interrupted revert
+                rollback = true;
+            }
+            if (s.equals("--resume")) {
+                // Resume the previous import
+                resume = true;
+            }
             if (s.startsWith("-r")) {
                 // Revert the transformed XML to the originals
                 revert = true;
             }
         }
         
-        return new JBTProcessor(username, password, baseUrl, exportBase,
-                xsltFilename, revert);
+        final JBTProcessor jbt = new JBTProcessor(username, password, baseUrl,
+                exportBase, xsltFilename, revert);
+        
+        jbt.setResume(resume);
+        jbt.setRollback(rollback);
+        jbt.setIncremental(incremental);
+        if (StringUtils.isNotBlank(threads)) {
+            jbt.setThreads(parsePositiveInt(threads, "thread count"));
+        }
+        if (StringUtils.isNotBlank(batchSize)) {
+            jbt.setBatchSize(parsePositiveInt(batchSize, "batch size"));
+        }
+        if (StringUtils.isNotBlank(loadThreads)) {
+            jbt.setLoadThreads(parsePositiveInt(loadThreads, "load thread count"));
+        }
+        if (StringUtils.isNotBlank(maxConnections)) {
+            jbt.getConnectionPool().setMaxConnectionsPerHost(
+                    parsePositiveInt(maxConnections, "maximum connection count"));
+        }
+        if (StringUtils.isNotBlank(connectTimeout)) {
+            jbt.getConnectionPool().setConnectTimeout(
+                    parsePositiveInt(connectTimeout, "connect timeout"));
+        }
+        if (StringUtils.isNotBlank(socketTimeout)) {
+            jbt.getConnectionPool().setSocketTimeout(
+                    parseInt(socketTimeout, "socket timeout", 0));
+        }
+        if (StringUtils.isNotBlank(idleTimeout)) {
+            jbt.getConnectionPool().setIdleTimeout(
+                    parsePositiveInt(idleTimeout, "idle timeout"));
+        }
+        if (StringUtils.equalsIgnoreCase(transport, "async")) {
+            jbt.setTransport(new JBTAsyncHttpTransport(
+                    jbt.getConnectionPool().getConnectTimeout(),
+                    jbt.getConnectionPool().getSocketTimeout()));
+        } else if (StringUtils.isNotBlank(transport)
+                && !StringUtils.equalsIgnoreCase(transport, "blocking")) {
+            throw new JBTException("A valid transport (blocking or async) is required");
+        }
+        if (StringUtils.isNotBlank(retries) || StringUtils.isNotBlank(retryDelay)) {
+            final JBTRetryPolicy transportPolicy = jbt.getRetryHandler().getPolicy(
+                    JBTResultType.TRANSPORT_FAILURE);
+            jbt.getRetryHandler().setPolicy(JBTResultType.TRANSPORT_FAILURE,
+                    new JBTRetryPolicy(StringUtils.isNotBlank(retries)
+                            ? parseInt(retries, "retry count", 0)
+                            : transportPolicy.getMaxRetries(),
+                            StringUtils.isNotBlank(retryDelay)
+                            ? parsePositiveInt(retryDelay, "retry delay")
+                            : transportPolicy.getBaseDelay(),
+                            transportPolicy.getMaxDelay()));
+        }
+        if (StringUtils.isNotBlank(retryDelay)) {
+            final JBTRetryPolicy connectionPolicy = jbt.getRetryHandler().getPolicy(
+                    JBTResultType.CONNECTION_FAILURE);
+            jbt.getRetryHandler().setPolicy(JBTResultType.CONNECTION_FAILURE,
+                    new JBTRetryPolicy(connectionPolicy.getMaxRetries(),
+                            parsePositiveInt(retryDelay, "retry delay"),
+                            connectionPolicy.getMaxDelay()));
+        }
+        if (StringUtils.isNotBlank(breakerThreshold)) {
+            jbt.getRetryHandler().getCircuitBreaker().setThreshold(
+                    parsePositiveInt(breakerThreshold, "breaker threshold"));
+        }
+        if (StringUtils.isNotBlank(breakerPause)) {
+            jbt.getRetryHandler().getCircuitBreaker().setPause(
+                    parsePositiveInt(breakerPause, "breaker pause"));
+        }
+        if (StringUtils.isNotBlank(maxRps)) {
+            double requestsPerSecond = 0;
+            try {
+                requestsPerSecond = Double.parseDouble(maxRps);
+            } catch (NumberFormatException nfe) {
+                requestsPerSecond = 0;
+            }
+            if (requestsPerSecond <= 0) {
+                throw new JBTException("A valid maximum requests per second is required");
+            }
+            jbt.setMaxRequestsPerSecond(requestsPerSecond);
+        }
+        if (StringUtils.isNotBlank(progress)) {
+            jbt.setProgressInterval(parseInt(progress, "progress interval", 0));
+        }
+        jbt.setMetricsFileName(metricsFilename);
+        if (StringUtils.isNotBlank(metricsPort)) {
+            jbt.setMetricsPort(parsePositiveInt(metricsPort, "metrics port"));
+        }
+        jbt.setAdaptiveConcurrency(adaptive);
+        jbt.setVirtualThreads(virtualThreads);
+        if (StringUtils.isNotBlank(rulesFilename)) {
+            try {
+                jbt.setResultClassifier(
+                        JBTResultClassifier.load(new File(rulesFilename)));
+            } catch (IOException ioe) {
+                throw new JBTException("Error reading the classification rules: "
+                        + ioe.getMessage());
+            }
+        }
+        return jbt;
+    }
+    
+    
+    /**
+     * Parses a positive integer argument.
+     *
+     * @param value the argument value
+     * @param name the name of the argument
+     * @return the integer value
+     * @throws JBTException the jBT exception
+     */
+    private static int parsePositiveInt(final String value, final String name)
+            throws JBTException {
+        return parseInt(value, name, 1);
+    }
+    
+    
+    /**
+     * Parses an integer argument that must be at least the minimum.
+     *
+     * @param value the argument value
+     * @param name the name of the argument
+     * @param minimum the minimum value
+     * @return the integer value
+     * @throws JBTException the jBT exception
+     */
+    private static int parseInt(final String value, final String name,
+            final int minimum) throws JBTException {
+        
+        int result = minimum - 1;
+        try {
+            result = Integer.parseInt(value);
+        } catch (NumberFormatException nfe) {
+            result = minimum - 1;
+        }
+        if (result < minimum) {
+            throw new JBTException("A valid " + name + " is required");
+        }
+        return result;
     }
 }
@@ -0,0 +1,120 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import org.apache.commons.lang.StringUtils;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The Class JBTIndexHandler.
+ * 
+ * A SAX handler that streams the bug entries of the index.xml file, passing
+ * each issue to the supplied JBTIssueHandler as soon as its primary file has
+ * been read. Only the current bug entry is held in memory.
+ */
+class JBTIndexHandler extends DefaultHandler {
+
+    /** The jbt processor. */
+    private final JBTProcessor jbt;
+
+    /** The issue handler. */
+    private final JBTIssueHandler issueHandler;
+
+    /** The issue currently being read. */
+    private JBTIssue issue;
+
+    /** The element depth of the current bug element. */
+    private int bugDepth = -1;
+
+    /** The current element depth. */
+    private int depth = 0;
+
+    /** The primary file flag. */
+    private boolean primaryFile = false;
+
+    /** The file name text. */
+    private final StringBuilder fileName = new StringBuilder();
+
+    /**
+     * Instantiates a new JBT index handler.
+     *
+     * @param jbtValue the jbt processor
+     * @param issueHandlerValue the issue handler
+     */
+    JBTIndexHandler(final JBTProcessor jbtValue,
+            final JBTIssueHandler issueHandlerValue) {
+        this.jbt = jbtValue;
+        this.issueHandler = issueHandlerValue;
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#startElement(java.lang.String,
+     * java.lang.String, java.lang.String, org.xml.sax.Attributes)
+     */
+    @Override
+    public void startElement(final String uri, final String localName,
+            final String qName, final Attributes attributes) throws SAXException {
+
+        this.depth++;
+
+        if (StringUtils.equals(qName, "bug")) {
+            this.issue = new JBTIssue(this.jbt);
+            this.issue.setId(attributes.getValue("id"));
+            this.issue.setBase(attributes.getValue("base"));
+            this.bugDepth = this.depth;
+        } else if (this.issue != null && this.depth == this.bugDepth + 1
+                && StringUtils.equals(attributes.getValue("primary"), "true")) {
+            // The primary file of the bug, capture its text content
+            this.primaryFile = true;
+            this.fileName.setLength(0);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#characters(char[], int, int)
+     */
+    @Override
+    public void characters(final char[] ch, final int start, final int length)
+            throws SAXException {
+        if (this.primaryFile && this.depth == this.bugDepth + 1) {
+            this.fileName.append(ch, start, length);
+        }
+    }
+
+    /* (non-Javadoc)
+     * @see org.xml.sax.helpers.DefaultHandler#endElement(java.lang.String,
+     * java.lang.String, java.lang.String)
+     */
+    @Override
+    public void endElement(final String uri, final String localName,
+            final String qName) throws SAXException {
+
+        if (this.primaryFile && this.depth == this.bugDepth + 1) {
+            this.issue.setFileName(this.fileName.toString());
+            this.primaryFile = false;
+
+            // Pass the issue on for processing
+            this.issueHandler.handleIssue(this.issue);
+        }
+        if (this.depth == this.bugDepth) {
+            this.issue = null;
+            this.bugDepth = -1;
+        }
+        this.depth--;
+    }
+}
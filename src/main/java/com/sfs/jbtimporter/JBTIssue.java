@@ -33,6 +33,9 @@ public class JBTIssue {
     
     /** The export base. */
     private String exportBase = "";
+
+    /** The content hash of the issue file, if computed. */
+    private String contentHash;
     
     /**
      * Instantiates a new jBT issue.
@@ -118,4 +121,22 @@ public class JBTIssue {
         return StringUtils.replace(this.exportBase + this.getBase(), "\\", "/") 
                 + "/" + this.getFileName();
     }
+    
+    /**
+     * Sets the content hash of the issue file.
+     *
+     * @param contentHashValue the new content hash
+     */
+    public final void setContentHash(final String contentHashValue) {
+        this.contentHash = contentHashValue;
+    }
+    
+    /**
+     * Gets the content hash of the issue file.
+     *
+     * @return the content hash, or null if not computed
+     */
+    public final String getContentHash() {
+        return this.contentHash;
+    }
 }
@@ -0,0 +1,72 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class JBTIssueBatcher.
+ * 
+ * Groups the issues read from the index into batches of a fixed size. The
+ * final batch may be smaller and is handled when the batcher is flushed.
+ */
+public abstract class JBTIssueBatcher implements JBTIssueHandler {
+
+    /** The batch size. */
+    private final int batchSize;
+
+    /** The current batch. */
+    private List<JBTIssue> batch = new ArrayList<JBTIssue>();
+
+    /**
+     * Instantiates a new JBT issue batcher.
+     *
+     * @param batchSizeValue the batch size
+     */
+    public JBTIssueBatcher(final int batchSizeValue) {
+        this.batchSize = batchSizeValue;
+    }
+
+    /* (non-Javadoc)
+     * @see com.sfs.jbtimporter.JBTIssueHandler#handleIssue(
+     * com.sfs.jbtimporter.JBTIssue)
+     */
+    public final void handleIssue(final JBTIssue issue) {
+        this.batch.add(issue);
+        if (this.batch.size() >= this.batchSize) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Handle the issues collected so far.
+     */
+    public final void flush() {
+        if (this.batch.size() > 0) {
+            final List<JBTIssue> issues = this.batch;
+            this.batch = new ArrayList<JBTIssue>();
+            this.handleBatch(issues);
+        }
+    }
+
+    /**
+     * Handle a batch of issues.
+     *
+     * @param issues the issues
+     */
+    protected abstract void handleBatch(List<JBTIssue> issues);
+}
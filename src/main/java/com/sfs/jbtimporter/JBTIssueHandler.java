@@ -0,0 +1,32 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Interface JBTIssueHandler.
+ * 
+ * Receives each issue as it is read from the index.xml file, allowing work
+ * to begin on the first issue before the rest of the index has been parsed.
+ */
+public interface JBTIssueHandler {
+
+    /**
+     * Handle an issue read from the index.
+     *
+     * @param issue the issue
+     */
+    void handleIssue(JBTIssue issue);
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+/**
+ * The Class JBTJellyBatch.
+ * 
+ * Joins several issue Jelly scripts into a single script so they can be
+ * submitted to Jira in one request. The body of each script is surrounded
+ * by text markers holding the issue id, Jelly passes these through to the
+ * output so the result can be split back out per issue. Only scripts with
+ * identical root elements are joined, as the root of the first script,
+ * with its namespace declarations, is used for the whole batch.
+ */
+public final class JBTJellyBatch {
+
+    /** The prefix of the marker written before each issue. */
+    private static final String START_MARKER = "[[JBT-START:";
+
+    /** The prefix of the marker written after each issue. */
+    private static final String END_MARKER = "[[JBT-END:";
+
+    /** The suffix of the issue markers. */
+    private static final String MARKER_SUFFIX = "]]";
+
+    /**
+     * Instantiates a new JBT jelly batch.
+     */
+    private JBTJellyBatch() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Join the supplied issue scripts into a single Jelly script. The root
+     * element of the first script is used as the root of the batch.
+     *
+     * @param scripts the issue scripts, keyed by issue id
+     * @return the batch script, or null if a script could not be split or
+     *         its root element differs from that of the first script
+     */
+    public static String join(final Map<String, String> scripts) {
+
+        final StringBuilder batch = new StringBuilder();
+        String rootStartTag = null;
+        String rootEnd = null;
+
+        for (Map.Entry<String, String> entry : scripts.entrySet()) {
+            final String script = entry.getValue();
+
+            final int rootStart = findRootStart(script);
+            if (rootStart < 0) {
+                return null;
+            }
+            final int bodyStart = script.indexOf('>', rootStart) + 1;
+            final String rootName = getElementName(script, rootStart);
+            final int bodyEnd = script.lastIndexOf("</" + rootName);
+            if (bodyStart <= 0 || bodyEnd < bodyStart) {
+                return null;
+            }
+
+            final String startTag = script.substring(rootStart, bodyStart);
+            if (rootEnd == null) {
+                // Use the prolog and root element of the first script
+                batch.append(script.substring(0, bodyStart));
+                rootStartTag = startTag;
+                rootEnd = script.substring(bodyEnd);
+            } else if (!startTag.equals(rootStartTag)) {
+                // The namespaces of this script may not be those of the batch
+                return null;
+            }
+            final String id = StringEscapeUtils.escapeXml(entry.getKey());
+
+            batch.append(START_MARKER + id + MARKER_SUFFIX);
+            batch.append(script.substring(bodyStart, bodyEnd));
+            batch.append(END_MARKER + id + MARKER_SUFFIX);
+        }
+        if (rootEnd == null) {
+            return null;
+        }
+        batch.append(rootEnd);
+
+        return batch.toString();
+    }
+
+    /**
+     * Split the result of a batch back out into the result of each issue.
+     * Jelly stops at the first issue that throws an exception, so only the
+     * issues whose end marker was reached are returned; they have been
+     * run, and must not be sent again. The issues that are missing did
+     * not complete.
+     *
+     * @param result the result from the jelly runner
+     * @param scripts the issue scripts, keyed by issue id
+     * @return the result of each issue that completed, in order
+     */
+    public static Map<String, String> split(final String result,
+            final Map<String, String> scripts) {
+
+        final Map<String, String> results = new LinkedHashMap<String, String>();
+
+        int position = 0;
+        for (String key : scripts.keySet()) {
+            final String id = StringEscapeUtils.escapeXml(key);
+            final String startMarker = START_MARKER + id + MARKER_SUFFIX;
+            final String endMarker = END_MARKER + id + MARKER_SUFFIX;
+
+            final int start = result.indexOf(startMarker, position);
+            if (start < 0) {
+                break;
+            }
+            final int end = result.indexOf(endMarker, start);
+            if (end < 0) {
+                break;
+            }
+            results.put(key, result.substring(start + startMarker.length(), end));
+            position = end + endMarker.length();
+        }
+        return results;
+    }
+
+    /**
+     * Find the start of the root element of the script.
+     *
+     * @param script the script
+     * @return the index of the root element, or -1 if not found
+     */
+    private static int findRootStart(final String script) {
+
+        int index = script.indexOf('<');
+        while (index >= 0 && index + 1 < script.length()) {
+            final char next = script.charAt(index + 1);
+            if (next != '?' && next != '!') {
+                return index;
+            }
+            // Skip the processing instruction, comment or doctype
+            final int close = script.indexOf('>', index);
+            if (close < 0) {
+                return -1;
+            }
+            index = script.indexOf('<', close + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the name of the element starting at the supplied index.
+     *
+     * @param script the script
+     * @param elementStart the index of the element's opening bracket
+     * @return the element name
+     */
+    private static String getElementName(final String script,
+            final int elementStart) {
+
+        int end = elementStart + 1;
+        while (end < script.length()) {
+            final char c = script.charAt(end);
+            if (Character.isWhitespace(c) || c == '>' || c == '/') {
+                break;
+            }
+            end++;
+        }
+        return script.substring(elementStart + 1, end);
+    }
+}
@@ -0,0 +1,220 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class JBTJournal.
+ * 
+ * An append-only journal recording the outcome of each issue as it is
+ * imported, so an interrupted import can be resumed without importing the
+ * same issues again. Each record is flushed to the operating system as it
+ * is written, surviving a crash of the JVM, while the more expensive sync
+ * to disk is only performed every few records or seconds.
+ */
+public class JBTJournal {
+
+    /** The outcome recorded for a successfully imported issue. */
+    public static final String SUCCESS = "SUCCESS";
+
+    /** The outcome recorded for an issue that failed for an unknown reason. */
+    public static final String ERROR = "ERROR";
+
+    /** The number of records written between syncs to disk. */
+    private static final int SYNC_RECORDS = 100;
+
+    /** The maximum time between syncs to disk in milliseconds. */
+    private static final long SYNC_INTERVAL = 1000;
+
+    /** The journal file. */
+    private final File file;
+
+    /** The ids of the issues that must not be imported again. */
+    private final Set<String> completed = new HashSet<String>();
+
+    /** The output stream. */
+    private FileOutputStream out;
+
+    /** The writer. */
+    private Writer writer;
+
+    /** The number of records written since the last sync. */
+    private int unsyncedRecords = 0;
+
+    /** The time of the last sync. */
+    private long lastSync = 0;
+
+    /**
+     * Instantiates a new JBT journal.
+     *
+     * @param fileValue the journal file
+     */
+    public JBTJournal(final File fileValue) {
+        this.file = fileValue;
+    }
+
+    /**
+     * Gets the journal file.
+     *
+     * @return the file
+     */
+    public final File getFile() {
+        return this.file;
+    }
+
+    /**
+     * Load the issues that were created, or may have been, by a previous run.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void load() throws IOException {
+
+        this.completed.clear();
+        if (!this.file.exists()) {
+            return;
+        }
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(this.file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                final int tab = line.lastIndexOf('\t');
+                if (tab > 0) {
+                    final String id = line.substring(0, tab);
+                    // The last outcome recorded for an issue takes precedence
+                    if (isCompleteOutcome(line.substring(tab + 1))) {
+                        this.completed.add(id);
+                    } else {
+                        this.completed.remove(id);
+                    }
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Checks if the outcome recorded for an issue means it was created in
+     * Jira. An issue created with attachment or transition errors is
+     * complete, importing it again would duplicate it, as is an issue
+     * left unconfirmed by a batch that threw.
+     *
+     * @param outcome the outcome
+     * @return true, if the issue must not be imported again
+     */
+    private static boolean isCompleteOutcome(final String outcome) {
+        for (JBTResultType type : JBTResultType.values()) {
+            if (type.isComplete() && StringUtils.equals(type.name(), outcome)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Open the journal for writing.
+     *
+     * @param append true to add to the existing journal, false to start
+     *            a new journal
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void open(final boolean append) throws IOException {
+        this.out = new FileOutputStream(this.file, append);
+        this.writer = new BufferedWriter(new OutputStreamWriter(this.out, "UTF-8"));
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks if the issue was created, or may have been, by a previous run.
+     *
+     * @param id the issue id
+     * @return true, if the issue has been imported
+     */
+    public final synchronized boolean isComplete(final String id) {
+        return this.completed.contains(id);
+    }
+
+    /**
+     * Record the outcome of an issue.
+     *
+     * @param id the issue id
+     * @param outcome the outcome
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void record(final String id, final String outcome)
+            throws IOException {
+
+        if (this.writer == null) {
+            throw new IOException("The journal has not been opened");
+        }
+        // Keep each record on a single line
+        final String cleanId = StringUtils.replaceChars(id, "\t\r\n", "   ");
+
+        this.writer.write(cleanId + "\t" + outcome + "\n");
+        this.writer.flush();
+        this.unsyncedRecords++;
+
+        final long now = System.currentTimeMillis();
+        if (this.unsyncedRecords >= SYNC_RECORDS
+                || now - this.lastSync >= SYNC_INTERVAL) {
+            this.sync();
+        }
+    }
+
+    /**
+     * Sync and close the journal.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized void close() throws IOException {
+        if (this.writer != null) {
+            try {
+                this.writer.flush();
+                this.sync();
+            } finally {
+                this.writer.close();
+                this.writer = null;
+                this.out = null;
+            }
+        }
+    }
+
+    /**
+     * Sync the records written so far to disk.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void sync() throws IOException {
+        this.out.getFD().sync();
+        this.unsyncedRecords = 0;
+        this.lastSync = System.currentTimeMillis();
+    }
+}
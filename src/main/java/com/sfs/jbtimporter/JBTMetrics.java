@@ -0,0 +1,494 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Class JBTMetrics.
+ * 
+ * The throughput and latency of an import. Each phase is timed into its own
+ * histogram, alongside counters of the bytes sent to and received from
+ * Jira and of the issues completed. Comparing the phases shows whether an
+ * import is held back by reading the files, by the CPU or by Jira. While
+ * the import runs a progress line with an estimate of the time remaining
+ * is printed periodically, and at the end the metrics can be written out
+ * as JSON. Every method may be called from several threads at once.
+ */
+public class JBTMetrics {
+
+    /** The default seconds between progress lines. */
+    public static final int DEFAULT_PROGRESS_INTERVAL = 10;
+
+    /** The percentiles reported for each phase. */
+    private static final int[] PERCENTILES = {50, 90, 99};
+
+    /** The nanoseconds in a millisecond. */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+
+    /** The nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /** The bytes in a megabyte. */
+    private static final double BYTES_PER_MB = 1024.0 * 1024.0;
+
+    /** The histogram of each phase. */
+    private final Map<JBTPhase, JBTHistogram> histograms =
+        new EnumMap<JBTPhase, JBTHistogram>(JBTPhase.class);
+
+    /** The bytes sent to Jira. */
+    private final LongAdder bytesSent = new LongAdder();
+
+    /** The bytes received from Jira. */
+    private final LongAdder bytesReceived = new LongAdder();
+
+    /** The issues read from the index. */
+    private final AtomicLong issuesFound = new AtomicLong();
+
+    /** The issues whose outcome has been recorded. */
+    private final AtomicLong issuesCompleted = new AtomicLong();
+
+    /** The issues whose outcome has been recorded, by result type. */
+    private final AtomicLongArray outcomes = 
+        new AtomicLongArray(JBTResultType.values().length);
+
+    /** The requests sent to Jira awaiting a response. */
+    private final AtomicInteger requestsInFlight = new AtomicInteger();
+
+    /** The issues skipped without being submitted. */
+    private final AtomicLong issuesSkipped = new AtomicLong();
+
+    /** The flag set once every issue has been read from the index. */
+    private volatile boolean indexComplete = false;
+
+    /** The time the import started. */
+    private volatile long startTime = System.nanoTime();
+
+    /** The time the import stopped, zero while it is running. */
+    private volatile long stopTime = 0;
+
+    /** The executor printing the progress lines, null if not printing. */
+    private ScheduledExecutorService progressExecutor;
+
+    /**
+     * Instantiates new JBT metrics.
+     */
+    public JBTMetrics() {
+        for (JBTPhase phase : JBTPhase.values()) {
+            this.histograms.put(phase, new JBTHistogram());
+        }
+    }
+
+    /**
+     * Start timing the import, printing a progress line every interval.
+     *
+     * @param progressInterval the seconds between progress lines, zero to
+     *            print none
+     */
+    public final synchronized void start(final int progressInterval) {
+
+        this.startTime = System.nanoTime();
+        this.stopTime = 0;
+        if (progressInterval <= 0) {
+            return;
+        }
+        this.progressExecutor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactory() {
+                    public Thread newThread(final Runnable task) {
+                        final Thread thread = new Thread(task, "jbt-progress");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.progressExecutor.scheduleAtFixedRate(new Runnable() {
+            public void run() {
+                System.out.println(getProgress());
+            }
+        }, progressInterval, progressInterval, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Stop timing the import and printing progress lines.
+     */
+    public final synchronized void stop() {
+
+        this.stopTime = System.nanoTime();
+        if (this.progressExecutor != null) {
+            this.progressExecutor.shutdownNow();
+            this.progressExecutor = null;
+        }
+    }
+
+    /**
+     * Record the time taken by a phase.
+     *
+     * @param phase the phase
+     * @param nanos the time taken in nanoseconds
+     */
+    public final void record(final JBTPhase phase, final long nanos) {
+        this.histograms.get(phase).record(nanos);
+    }
+
+    /**
+     * Record a response received from Jira, the time waiting for it and
+     * the time reading it, and the bytes sent and received.
+     *
+     * @param phase the phase of the request
+     * @param nanos the time taken by the request in nanoseconds
+     * @param response the response
+     */
+    public final void recordResponse(final JBTPhase phase, final long nanos,
+            final JBTResponse response) {
+
+        this.record(phase, nanos - response.getScanTime());
+        this.record(JBTPhase.RESPONSE_PARSE, response.getScanTime());
+        this.bytesSent.add(response.getBytesSent());
+        this.bytesReceived.add(response.getBytesReceived());
+    }
+
+    /**
+     * Gets the histogram of a phase.
+     *
+     * @param phase the phase
+     * @return the histogram
+     */
+    public final JBTHistogram getHistogram(final JBTPhase phase) {
+        return this.histograms.get(phase);
+    }
+
+    /**
+     * Wrap an index handler, timing the parsing of each issue read from the
+     * index and counting the issues found. The time the handler takes is
+     * not included.
+     *
+     * @param handler the issue handler
+     * @return the timed issue handler
+     */
+    public final JBTIssueHandler timeIndex(final JBTIssueHandler handler) {
+
+        this.indexComplete = false;
+        return new JBTIssueHandler() {
+            private long mark = System.nanoTime();
+
+            public void handleIssue(final JBTIssue issue) {
+                record(JBTPhase.INDEX_PARSE, System.nanoTime() - this.mark);
+                issuesFound.incrementAndGet();
+                try {
+                    handler.handleIssue(issue);
+                } finally {
+                    this.mark = System.nanoTime();
+                }
+            }
+        };
+    }
+
+    /**
+     * Record that every issue has been read from the index, so the time
+     * remaining can be estimated.
+     */
+    public final void setIndexComplete() {
+        this.indexComplete = true;
+    }
+
+    /**
+     * Record an issue whose outcome has been recorded.
+     *
+     * @param type the result type
+     */
+    public final void addCompleted(final JBTResultType type) {
+        this.outcomes.incrementAndGet(type.ordinal());
+        this.issuesCompleted.incrementAndGet();
+    }
+
+    /**
+     * Gets the number of issues completed with a result type.
+     *
+     * @param type the result type
+     * @return the count
+     */
+    public final long getOutcomeCount(final JBTResultType type) {
+        return this.outcomes.get(type.ordinal());
+    }
+
+    /**
+     * Gets the number of issues read from the index so far.
+     *
+     * @return the issues found
+     */
+    public final long getIssuesFound() {
+        return this.issuesFound.get();
+    }
+
+    /**
+     * Gets the number of issues whose outcome has been recorded.
+     *
+     * @return the issues completed
+     */
+    public final long getIssuesCompleted() {
+        return this.issuesCompleted.get();
+    }
+
+    /**
+     * Gets the number of issues skipped without being submitted.
+     *
+     * @return the issues skipped
+     */
+    public final long getIssuesSkipped() {
+        return this.issuesSkipped.get();
+    }
+
+    /**
+     * Record a request sent to Jira.
+     */
+    public final void startRequest() {
+        this.requestsInFlight.incrementAndGet();
+    }
+
+    /**
+     * Record a request that Jira has responded to, or that failed.
+     */
+    public final void finishRequest() {
+        this.requestsInFlight.decrementAndGet();
+    }
+
+    /**
+     * Gets the number of requests sent to Jira awaiting a response.
+     *
+     * @return the requests in flight
+     */
+    public final int getRequestsInFlight() {
+        return this.requestsInFlight.get();
+    }
+
+    /**
+     * Gets the percentiles reported for each phase.
+     *
+     * @return the percentiles
+     */
+    public final int[] getPercentiles() {
+        return PERCENTILES.clone();
+    }
+
+    /**
+     * Record an issue skipped without being submitted.
+     */
+    public final void addSkipped() {
+        this.issuesSkipped.incrementAndGet();
+    }
+
+    /**
+     * Gets the bytes sent to Jira.
+     *
+     * @return the bytes sent
+     */
+    public final long getBytesSent() {
+        return this.bytesSent.sum();
+    }
+
+    /**
+     * Gets the bytes received from Jira.
+     *
+     * @return the bytes received
+     */
+    public final long getBytesReceived() {
+        return this.bytesReceived.sum();
+    }
+
+    /**
+     * Gets the seconds since the import started, or that it ran for once
+     * it has stopped.
+     *
+     * @return the elapsed seconds
+     */
+    public final double getElapsedSeconds() {
+        final long end = this.stopTime != 0 ? this.stopTime : System.nanoTime();
+        return (end - this.startTime) / NANOS_PER_SECOND;
+    }
+
+    /**
+     * Gets the issues completed per second, excluding those skipped.
+     *
+     * @return the issues per second
+     */
+    public final double getIssuesPerSecond() {
+        final double elapsed = this.getElapsedSeconds();
+        return elapsed > 0 ? this.issuesCompleted.get() / elapsed : 0;
+    }
+
+    /**
+     * Gets the progress line, the issues done, the throughput and the
+     * estimated time remaining.
+     *
+     * @return the progress line
+     */
+    public final String getProgress() {
+
+        final long found = this.issuesFound.get();
+        final long done = this.issuesCompleted.get() + this.issuesSkipped.get();
+        final double rate = this.getIssuesPerSecond();
+
+        final StringBuilder progress = new StringBuilder();
+        progress.append("Progress: " + done + " of " + found);
+        progress.append(this.indexComplete ? " issues, " : "+ issues, ");
+        progress.append(String.format(Locale.ROOT, "%.1f issues/s, ", rate));
+        progress.append(formatBytes(this.getBytesSent()) + " sent, ");
+        progress.append(formatBytes(this.getBytesReceived()) + " received, ETA ");
+        if (this.indexComplete && rate > 0) {
+            progress.append(formatDuration(
+                    (long) Math.ceil(Math.max(0, found - done) / rate)));
+        } else {
+            progress.append("unknown");
+        }
+        return progress.toString();
+    }
+
+    /**
+     * Gets the summary of a phase, its count and the distribution of the
+     * time it took.
+     *
+     * @param phase the phase
+     * @return the summary, or null if the phase was not timed
+     */
+    public final String getPhaseSummary(final JBTPhase phase) {
+
+        final JBTHistogram histogram = this.histograms.get(phase);
+        final long count = histogram.getCount();
+        if (count == 0) {
+            return null;
+        }
+        final StringBuilder summary = new StringBuilder();
+        summary.append(phase.getLabel() + ": " + count + " timed, ");
+        summary.append("mean " + formatMillis(histogram.getMean()) + "ms");
+        for (int percentile : PERCENTILES) {
+            summary.append(", p" + percentile + " " 
+                    + formatMillis(histogram.getValueAtPercentile(percentile)) + "ms");
+        }
+        summary.append(", max " + formatMillis(histogram.getMax()) + "ms");
+        return summary.toString();
+    }
+
+    /**
+     * Gets the metrics as a JSON document.
+     *
+     * @return the JSON
+     */
+    public final String toJson() {
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"elapsedSeconds\": " 
+                + String.format(Locale.ROOT, "%.3f", this.getElapsedSeconds()) + ",\n");
+        json.append("  \"issues\": {\"found\": " + this.issuesFound.get()
+                + ", \"completed\": " + this.issuesCompleted.get()
+                + ", \"skipped\": " + this.issuesSkipped.get() + "},\n");
+        json.append("  \"issuesPerSecond\": " 
+                + String.format(Locale.ROOT, "%.3f", this.getIssuesPerSecond()) + ",\n");
+        json.append("  \"outcomes\": {");
+        String outcomeSeparator = "";
+        for (JBTResultType type : JBTResultType.values()) {
+            json.append(outcomeSeparator + "\"" + type.name().toLowerCase(Locale.ROOT)
+                    + "\": " + this.getOutcomeCount(type));
+            outcomeSeparator = ", ";
+        }
+        json.append("},\n");
+        json.append("  \"bytesSent\": " + this.getBytesSent() + ",\n");
+        json.append("  \"bytesReceived\": " + this.getBytesReceived() + ",\n");
+        json.append("  \"phases\": {");
+
+        String separator = "\n";
+        for (JBTPhase phase : JBTPhase.values()) {
+            final JBTHistogram histogram = this.histograms.get(phase);
+            json.append(separator);
+            json.append("    \"" + phase.name().toLowerCase(Locale.ROOT) + "\": {");
+            json.append("\"count\": " + histogram.getCount());
+            json.append(", \"totalMillis\": " + formatMillis(histogram.getSum()));
+            json.append(", \"meanMillis\": " + formatMillis(histogram.getMean()));
+            for (int percentile : PERCENTILES) {
+                json.append(", \"p" + percentile + "Millis\": " 
+                        + formatMillis(histogram.getValueAtPercentile(percentile)));
+            }
+            json.append(", \"maxMillis\": " + formatMillis(histogram.getMax()) + "}");
+            separator = ",\n";
+        }
+        json.append("\n  }\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    /**
+     * Write the metrics to a file as a JSON document.
+     *
+     * @param file the file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final void writeJson(final File file) throws IOException {
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            writer.write(this.toJson());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Format a time in nanoseconds as milliseconds.
+     *
+     * @param nanos the nanoseconds
+     * @return the milliseconds
+     */
+    private static String formatMillis(final double nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / NANOS_PER_MILLI);
+    }
+
+    /**
+     * Format a number of bytes as megabytes.
+     *
+     * @param bytes the bytes
+     * @return the formatted size
+     */
+    private static String formatBytes(final long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / BYTES_PER_MB);
+    }
+
+    /**
+     * Format a number of seconds as hours, minutes and seconds.
+     *
+     * @param seconds the seconds
+     * @return the formatted duration
+     */
+    private static String formatDuration(final long seconds) {
+        return String.format(Locale.ROOT, "%d:%02d:%02d", seconds / 3600,
+                (seconds / 60) % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Locale;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * The Class JBTMetricsServer.
+ * 
+ * Serves the live metrics of a running import at /metrics on localhost,
+ * as plain text in the Prometheus exposition format, so the import can be
+ * watched with curl or scraped while it runs. Only the loopback address is
+ * bound, the metrics are not reachable from other hosts.
+ */
+public class JBTMetricsServer {
+
+    /** The path the metrics are served at. */
+    public static final String PATH = "/metrics";
+
+    /** The content type of the metrics. */
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** The nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /** The import monitor. */
+    private final JBTImportMonitor monitor;
+
+    /** The http server. */
+    private final HttpServer server;
+
+    /**
+     * Instantiates a new JBT metrics server, bound to the port on localhost.
+     *
+     * @param monitorValue the import monitor
+     * @param port the port, zero for any free port
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public JBTMetricsServer(final JBTImportMonitor monitorValue, final int port)
+            throws IOException {
+        this.monitor = monitorValue;
+        this.server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), 0);
+        this.server.createContext(PATH, new HttpHandler() {
+            public void handle(final HttpExchange exchange) throws IOException {
+                serve(exchange);
+            }
+        });
+    }
+
+    /**
+     * Start serving the metrics.
+     */
+    public final void start() {
+        this.server.start();
+    }
+
+    /**
+     * Stop serving the metrics.
+     */
+    public final void stop() {
+        this.server.stop(0);
+    }
+
+    /**
+     * Gets the url the metrics are served at.
+     *
+     * @return the url
+     */
+    public final String getUrl() {
+        return "http://localhost:" + this.server.getAddress().getPort() + PATH;
+    }
+
+    /**
+     * Serve the metrics in response to a request.
+     *
+     * @param exchange the exchange
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void serve(final HttpExchange exchange) throws IOException {
+
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            final byte[] body = this.render().getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            final OutputStream out = exchange.getResponseBody();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Render the metrics in the Prometheus text exposition format.
+     *
+     * @return the metrics text
+     */
+    public final String render() {
+
+        final JBTMetrics metrics = this.monitor.getMetrics();
+        final StringBuilder text = new StringBuilder();
+
+        metric(text, "jbt_requests_in_flight", "gauge",
+                "Requests sent to Jira awaiting a response.");
+        sample(text, "jbt_requests_in_flight", "", this.monitor.getRequestsInFlight());
+
+        metric(text, "jbt_concurrency_limit", "gauge",
+                "Requests allowed in flight.");
+        sample(text, "jbt_concurrency_limit", "", this.monitor.getConcurrencyLimit());
+
+        metric(text, "jbt_max_requests_per_second", "gauge",
+                "Maximum requests sent to Jira per second, zero if unlimited.");
+        sample(text, "jbt_max_requests_per_second", "",
+                this.monitor.getMaxRequestsPerSecond());
+
+        metric(text, "jbt_queue_depth", "gauge",
+                "Tasks waiting in front of each pipeline stage.");
+        for (Map.Entry<String, Integer> depth : this.monitor.getQueueDepths().entrySet()) {
+            sample(text, "jbt_queue_depth", label("stage", depth.getKey()),
+                    depth.getValue());
+        }
+
+        metric(text, "jbt_issues_found_total", "counter",
+                "Issues read from the index.");
+        sample(text, "jbt_issues_found_total", "", this.monitor.getIssuesFound());
+
+        metric(text, "jbt_issues_skipped_total", "counter",
+                "Issues skipped without being submitted.");
+        sample(text, "jbt_issues_skipped_total", "", this.monitor.getIssuesSkipped());
+
+        metric(text, "jbt_issues_completed_total", "counter",
+                "Issues whose outcome has been recorded, by result type.");
+        for (Map.Entry<String, Long> count : this.monitor.getOutcomeCounts().entrySet()) {
+            sample(text, "jbt_issues_completed_total", label("result", count.getKey()),
+                    count.getValue());
+        }
+
+        metric(text, "jbt_issues_per_second", "gauge",
+                "Issues completed per second since the import started.");
+        sample(text, "jbt_issues_per_second", "", this.monitor.getIssuesPerSecond());
+
+        metric(text, "jbt_bytes_sent_total", "counter", "Bytes sent to Jira.");
+        sample(text, "jbt_bytes_sent_total", "", this.monitor.getBytesSent());
+
+        metric(text, "jbt_bytes_received_total", "counter", "Bytes received from Jira.");
+        sample(text, "jbt_bytes_received_total", "", this.monitor.getBytesReceived());
+
+        metric(text, "jbt_circuit_breaker_opens_total", "counter",
+                "Times the workers were paused while Jira was unavailable.");
+        sample(text, "jbt_circuit_breaker_opens_total", "",
+                this.monitor.getCircuitBreakerOpenCount());
+
+        metric(text, "jbt_phase_seconds", "summary",
+                "Time taken by each phase of the import.");
+        for (JBTPhase phase : JBTPhase.values()) {
+            final JBTHistogram histogram = metrics.getHistogram(phase);
+            final String name = label("phase", phase.name().toLowerCase(Locale.ROOT));
+            for (int percentile : metrics.getPercentiles()) {
+                sample(text, "jbt_phase_seconds", name + "," 
+                        + label("quantile", String.valueOf(percentile / 100.0)),
+                        histogram.getValueAtPercentile(percentile) / NANOS_PER_SECOND);
+            }
+            sample(text, "jbt_phase_seconds_sum", name,
+                    histogram.getSum() / NANOS_PER_SECOND);
+            sample(text, "jbt_phase_seconds_count", name, histogram.getCount());
+        }
+        return text.toString();
+    }
+
+    /**
+     * Append the help and type lines of a metric.
+     *
+     * @param text the text
+     * @param name the metric name
+     * @param type the metric type
+     * @param help the help text
+     */
+    private static void metric(final StringBuilder text, final String name,
+            final String type, final String help) {
+        text.append("# HELP " + name + " " + help + "\n");
+        text.append("# TYPE " + name + " " + type + "\n");
+    }
+
+    /**
+     * Append a sample of a metric.
+     *
+     * @param text the text
+     * @param name the metric name
+     * @param labels the labels, or an empty string
+     * @param value the value
+     */
+    private static void sample(final StringBuilder text, final String name,
+            final String labels, final double value) {
+        text.append(name);
+        if (labels.length() > 0) {
+            text.append("{" + labels + "}");
+        }
+        if (value == Math.rint(value) && Math.abs(value) < Long.MAX_VALUE) {
+            text.append(" " + (long) value + "\n");
+        } else {
+            text.append(" " + String.format(Locale.ROOT, "%.6f", value) + "\n");
+        }
+    }
+
+    /**
+     * Format a label.
+     *
+     * @param name the label name
+     * @param value the label value
+     * @return the label
+     */
+    private static String label(final String name, final String value) {
+        return name + "=\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,60 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Enum JBTPhase.
+ * 
+ * The phases of an import that are timed by the metrics.
+ */
+public enum JBTPhase {
+
+    /** Reading an issue from the index, excluding the time handling it. */
+    INDEX_PARSE("index parse"),
+
+    /** Checking, hashing and reading an issue file into memory. */
+    FILE_LOAD("file load"),
+
+    /** Fetching the security key from Jira. */
+    KEY_FETCH("key fetch"),
+
+    /** Sending a Jelly script to Jira and waiting for the response. */
+    JIRA_POST("Jira POST"),
+
+    /** Reading and scanning the response from the Jelly runner. */
+    RESPONSE_PARSE("response parse");
+
+    /** The label. */
+    private final String label;
+
+    /**
+     * Instantiates a new JBT phase.
+     *
+     * @param labelValue the label
+     */
+    private JBTPhase(final String labelValue) {
+        this.label = labelValue;
+    }
+
+    /**
+     * Gets the label printed for the phase.
+     *
+     * @return the label
+     */
+    public final String getLabel() {
+        return this.label;
+    }
+}
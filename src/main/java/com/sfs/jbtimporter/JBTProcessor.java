@@ -20,23 +20,34 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
 
-import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.NameValuePair;
-import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.ConnectTimeoutException;
 import org.apache.commons.lang.StringUtils;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 import org.xml.sax.SAXException;
 
 /**
@@ -44,6 +55,12 @@ import org.xml.sax.SAXException;
  */
 public class JBTProcessor {
 
+    /** The size of the buffer used when reading files and responses. */
+    private static final int READ_BUFFER_SIZE = 8192;
+
+    /** The longest output of a Jelly script that is not treated as an error. */
+    private static final int MAX_SUCCESS_OUTPUT = 30;
+
     /** The username. */
     private String username;
 
@@ -62,11 +79,92 @@ public class JBTProcessor {
     /** The revert flag. */
     private boolean revert = false;
 
-    /** The http client. */
-    private HttpClient httpClient;
+    /** The rollback flag. */
+    private boolean rollback = false;
+
+    /** The number of worker threads. */
+    private int threads = 1;
+
+    /** The flag to submit each issue on its own virtual thread. */
+    private boolean virtualThreads = false;
+
+    /** The number of threads loading the issue files. */
+    private int loadThreads = JBTImportPipeline.DEFAULT_LOAD_THREADS;
+
+    /** The number of issues submitted in each Jelly script. */
+    private int batchSize = 1;
+
+    /** The resume flag. */
+    private boolean resume = false;
+
+    /** The import journal. */
+    private JBTJournal journal;
+
+    /** The revert journal. */
+    private JBTJournal revertJournal;
+
+    /** The incremental flag. */
+    private boolean incremental = false;
+
+    /** The import manifest. */
+    private JBTHashManifest manifest;
+
+    /** The transform manifest. */
+    private JBTHashManifest transformManifest;
+
+    /** The http connection pool, shared by all worker threads. */
+    private JBTConnectionPool connectionPool;
+
+    /** The transport sending requests to Jira. */
+    private JBTTransport transport;
     
+    /** The special character map. */
     private Map<Character, String> specialCharacterMap;
 
+    /** The character escaper, compiled from the special character map. */
+    private JBTCharacterEscaper characterEscaper;
+
+    /** The classifier of the Jelly runner results. */
+    private JBTResultClassifier resultClassifier = JBTResultClassifier.getDefault();
+
+    /** The handler of failed imports that can be retried. */
+    private final JBTRetryHandler retryHandler = new JBTRetryHandler();
+
+    /** The limiter of the request rate, null if not limited. */
+    private volatile JBTRateLimiter rateLimiter;
+
+    /** The adaptive limiter of requests in flight, null if not adaptive. */
+    private volatile JBTConcurrencyLimiter concurrencyLimiter;
+
+    /** The fixed limit of requests in flight through an async transport. */
+    private final JBTConcurrencyLimiter fixedLimiter = new JBTConcurrencyLimiter(1, false);
+
+    /** The executor of the retries and key fetches of async requests. */
+    private final ExecutorService asyncExecutor = Executors.newCachedThreadPool();
+
+    /** The metrics of the import. */
+    private final JBTMetrics metrics = new JBTMetrics();
+
+    /** The seconds between progress lines, zero to print none. */
+    private int progressInterval = JBTMetrics.DEFAULT_PROGRESS_INTERVAL;
+
+    /** The file the metrics are written to, null for the default. */
+    private String metricsFileName;
+
+    /** The localhost port of the metrics endpoint, zero if not served. */
+    private int metricsPort = 0;
+
+    /** The cached Jira security key, shared by all worker threads. */
+    private String securityKey;
+
+    /** The markers of a page returned when the security key is rejected. */
+    private final String[] invalidKeyMarkers = {
+            "XSRF Security Token Missing",
+            "XSRF Security Token Invalid",
+            "missing form token",
+            "invalid form token"
+            };
+
     /** The jira key path. */
     private final String jiraKeyPath = "secure/admin/util/JellyRunner!default.jspa";
 
@@ -126,25 +224,12 @@ public class JBTProcessor {
         }
 
         // Setup the HttpClient to handle connections
-        this.httpClient = new HttpClient();
-        // Proxy configuration
-        String proxyHost = System.getProperty("http.proxyHost);");
-        String proxyPortString = System.getProperty("http.proxyPort");
-        int proxyPort = -1;
-
-        if (this.getBaseUrl().startsWith("https")) {
-            proxyHost = System.getProperty("https.proxyHost");
-            proxyPortString = System.getProperty("https.proxyPort");
-        }
-        try {
-            proxyPort = Integer.parseInt(proxyPortString);
-        } catch (NumberFormatException nfe) {
-            proxyPort = -1;
-        }
-        if (StringUtils.isNotBlank(proxyHost) && proxyPort > 0) {
-            this.httpClient.getHostConfiguration().setProxy(proxyHost, proxyPort);
-        }
+        this.connectionPool = new JBTConnectionPool();
+        this.transport = new JBTHttpClientTransport(this.connectionPool,
+                this.getBaseUrl());
+        this.setThreads(this.threads);
         this.specialCharacterMap = this.initialiseSpecialCharacterMap();
+        this.characterEscaper = new JBTCharacterEscaper(this.specialCharacterMap);
     }
 
     /**
@@ -200,240 +285,1256 @@ public class JBTProcessor {
     public final boolean getRevert() {
         return this.revert;
     }
-    
+
     /**
-     * Gets the special character map.
-     * 
-     * @return the special character map
+     * Sets the rollback flag. When set with the revert flag an interrupted
+     * revert is rolled back, restoring the transformed files.
+     *
+     * @param rollbackValue the rollback flag
      */
-    public final Map<Character, String> getSpecialCharacterMap() {
-        return this.specialCharacterMap;
+    public final void setRollback(final boolean rollbackValue) {
+        this.rollback = rollbackValue;
     }
 
     /**
-     * Gets the Jira security key.
+     * Gets the rollback flag.
+     *
+     * @return the rollback flag
+     */
+    public final boolean getRollback() {
+        return this.rollback;
+    }
+    
+    /**
+     * Sets the number of worker threads.
      * 
-     * @return the jira security key
-     * @throws IOException Signals that an I/O exception has occurred.
+     * @param threadsValue the number of worker threads
      */
-    public final String getKey() throws IOException {
+    public final void setThreads(final int threadsValue) {
+        this.threads = threadsValue;
 
-        String key = "";
+        // Allow a connection to Jira for each worker thread
+        this.connectionPool.setMaxConnectionsPerHost(threadsValue);
+        this.fixedLimiter.setMaxLimit(threadsValue);
+        if (this.concurrencyLimiter != null) {
+            this.concurrencyLimiter.setMaxLimit(threadsValue);
+        }
+    }
 
-        final String jellyUrl = this.getBaseUrl() + this.jiraKeyPath;
+    /**
+     * Gets the number of worker threads.
+     * 
+     * @return the number of worker threads
+     */
+    public final int getThreads() {
+        return this.threads;
+    }
+    
+    /**
+     * Sets whether each issue is submitted on its own virtual thread, with
+     * the number of threads capping the requests in flight.
+     *
+     * @param virtualThreadsValue the virtual threads flag
+     */
+    public final void setVirtualThreads(final boolean virtualThreadsValue) {
+        this.virtualThreads = virtualThreadsValue;
+    }
 
-        final PostMethod postMethod = new PostMethod(jellyUrl);
-        final NameValuePair[] data = {
-                new NameValuePair("os_username", this.getUsername()),
-                new NameValuePair("os_password", this.getPassword())
-                };       
+    /**
+     * Gets whether each issue is submitted on its own virtual thread.
+     *
+     * @return the virtual threads flag
+     */
+    public final boolean getVirtualThreads() {
+        return this.virtualThreads;
+    }
 
-        final String raw = postData(postMethod, data);
+    /**
+     * Sets the number of threads loading the issue files.
+     *
+     * @param loadThreadsValue the number of load threads
+     */
+    public final void setLoadThreads(final int loadThreadsValue) {
+        this.loadThreads = loadThreadsValue;
+    }
 
-        // Get the value of the alt_token input field as the key
-        if (raw.indexOf("name=\"atl_token\"") > 0) {
-            final int charcount = 16;
-            final int valuelength = 20;
-            // Value returned
-            String result = raw.substring(raw.indexOf("name=\"atl_token\"") + charcount,
-                    raw.length());
-            result = result.substring(result.indexOf("\""), result.indexOf("\"")
-                    + valuelength);
-            key = result.substring(result.indexOf("\"") + 1, result.lastIndexOf("\""));
-        }
-        return key;
+    /**
+     * Gets the number of threads loading the issue files.
+     *
+     * @return the number of load threads
+     */
+    public final int getLoadThreads() {
+        return this.loadThreads;
     }
     
+    /**
+     * Sets the number of issues submitted in each Jelly script.
+     * 
+     * @param batchSizeValue the batch size
+     */
+    public final void setBatchSize(final int batchSizeValue) {
+        this.batchSize = batchSizeValue;
+    }
+
+    /**
+     * Gets the number of issues submitted in each Jelly script.
+     * 
+     * @return the batch size
+     */
+    public final int getBatchSize() {
+        return this.batchSize;
+    }
     
     /**
-     * Passes the XML to Jira's Jelly runner.
-     *
-     * @param key the key
-     * @param xmldata the xmldata
-     * @return the result from the jelly runner
-     * @throws IOException Signals that an I/O exception has occurred.
+     * Sets the resume flag. When set the issues recorded as imported in the
+     * journal of a previous run are skipped.
+     * 
+     * @param resumeValue the resume flag
      */
-    public final String importXML(final String key, final String xmldata)
-            throws IOException {
+    public final void setResume(final boolean resumeValue) {
+        this.resume = resumeValue;
+    }
 
-        String result = "";
-                    
-        final String runnerUrl = this.getBaseUrl() + this.jiraRunnerPath;
-
-        PostMethod postMethod = new PostMethod(runnerUrl);
-        NameValuePair[] data = {
-                new NameValuePair("os_username", this.getUsername()),
-                new NameValuePair("os_password", this.getPassword()),
-                new NameValuePair("atl_token", key),
-                new NameValuePair("file", ""),
-                new NameValuePair("script", xmldata)
-                };
-        
-        final String raw = postData(postMethod, data);
-                
-        if (raw.indexOf("xmlns:j='jelly:core'") > 0 || 
-                raw.indexOf("xmlns:j=\"jelly:core\"") > 0) {
-            // The Jelly script has successfully run, capture outcome
-            final int precount = 24;
-            final int postcount = 4;
-            // Value returned
-            String startResult = raw.substring(raw.indexOf("xmlns:j='jelly:core'") 
-                    + precount, raw.length());
-            result = startResult.substring(0, startResult.indexOf("/JiraJelly") 
-                    - postcount);
+    /**
+     * Gets the resume flag.
+     * 
+     * @return the resume flag
+     */
+    public final boolean getResume() {
+        return this.resume;
+    }
+
+    /**
+     * Gets the import journal, stored in the export directory.
+     * 
+     * @return the import journal
+     */
+    public final synchronized JBTJournal getJournal() {
+        if (this.journal == null) {
+            this.journal = new JBTJournal(new File(this.getExportBase() 
+                    + "import.journal"));
         }
-        
-        if (raw.indexOf("xmlns:j=&quot;jelly:core&quot;") > 0) {
-            // The Jelly script has been run, capture outcome
-            final int precount = 34;
-            final int postcount = 4;
-            // Value returned
-            String startResult = raw.substring(
-                    raw.indexOf("xmlns:j=&quot;jelly:core&quot;") + precount, 
-                    raw.length());
-            result = startResult.substring(0, startResult.indexOf("/JiraJelly") 
-                    - postcount);
+        return this.journal;
+    }
+
+    /**
+     * Gets the revert journal, stored in the export directory.
+     * 
+     * @return the revert journal
+     */
+    public final synchronized JBTJournal getRevertJournal() {
+        if (this.revertJournal == null) {
+            this.revertJournal = new JBTJournal(new File(this.getExportBase() 
+                    + "revert.journal"));
         }
-        
-        if (raw.indexOf("id=\"scriptException\"") > 0) {
-            // A script exception has been thrown. i.e. The script couldn't be run
-            final int precount = 203;
-            final int postcount = 1;
-            // Value returned
-            String startResult = raw.substring(raw.indexOf("id=\"scriptException\"") 
-                    + precount, raw.length());
-            result = startResult.substring(0, startResult.indexOf("/div") 
-                    - postcount);
+        return this.revertJournal;
+    }
+
+    /**
+     * Sets the incremental flag. When set only the issues that are new, or
+     * whose file has changed since it was imported, are submitted to Jira.
+     * 
+     * @param incrementalValue the incremental flag
+     */
+    public final void setIncremental(final boolean incrementalValue) {
+        this.incremental = incrementalValue;
+    }
+
+    /**
+     * Gets the incremental flag.
+     * 
+     * @return the incremental flag
+     */
+    public final boolean getIncremental() {
+        return this.incremental;
+    }
+
+    /**
+     * Gets the import manifest, stored in the export directory.
+     * 
+     * @return the import manifest
+     */
+    public final synchronized JBTHashManifest getManifest() {
+        if (this.manifest == null) {
+            this.manifest = new JBTHashManifest(new File(this.getExportBase() 
+                    + "import.manifest"));
         }
-        
-        return reformatHtml(result);
+        return this.manifest;
     }
 
+    /**
+     * Gets the transform manifest, stored in the export directory.
+     * 
+     * @return the transform manifest
+     */
+    public final synchronized JBTHashManifest getTransformManifest() {
+        if (this.transformManifest == null) {
+            this.transformManifest = new JBTHashManifest(new File(
+                    this.getExportBase() + "transform.manifest"));
+        }
+        return this.transformManifest;
+    }
     
     /**
-     * Parses the xml index.
+     * Sets the classifier of the Jelly runner results.
      *
-     * @return the list
-     * @throws SAXException the SAX exception
-     * @throws IOException Signals that an I/O exception has occurred.
+     * @param resultClassifierValue the result classifier
      */
-    public final List<JBTIssue> parseXmlIndex() throws SAXException, IOException {
+    public final void setResultClassifier(
+            final JBTResultClassifier resultClassifierValue) {
+        this.resultClassifier = resultClassifierValue;
+    }
 
-        final List<JBTIssue> issues = new ArrayList<JBTIssue>();
-        
-        final File file = new File(this.getExportBase() + "index.xml");
-        
-        final DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        DocumentBuilder db = null;
-        try {
-            db = dbf.newDocumentBuilder();
-        } catch (ParserConfigurationException pce) {
-            throw new SAXException("Error configuring XML parser: " + pce.getMessage());
-        }
-        final Document doc = db.parse(file);
-        doc.getDocumentElement().normalize();
-        
-        final NodeList bugList = doc.getElementsByTagName("bug");
-
-        for (int s = 0; s < bugList.getLength(); s++) {
-
-            final Node bugNode = bugList.item(s);
-
-            if (bugNode.getNodeType() == Node.ELEMENT_NODE) {
-
-                final JBTIssue issue = new JBTIssue(this);
-                
-                final Element bugElmnt = (Element) bugNode;
-                
-                issue.setId(bugElmnt.getAttribute("id"));
-                issue.setBase(bugElmnt.getAttribute("base"));
-                                
-                NodeList fileElmntLst = bugNode.getChildNodes();
-                
-                for (int t = 0; t < fileElmntLst.getLength(); t++) {
-
-                    final Node fileNode = fileElmntLst.item(t);
-                    
-                    if (fileNode.getNodeType() == Node.ELEMENT_NODE) {
-                    
-                        final Element fileElmnt = (Element) fileNode;
-                        final NodeList chldFile = fileElmnt.getChildNodes();
-                        final Node filenameNode = (Node) chldFile.item(0);
-                    
-                        if (StringUtils.equals(
-                                fileElmnt.getAttribute("primary"), "true")) {
-                            issue.setFileName(filenameNode.getNodeValue());
-                            
-                            // Add the issue to the array
-                            issues.add(issue);
-                        }
-                    }
-                }
-            }
-        }
-        return issues;
+    /**
+     * Gets the classifier of the Jelly runner results.
+     *
+     * @return the result classifier
+     */
+    public final JBTResultClassifier getResultClassifier() {
+        return this.resultClassifier;
+    }
+    
+    /**
+     * Sets the maximum number of Jelly scripts sent to Jira per second.
+     *
+     * @param requestsPerSecond the maximum requests per second, zero to
+     *            not limit the rate
+     */
+    public final void setMaxRequestsPerSecond(final double requestsPerSecond) {
+        this.rateLimiter = requestsPerSecond > 0 
+                ? new JBTRateLimiter(requestsPerSecond) : null;
+    }
+
+    /**
+     * Gets the maximum requests sent to Jira per second.
+     *
+     * @return the requests per second, zero if unlimited
+     */
+    public final double getMaxRequestsPerSecond() {
+        final JBTRateLimiter limiter = this.rateLimiter;
+        return limiter != null ? limiter.getRequestsPerSecond() : 0;
     }
 
+    /**
+     * Sets whether the number of requests in flight adapts to the latency
+     * and failures of Jira, up to the number of worker threads.
+     *
+     * @param adaptive the adaptive concurrency flag
+     */
+    public final void setAdaptiveConcurrency(final boolean adaptive) {
+        this.concurrencyLimiter = adaptive 
+                ? new JBTConcurrencyLimiter(this.threads) : null;
+    }
+
+    /**
+     * Gets the adaptive limiter of requests in flight.
+     *
+     * @return the concurrency limiter, or null if not adaptive
+     */
+    public final JBTConcurrencyLimiter getConcurrencyLimiter() {
+        return this.concurrencyLimiter;
+    }
+
+    /**
+     * Gets the limiter of the requests in flight through an asynchronous
+     * transport: the adaptive limiter, or a fixed limit of the number of
+     * worker threads.
+     *
+     * @return the in flight limiter
+     */
+    public final JBTConcurrencyLimiter getInFlightLimiter() {
+        final JBTConcurrencyLimiter concurrency = this.concurrencyLimiter;
+        return concurrency != null ? concurrency : this.fixedLimiter;
+    }
+
+    /**
+     * Gets the handler of failed imports that can be retried.
+     *
+     * @return the retry handler
+     */
+    public final JBTRetryHandler getRetryHandler() {
+        return this.retryHandler;
+    }
     
     /**
-     * Load xml data from the supplied file.
-     * 
-     * @param filepath the filepath
-     * @return the string
-     * @throws IOException Signals that an I/O exception has occurred.
+     * Gets the metrics of the import.
+     *
+     * @return the metrics
      */
-    public final String loadXmlDataFile(final String filepath) throws IOException {
+    public final JBTMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Sets the seconds between the progress lines printed during an import.
+     *
+     * @param progressIntervalValue the progress interval, zero to print none
+     */
+    public final void setProgressInterval(final int progressIntervalValue) {
+        this.progressInterval = progressIntervalValue;
+    }
 
-        StringBuffer contents = new StringBuffer();
+    /**
+     * Gets the seconds between the progress lines printed during an import.
+     *
+     * @return the progress interval
+     */
+    public final int getProgressInterval() {
+        return this.progressInterval;
+    }
+
+    /**
+     * Sets the name of the file the metrics are written to.
+     *
+     * @param metricsFileNameValue the metrics file name
+     */
+    public final void setMetricsFileName(final String metricsFileNameValue) {
+        this.metricsFileName = metricsFileNameValue;
+    }
 
-        Reader reader = new InputStreamReader(new FileInputStream(filepath), "UTF-8");
+    /**
+     * Gets the file the metrics are written to, by default stored in the
+     * export directory.
+     *
+     * @return the metrics file
+     */
+    public final File getMetricsFile() {
+        if (StringUtils.isNotBlank(this.metricsFileName)) {
+            return new File(this.metricsFileName);
+        }
+        return new File(this.getExportBase() + "import.metrics.json");
+    }
 
-        int ch;
-        do {
-            ch = reader.read();
-            if (ch != -1) {
-                contents.append((char) ch);
-            }
-        } while (ch != -1);
+    /**
+     * Sets the localhost port the live metrics are served on while an
+     * import runs.
+     *
+     * @param metricsPortValue the metrics port, zero to not serve them
+     */
+    public final void setMetricsPort(final int metricsPortValue) {
+        this.metricsPort = metricsPortValue;
+    }
+
+    /**
+     * Gets the localhost port the live metrics are served on.
+     *
+     * @return the metrics port, zero if not served
+     */
+    public final int getMetricsPort() {
+        return this.metricsPort;
+    }
 
-        reader.close();
+    /**
+     * Sets the transport sending requests to Jira, replacing the blocking
+     * transport built on the connection pool.
+     *
+     * @param transportValue the transport
+     */
+    public final void setTransport(final JBTTransport transportValue) {
+        this.transport = transportValue;
+    }
 
-        return contents.toString();
+    /**
+     * Gets the transport sending requests to Jira.
+     *
+     * @return the transport
+     */
+    public final JBTTransport getTransport() {
+        return this.transport;
+    }
+
+    /**
+     * Gets the http connection pool.
+     * 
+     * @return the connection pool
+     */
+    public final JBTConnectionPool getConnectionPool() {
+        return this.connectionPool;
+    }
+    
+    /**
+     * Release the resources held by the processor.
+     */
+    public final void shutdown() {
+        this.asyncExecutor.shutdown();
+        this.transport.shutdown();
+        this.connectionPool.shutdown();
     }
     
+    /**
+     * Gets the special character map.
+     * 
+     * @return the special character map
+     */
+    public final Map<Character, String> getSpecialCharacterMap() {
+        return this.specialCharacterMap;
+    }
     
     /**
-     * Post the data to the service.
+     * Gets the hash of the special character map, which changes whenever
+     * the escaping of the transformed files would.
      *
-     * @param postMethod the post method
-     * @param data the data
-     * @return the string
+     * @return the special character map hash
      * @throws IOException Signals that an I/O exception has occurred.
      */
-    private String postData(final PostMethod postMethod, final NameValuePair[] data)
-            throws IOException {
-
-        final StringBuffer raw = new StringBuffer();
+    public final String getSpecialCharacterMapHash() throws IOException {
         
-        postMethod.setRequestBody(data);
+        final StringBuilder canonical = new StringBuilder();
+        for (Map.Entry<Character, String> entry 
+                : new TreeMap<Character, String>(this.specialCharacterMap).entrySet()) {
+            canonical.append((int) entry.getKey().charValue());
+            canonical.append('=');
+            canonical.append(entry.getValue());
+            canonical.append('\n');
+        }
+        return JBTContentHasher.hash(canonical.toString());
+    }
 
-        // Execute the post request
-        httpClient.executeMethod(postMethod);
+    /**
+     * Gets the character escaper compiled from the special character map.
+     * 
+     * @return the character escaper
+     */
+    public final JBTCharacterEscaper getCharacterEscaper() {
+        return this.characterEscaper;
+    }
 
-        try {
-            Reader reader = new InputStreamReader(postMethod.getResponseBodyAsStream(),
-                    postMethod.getResponseCharSet());
-            // consume the response entity
-            int dataread = reader.read();
-            while (dataread != -1) {
-                char theChar = (char) dataread;
-                raw.append(theChar);
-                dataread = reader.read();
-            }
-        } finally {
-            postMethod.releaseConnection();
-        }
-        return raw.toString();
+    /**
+     * Gets the Jira security key.
+     * 
+     * @return the jira security key
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final String getKey() throws IOException {
+
+        final Map<String, String> data = new LinkedHashMap<String, String>();
+        data.put("os_username", this.getUsername());
+        data.put("os_password", this.getPassword());
+
+        // Get the value of the alt_token input field as the key
+        return this.send(new JBTRequest(this.getBaseUrl() + this.jiraKeyPath, data),
+                JBTResponseScanner.forSecurityKey(), JBTPhase.KEY_FETCH)
+                .getSecurityKey();
+    }
+    
+    
+    /**
+     * Gets the cached Jira security key. The key is fetched from Jira the
+     * first time it is requested and reused for the rest of the run, until
+     * it is invalidated.
+     * 
+     * @return the jira security key
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final synchronized String getSecurityKey() throws IOException {
+        if (StringUtils.isBlank(this.securityKey)) {
+            this.securityKey = this.getKey();
+        }
+        return this.securityKey;
+    }
+    
+    /**
+     * Invalidate the cached security key so a new key is fetched when next
+     * requested. The cache is only cleared if it still holds the stale key,
+     * so workers that hit an expired key at the same time fetch it once.
+     *
+     * @param staleKey the key that Jira rejected
+     */
+    public final synchronized void invalidateSecurityKey(final String staleKey) {
+        if (StringUtils.equals(this.securityKey, staleKey)) {
+            this.securityKey = null;
+        }
+    }
+    
+    
+    /**
+     * Passes the XML to Jira's Jelly runner. If Jira reports that the key
+     * has expired or is invalid a new key is fetched and the XML is sent
+     * again.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata
+     * @return the classified result from the jelly runner
+     */
+    public final JBTImportResult importXML(final String key, final String xmldata) {
+        return this.importScript(key, xmldata, null);
+    }
+    
+    
+    /**
+     * Passes the XML file to Jira's Jelly runner. The file is streamed into
+     * the request rather than loaded into memory. If Jira reports that the
+     * key has expired or is invalid a new key is fetched and the XML is
+     * sent again.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmlfile the xml file
+     * @return the classified result from the jelly runner
+     */
+    public final JBTImportResult importXML(final String key, final File xmlfile) {
+        return this.importScript(key, null, xmlfile);
+    }
+    
+    
+    /**
+     * Passes the Jelly script, supplied as either a string or a file, to
+     * Jira's Jelly runner and classifies the result. Failures are retried
+     * as set by the retry policy of their class, and no request is sent
+     * while the circuit breaker is open.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the classified result from the jelly runner
+     */
+    private JBTImportResult importScript(final String key, final String xmldata,
+            final File xmlfile) {
+
+        JBTImportResult result = null;
+        int retries = 0;
+        do {
+            try {
+                this.retryHandler.getCircuitBreaker().awaitPermission();
+                result = throttledAttempt(retries == 0 ? key : null, xmldata, xmlfile);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                result = JBTImportResult.failure(JBTResultType.TRANSPORT_FAILURE,
+                        "ERROR: Interrupted while waiting for Jira");
+                this.retryHandler.recordAttempt(result);
+                return result;
+            }
+            this.retryHandler.recordAttempt(result);
+        } while (this.retryHandler.awaitRetry(result, retries++));
+
+        return result;
+    }
+    
+    
+    /**
+     * Make a single attempt at passing the Jelly script to Jira's Jelly
+     * runner, once allowed by the rate limiter and the concurrency limiter.
+     * The latency of the attempt is fed back to the concurrency limiter.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the classified result from the jelly runner
+     * @throws InterruptedException the interrupted exception
+     */
+    private JBTImportResult throttledAttempt(final String key, final String xmldata,
+            final File xmlfile) throws InterruptedException {
+        
+        final JBTRateLimiter limiter = this.rateLimiter;
+        final JBTConcurrencyLimiter concurrency = this.concurrencyLimiter;
+        
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        if (concurrency == null) {
+            return attemptScript(key, xmldata, xmlfile);
+        }
+        concurrency.acquire();
+        
+        final long start = System.nanoTime();
+        JBTImportResult result = null;
+        try {
+            result = attemptScript(key, xmldata, xmlfile);
+        } finally {
+            concurrency.release(System.nanoTime() - start, result == null 
+                    || result.getType() == JBTResultType.CONNECTION_FAILURE
+                    || result.getType() == JBTResultType.TRANSPORT_FAILURE);
+        }
+        return result;
+    }
+    
+    
+    /**
+     * Make a single attempt at passing the Jelly script to Jira's Jelly
+     * runner and classify the result.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the classified result from the jelly runner
+     */
+    private JBTImportResult attemptScript(final String key, final String xmldata,
+            final File xmlfile) {
+
+        String attemptKey = key;
+        try {
+            if (StringUtils.isBlank(attemptKey)) {
+                attemptKey = this.getSecurityKey();
+            }
+        } catch (IOException ioe) {
+            // The script has not been sent
+            return JBTImportResult.failure(JBTResultType.CONNECTION_FAILURE,
+                    "ERROR fetching the security key from Jira: " + ioe.getMessage());
+        }
+        if (StringUtils.isBlank(attemptKey)) {
+            return JBTImportResult.failure(JBTResultType.AUTH_FAILURE,
+                    "ERROR: The security key is not valid");
+        }
+        JBTResponse response = null;
+        try {
+            response = runScript(attemptKey, xmldata, xmlfile);
+        } catch (IOException ioe) {
+            return communicationFailure(ioe);
+        }
+        return classifyResponse(response);
+    }
+    
+    
+    /**
+     * Classify the response of the Jelly runner.
+     *
+     * @param response the response
+     * @return the classified result from the jelly runner
+     */
+    private JBTImportResult classifyResponse(final JBTResponse response) {
+        if (response.isKeyRejected()) {
+            return JBTImportResult.failure(JBTResultType.AUTH_FAILURE,
+                    "ERROR: The security key was rejected by Jira");
+        }
+        return classifyResult(reformatHtml(response.getResult()),
+                response.getScriptException() != null);
+    }
+    
+    
+    /**
+     * Gets the failure of a request that could not be completed, a
+     * connection failure if the script never reached Jira.
+     *
+     * @param ioe the exception
+     * @return the import result
+     */
+    private static JBTImportResult communicationFailure(final IOException ioe) {
+        return JBTImportResult.failure(isConnectionFailure(ioe)
+                ? JBTResultType.CONNECTION_FAILURE : JBTResultType.TRANSPORT_FAILURE,
+                "ERROR communicating with Jira: " + ioe.getMessage());
+    }
+    
+    
+    /**
+     * Checks if the request failed because the connection to Jira could not
+     * be made, in which case the script never reached Jira.
+     *
+     * @param ioe the exception
+     * @return true, if the connection could not be made
+     */
+    private static boolean isConnectionFailure(final IOException ioe) {
+
+        Throwable cause = ioe;
+        while (cause != null) {
+            if (cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException
+                    || cause instanceof ConnectTimeoutException
+                    || cause instanceof HttpConnectTimeoutException) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+    
+    
+    /**
+     * Passes the Jelly script to Jira's Jelly runner. If Jira reports that
+     * the key has expired or is invalid a new key is fetched and the script
+     * is sent again.
+     *
+     * @param key the key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the response from the jelly runner
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private JBTResponse runScript(final String key, final String xmldata,
+            final File xmlfile) throws IOException {
+
+        JBTResponse response = postScript(key, xmldata, xmlfile);
+        
+        if (response.isKeyRejected()) {
+            // The key is no longer valid, fetch a new key and try again
+            this.invalidateSecurityKey(key);
+            final String newKey = this.getSecurityKey();
+            if (StringUtils.isNotBlank(newKey)) {
+                response = postScript(newKey, xmldata, xmlfile);
+            }
+        }
+        return response;
+    }
+
+    
+    /**
+     * Passes the XML of several issues to Jira's Jelly runner as a single
+     * script, returning the result of every issue. Null is returned if the
+     * scripts could not be joined into a batch, and so were not sent. If
+     * Jira could not be reached, or rejected the key, every issue is given
+     * that failure.
+     * 
+     * Jelly stops at the first issue that throws, and the page reporting
+     * the exception holds none of the output, so the issues of a batch
+     * that threw may or may not have been created. They are never sent
+     * again, which could create them twice; they are left unconfirmed, to
+     * be reconciled with Jira.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param scripts the xmldata of each issue, keyed by issue id
+     * @return the classified result of each issue, or null
+     */
+    public final Map<String, JBTImportResult> importXMLBatch(final String key,
+            final Map<String, String> scripts) {
+        
+        final String batch = JBTJellyBatch.join(scripts);
+        if (batch == null) {
+            return null;
+        }
+        return this.splitBatchResult(this.importScript(key, batch, null), scripts);
+    }
+    
+    
+    /**
+     * Split the result of a batch into the result of each of its issues.
+     *
+     * @param batchResult the classified result of the batch
+     * @param scripts the xmldata of each issue, keyed by issue id
+     * @return the classified result of each issue
+     */
+    private Map<String, JBTImportResult> splitBatchResult(
+            final JBTImportResult batchResult, final Map<String, String> scripts) {
+        
+        final Map<String, JBTImportResult> results = 
+            new LinkedHashMap<String, JBTImportResult>();
+        
+        if (batchResult.getType() == JBTResultType.CONNECTION_FAILURE
+                || batchResult.getType() == JBTResultType.TRANSPORT_FAILURE
+                || batchResult.getType() == JBTResultType.AUTH_FAILURE) {
+            for (String id : scripts.keySet()) {
+                results.put(id, batchResult);
+            }
+            return results;
+        }
+        // The markers alone make the output of a batch too long to pass as
+        // a success, so it is split whatever its type
+        final Map<String, String> outputs =
+            JBTJellyBatch.split(batchResult.getMessage(), scripts);
+        for (String id : scripts.keySet()) {
+            if (outputs.containsKey(id)) {
+                results.put(id, classifyResult(outputs.get(id), false));
+            } else {
+                results.put(id, JBTImportResult.failure(JBTResultType.UNCONFIRMED,
+                        "ERROR: The batch failed before reporting this issue, "
+                        + "check whether it was created in Jira\n"
+                        + batchResult.getMessage()));
+            }
+        }
+        return results;
+    }
+    
+    
+    /**
+     * Passes the XML to Jira's Jelly runner as importXML does, without
+     * waiting for the response. The calling thread only waits for the
+     * circuit breaker, the rate limiter and the limit of requests in flight.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata
+     * @return the future classified result from the jelly runner
+     */
+    public final CompletableFuture<JBTImportResult> importXMLAsync(final String key,
+            final String xmldata) {
+        return this.importScriptAsync(key, xmldata, null, 0);
+    }
+    
+    
+    /**
+     * Passes the XML file to Jira's Jelly runner as importXML does, without
+     * waiting for the response.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmlfile the xml file
+     * @return the future classified result from the jelly runner
+     */
+    public final CompletableFuture<JBTImportResult> importXMLAsync(final String key,
+            final File xmlfile) {
+        return this.importScriptAsync(key, null, xmlfile, 0);
+    }
+    
+    
+    /**
+     * Passes the XML of several issues to Jira's Jelly runner as a single
+     * script as importXMLBatch does, without waiting for the response.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param scripts the xmldata of each issue, keyed by issue id
+     * @return the future classified result of each issue, or null if the
+     *         scripts could not be joined into a batch
+     */
+    public final CompletableFuture<Map<String, JBTImportResult>> importXMLBatchAsync(
+            final String key, final Map<String, String> scripts) {
+        
+        final String batch = JBTJellyBatch.join(scripts);
+        if (batch == null) {
+            return null;
+        }
+        return this.importScriptAsync(key, batch, null, 0).thenApply(
+                new Function<JBTImportResult, Map<String, JBTImportResult>>() {
+                    public Map<String, JBTImportResult> apply(
+                            final JBTImportResult batchResult) {
+                        return splitBatchResult(batchResult, scripts);
+                    }
+                });
+    }
+    
+    
+    /**
+     * Passes the Jelly script to Jira's Jelly runner without waiting for
+     * the response. A failure that can be retried is sent again from the
+     * async executor once its backoff delay has passed.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @param retries the number of retries already made
+     * @return the future classified result from the jelly runner
+     */
+    private CompletableFuture<JBTImportResult> importScriptAsync(final String key,
+            final String xmldata, final File xmlfile, final int retries) {
+
+        CompletableFuture<JBTImportResult> attempt = null;
+        try {
+            this.retryHandler.getCircuitBreaker().awaitPermission();
+            attempt = throttledAttemptAsync(key, xmldata, xmlfile);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            final JBTImportResult result = JBTImportResult.failure(
+                    JBTResultType.TRANSPORT_FAILURE,
+                    "ERROR: Interrupted while waiting for Jira");
+            this.retryHandler.recordAttempt(result);
+            return CompletableFuture.completedFuture(result);
+        }
+        return attempt.thenCompose(
+                new Function<JBTImportResult, CompletionStage<JBTImportResult>>() {
+                    public CompletionStage<JBTImportResult> apply(
+                            final JBTImportResult result) {
+                        retryHandler.recordAttempt(result);
+                        final long delay = retryHandler.nextRetryDelay(result, retries);
+                        if (delay < 0) {
+                            return CompletableFuture.completedFuture(result);
+                        }
+                        return CompletableFuture.supplyAsync(
+                                new Supplier<CompletableFuture<JBTImportResult>>() {
+                                    public CompletableFuture<JBTImportResult> get() {
+                                        return importScriptAsync(null, xmldata, xmlfile,
+                                                retries + 1);
+                                    }
+                                }, CompletableFuture.delayedExecutor(delay,
+                                        TimeUnit.MILLISECONDS, asyncExecutor))
+                                .thenCompose(Function.<CompletableFuture<JBTImportResult>>
+                                        identity());
+                    }
+                });
+    }
+    
+    
+    /**
+     * Make a single attempt at passing the Jelly script to Jira's Jelly
+     * runner without waiting for the response, once allowed by the rate
+     * limiter and the limit of requests in flight. The latency of the
+     * attempt is fed back to the limiter as it completes.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the future classified result from the jelly runner
+     * @throws InterruptedException the interrupted exception
+     */
+    private CompletableFuture<JBTImportResult> throttledAttemptAsync(final String key,
+            final String xmldata, final File xmlfile) throws InterruptedException {
+        
+        final JBTRateLimiter limiter = this.rateLimiter;
+        final JBTConcurrencyLimiter concurrency = this.getInFlightLimiter();
+        
+        if (limiter != null) {
+            limiter.acquire();
+        }
+        concurrency.acquire();
+        
+        final long start = System.nanoTime();
+        CompletableFuture<JBTImportResult> attempt = null;
+        try {
+            attempt = attemptScriptAsync(key, xmldata, xmlfile);
+        } finally {
+            if (attempt == null) {
+                concurrency.release(System.nanoTime() - start, true);
+            }
+        }
+        return attempt.whenComplete(new BiConsumer<JBTImportResult, Throwable>() {
+            public void accept(final JBTImportResult result, final Throwable error) {
+                concurrency.release(System.nanoTime() - start, result == null 
+                        || result.getType() == JBTResultType.CONNECTION_FAILURE
+                        || result.getType() == JBTResultType.TRANSPORT_FAILURE);
+            }
+        });
+    }
+    
+    
+    /**
+     * Make a single attempt at passing the Jelly script to Jira's Jelly
+     * runner without waiting for the response, classifying the result as
+     * it completes.
+     *
+     * @param key the key, or null to use the cached security key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the future classified result from the jelly runner
+     */
+    private CompletableFuture<JBTImportResult> attemptScriptAsync(final String key,
+            final String xmldata, final File xmlfile) {
+
+        String attemptKey = key;
+        try {
+            if (StringUtils.isBlank(attemptKey)) {
+                attemptKey = this.getSecurityKey();
+            }
+        } catch (IOException ioe) {
+            // The script has not been sent
+            return CompletableFuture.completedFuture(JBTImportResult.failure(
+                    JBTResultType.CONNECTION_FAILURE,
+                    "ERROR fetching the security key from Jira: " + ioe.getMessage()));
+        }
+        if (StringUtils.isBlank(attemptKey)) {
+            return CompletableFuture.completedFuture(JBTImportResult.failure(
+                    JBTResultType.AUTH_FAILURE, "ERROR: The security key is not valid"));
+        }
+        return runScriptAsync(attemptKey, xmldata, xmlfile).handle(
+                new BiFunction<JBTResponse, Throwable, JBTImportResult>() {
+                    public JBTImportResult apply(final JBTResponse response,
+                            final Throwable error) {
+                        if (error != null) {
+                            return communicationFailure(toIOException(error));
+                        }
+                        return classifyResponse(response);
+                    }
+                });
+    }
+    
+    
+    /**
+     * Passes the Jelly script to Jira's Jelly runner without waiting for
+     * the response. If Jira reports that the key has expired or is invalid
+     * a new key is fetched, from the async executor, and the script is
+     * sent again.
+     *
+     * @param key the key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the future response from the jelly runner
+     */
+    private CompletableFuture<JBTResponse> runScriptAsync(final String key,
+            final String xmldata, final File xmlfile) {
+
+        return this.postScriptAsync(key, xmldata, xmlfile).thenCompose(
+                new Function<JBTResponse, CompletionStage<JBTResponse>>() {
+                    public CompletionStage<JBTResponse> apply(final JBTResponse response) {
+                        if (!response.isKeyRejected()) {
+                            return CompletableFuture.completedFuture(response);
+                        }
+                        return CompletableFuture.supplyAsync(
+                                new Supplier<CompletableFuture<JBTResponse>>() {
+                                    public CompletableFuture<JBTResponse> get() {
+                                        return resendScriptAsync(key, response,
+                                                xmldata, xmlfile);
+                                    }
+                                }, asyncExecutor)
+                                .thenCompose(Function.<CompletableFuture<JBTResponse>>
+                                        identity());
+                    }
+                });
+    }
+    
+    
+    /**
+     * Fetch a new key in place of the rejected key and send the Jelly
+     * script again.
+     *
+     * @param key the rejected key
+     * @param response the response rejecting the key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the future response from the jelly runner
+     */
+    private CompletableFuture<JBTResponse> resendScriptAsync(final String key,
+            final JBTResponse response, final String xmldata, final File xmlfile) {
+
+        this.invalidateSecurityKey(key);
+        String newKey = null;
+        try {
+            newKey = this.getSecurityKey();
+        } catch (IOException ioe) {
+            return CompletableFuture.failedFuture(ioe);
+        }
+        if (StringUtils.isBlank(newKey)) {
+            return CompletableFuture.completedFuture(response);
+        }
+        return this.postScriptAsync(newKey, xmldata, xmlfile);
+    }
+    
+    
+    /**
+     * Gets the IOException a future failed with.
+     *
+     * @param error the error the future completed with
+     * @return the exception
+     */
+    private static IOException toIOException(final Throwable error) {
+
+        Throwable cause = error;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        return new IOException(cause);
+    }
+    
+    
+    /**
+     * Classify the result of a Jelly script. The result is matched against
+     * the classification rules; if none match, a script exception or an
+     * output longer than a short acknowledgement is treated as an error.
+     *
+     * @param result the reformatted result
+     * @param scriptException true if Jira reported a script exception
+     * @return the import result
+     */
+    private JBTImportResult classifyResult(final String result,
+            final boolean scriptException) {
+        
+        final Set<JBTResultType> matched = this.resultClassifier.classify(result);
+        JBTResultType type = this.resultClassifier.getPrimaryType(matched);
+        
+        if (type == null && (scriptException 
+                || StringUtils.length(result) > MAX_SUCCESS_OUTPUT)) {
+            type = JBTResultType.SCRIPT_EXCEPTION;
+            matched.add(type);
+        }
+        if (type == null) {
+            return JBTImportResult.success(result);
+        }
+        return new JBTImportResult(type, result, matched);
+    }
+
+    /**
+     * Parses the xml index.
+     *
+     * @return the list
+     * @throws SAXException the SAX exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final List<JBTIssue> parseXmlIndex() throws SAXException, IOException {
+
+        final List<JBTIssue> issues = new ArrayList<JBTIssue>();
+
+        this.parseXmlIndex(new JBTIssueHandler() {
+            public void handleIssue(final JBTIssue issue) {
+                // Add the issue to the array
+                issues.add(issue);
+            }
+        });
+        return issues;
+    }
+
+
+    /**
+     * Stream the xml index, passing each issue to the supplied handler as
+     * soon as it has been read.
+     *
+     * @param handler the issue handler
+     * @throws SAXException the SAX exception
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final void parseXmlIndex(final JBTIssueHandler handler)
+            throws SAXException, IOException {
+
+        final File file = new File(this.getExportBase() + "index.xml");
+
+        final SAXParserFactory spf = SAXParserFactory.newInstance();
+        SAXParser parser = null;
+        try {
+            parser = spf.newSAXParser();
+        } catch (ParserConfigurationException pce) {
+            throw new SAXException("Error configuring XML parser: " + pce.getMessage());
+        }
+        parser.parse(file, new JBTIndexHandler(this, handler));
+    }
+
+    
+    /**
+     * Load xml data from the supplied file.
+     * 
+     * @param filepath the filepath
+     * @return the string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final String loadXmlDataFile(final String filepath) throws IOException {
+
+        final File file = new File(filepath);
+
+        final Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            // A UTF-8 file never holds more characters than bytes
+            return readFully(reader, file.length());
+        } finally {
+            reader.close();
+        }
+    }
+    
+    
+    /**
+     * Post the Jelly script to Jira's Jelly runner.
+     *
+     * @param key the key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private JBTResponse postScript(final String key, final String xmldata,
+            final File xmlfile) throws IOException {
+        
+        return this.send(this.createScriptRequest(key, xmldata, xmlfile),
+                JBTResponseScanner.forJellyRunner(this.invalidKeyMarkers),
+                JBTPhase.JIRA_POST);
+    }
+    
+    
+    /**
+     * Post the Jelly script to Jira's Jelly runner without waiting for the
+     * response.
+     *
+     * @param key the key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the future response
+     */
+    private CompletableFuture<JBTResponse> postScriptAsync(final String key,
+            final String xmldata, final File xmlfile) {
+        return this.sendAsync(this.createScriptRequest(key, xmldata, xmlfile),
+                JBTResponseScanner.forJellyRunner(this.invalidKeyMarkers),
+                JBTPhase.JIRA_POST);
+    }
+    
+    
+    /**
+     * Creates the request posting the Jelly script to Jira's Jelly runner.
+     *
+     * @param key the key
+     * @param xmldata the xmldata, or null if supplied as a file
+     * @param xmlfile the xml file, or null if supplied as a string
+     * @return the request
+     */
+    private JBTRequest createScriptRequest(final String key, final String xmldata,
+            final File xmlfile) {
+        
+        final Map<String, String> data = new LinkedHashMap<String, String>();
+        data.put("os_username", this.getUsername());
+        data.put("os_password", this.getPassword());
+        data.put("atl_token", key);
+        data.put("file", "");
+        
+        // The transport encodes the script as the connection is written to
+        return new JBTRequest(this.getBaseUrl() + this.jiraRunnerPath, data, "script",
+                xmldata, xmlfile);
+    }
+    
+    
+    /**
+     * Send the request through the transport, recording the time taken and
+     * the bytes transferred in the metrics.
+     *
+     * @param request the request
+     * @param scanner the response scanner
+     * @param phase the phase the request is timed as
+     * @return the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private JBTResponse send(final JBTRequest request, final JBTResponseScanner scanner,
+            final JBTPhase phase) throws IOException {
+        
+        this.metrics.startRequest();
+        try {
+            final long start = System.nanoTime();
+            final JBTResponse response = this.transport.send(request, scanner);
+            this.metrics.recordResponse(phase, System.nanoTime() - start, response);
+            return response;
+        } finally {
+            this.metrics.finishRequest();
+        }
+    }
+    
+    
+    /**
+     * Send the request through the transport without waiting for the
+     * response, recording the time taken and the bytes transferred in the
+     * metrics as it completes.
+     *
+     * @param request the request
+     * @param scanner the response scanner
+     * @param phase the phase the request is timed as
+     * @return the future response
+     */
+    private CompletableFuture<JBTResponse> sendAsync(final JBTRequest request,
+            final JBTResponseScanner scanner, final JBTPhase phase) {
+        
+        this.metrics.startRequest();
+        final long start = System.nanoTime();
+        CompletableFuture<JBTResponse> future = null;
+        try {
+            future = this.transport.sendAsync(request, scanner);
+        } finally {
+            if (future == null) {
+                this.metrics.finishRequest();
+            }
+        }
+        return future.whenComplete(new BiConsumer<JBTResponse, Throwable>() {
+            public void accept(final JBTResponse response, final Throwable error) {
+                if (response != null) {
+                    metrics.recordResponse(phase, System.nanoTime() - start, response);
+                }
+                metrics.finishRequest();
+            }
+        });
+    }
+    
+    
+    /**
+     * Read all of the characters from the reader into a string.
+     *
+     * @param reader the reader
+     * @param expectedLength the expected number of characters, or -1 if not
+     *            known, used to size the string buffer
+     * @return the string
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static String readFully(final Reader reader, final long expectedLength)
+            throws IOException {
+        
+        int capacity = READ_BUFFER_SIZE;
+        if (expectedLength >= 0 && expectedLength < Integer.MAX_VALUE) {
+            capacity = (int) expectedLength;
+        }
+        final StringBuilder contents = new StringBuilder(capacity);
+        final char[] buffer = new char[READ_BUFFER_SIZE];
+        
+        int read = reader.read(buffer);
+        while (read != -1) {
+            contents.append(buffer, 0, read);
+            read = reader.read(buffer);
+        }
+        return contents.toString();
     }
 
     
@@ -469,176 +1570,176 @@ public class JBTProcessor {
         
         final Map<Character, String> map = new HashMap<Character, String>();
 
-        map.put(new Character('\u0100'),"&#256;");
-        map.put(new Character('\u0101'),"&#257;");
-        map.put(new Character('\u0102'),"&#258;");
-        map.put(new Character('\u0103'),"&#259;");
-        map.put(new Character('\u0104'),"&#260;");
-        map.put(new Character('\u0105'),"&#261;");
-        map.put(new Character('\u0106'),"&#262;");
-        map.put(new Character('\u0107'),"&#263;");
-        map.put(new Character('\u0108'),"&#264;");
-        map.put(new Character('\u0108'),"&#265;");
-        map.put(new Character('\u010C'),"&#268;");
-        map.put(new Character('\u010D'),"&#269;");
-        map.put(new Character('\u010E'),"&#270;");
-        map.put(new Character('\u010F'),"&#271;");
-        map.put(new Character('\u0110'),"&#272;");
-        map.put(new Character('\u0111'),"&#273;");
-        map.put(new Character('\u0112'),"&#274;");
-        map.put(new Character('\u0113'),"&#275;");
-        map.put(new Character('\u0118'),"&#280;");
-        map.put(new Character('\u0119'),"&#281;");
-        map.put(new Character('\u011A'),"&#282;");
-        map.put(new Character('\u011B'),"&#283;");
-        map.put(new Character('\u011C'),"&#284;");
-        map.put(new Character('\u011D'),"&#285;");
-        map.put(new Character('\u011E'),"&#286;");
-        map.put(new Character('\u011F'),"&#287;");
-        map.put(new Character('\u0122'),"&#290;");
-        map.put(new Character('\u0123'),"&#291;");
-        map.put(new Character('\u0124'),"&#292;");
-        map.put(new Character('\u0125'),"&#293;");
-        map.put(new Character('\u012A'),"&#298;");
-        map.put(new Character('\u012B'),"&#299;");
-        map.put(new Character('\u0130'),"&#304;");
-        map.put(new Character('\u0131'),"&#305;");
-        map.put(new Character('\u0134'),"&#308;");
-        map.put(new Character('\u0135'),"&#309;");
-        map.put(new Character('\u0136'),"&#310;");
-        map.put(new Character('\u0137'),"&#311;");
-        map.put(new Character('\u0139'),"&#313;");
-        map.put(new Character('\u013A'),"&#314;");
-        map.put(new Character('\u013B'),"&#315;");
-        map.put(new Character('\u013C'),"&#316;");
-        map.put(new Character('\u013D'),"&#317;");
-        map.put(new Character('\u013E'),"&#318;");
-        map.put(new Character('\u0141'),"&#321;");
-        map.put(new Character('\u0142'),"&#322;");
-        map.put(new Character('\u0143'),"&#323;");
-        map.put(new Character('\u0144'),"&#324;");
-        map.put(new Character('\u0145'),"&#325;");
-        map.put(new Character('\u0146'),"&#326;");
-        map.put(new Character('\u0147'),"&#327;");
-        map.put(new Character('\u0148'),"&#328;");
-        map.put(new Character('\u0150'),"&#336;");
-        map.put(new Character('\u0151'),"&#337;");
-        map.put(new Character('\u0154'),"&#340;");
-        map.put(new Character('\u0155'),"&#341;");
-        map.put(new Character('\u0156'),"&#342;");
-        map.put(new Character('\u0157'),"&#343;");
-        map.put(new Character('\u0158'),"&#344;");
-        map.put(new Character('\u0159'),"&#345;");
-        map.put(new Character('\u015A'),"&#346;");
-        map.put(new Character('\u015B'),"&#347;");
-        map.put(new Character('\u015C'),"&#348;");
-        map.put(new Character('\u015D'),"&#349;");
-        map.put(new Character('\u015E'),"&#350;");
-        map.put(new Character('\u015F'),"&#351;");
-        map.put(new Character('\u0160'),"&#352;");
-        map.put(new Character('\u0161'),"&#353;");
-        map.put(new Character('\u0162'),"&#354;");
-        map.put(new Character('\u0163'),"&#355;");
-        map.put(new Character('\u0164'),"&#356;");
-        map.put(new Character('\u0165'),"&#357;");
-        map.put(new Character('\u016A'),"&#362;");
-        map.put(new Character('\u016B'),"&#363;");
-        map.put(new Character('\u016C'),"&#364;");
-        map.put(new Character('\u016D'),"&#365;");
-        map.put(new Character('\u016E'),"&#366;");
-        map.put(new Character('\u016F'),"&#367;");
-        map.put(new Character('\u0170'),"&#368;");
-        map.put(new Character('\u0171'),"&#369;");
-        map.put(new Character('\u0178'),"&#376;");
-        map.put(new Character('\u0179'),"&#377;");
-        map.put(new Character('\u017A'),"&#378;");
-        map.put(new Character('\u017B'),"&#379;");
-        map.put(new Character('\u017C'),"&#380;");
-        map.put(new Character('\u017D'),"&#381;");
-        map.put(new Character('\u017E'),"&#382;");
-        map.put(new Character('\u2116'),"&#8470;");
-        map.put(new Character('\u00C1'),"&Aacute;");
-        map.put(new Character('\u00E1'),"&aacute;");
-        map.put(new Character('\u00C2'),"&Acirc;");
-        map.put(new Character('\u00E2'),"&acirc;");
-        map.put(new Character('\u00C6'),"&AElig;");
-        map.put(new Character('\u00E6'),"&aelig;");
-        map.put(new Character('\u00E0'),"&agrave;");
-        map.put(new Character('\u00C0'),"&Agrave;");
-        map.put(new Character('\u00C5'),"&Aring;");
-        map.put(new Character('\u00E5'),"&aring;");
-        map.put(new Character('\u00C3'),"&Atilde;");
-        map.put(new Character('\u00E3'),"&atilde;");
-        map.put(new Character('\u00C4'),"&Auml;");
-        map.put(new Character('\u00E4'),"&auml;");
-        map.put(new Character('\u2022'),"&bull;");
-        map.put(new Character('\u00C7'),"&Ccedil;");
-        map.put(new Character('\u00E7'),"&ccedil;");
-        map.put(new Character('\u00A9'),"&copy;");
-        map.put(new Character('\u2020'),"&dagger;");
-        map.put(new Character('\u00B0'),"&deg;");
-        map.put(new Character('\u00C9'),"&Eacute;");
-        map.put(new Character('\u00E9'),"&eacute;");
-        map.put(new Character('\u00CA'),"&Ecirc;");
-        map.put(new Character('\u00EA'),"&ecirc;");
-        map.put(new Character('\u00C8'),"&Egrave;");
-        map.put(new Character('\u00E8'),"&egrave;");
-        map.put(new Character('\u00D0'),"&ETH;");
-        map.put(new Character('\u00F0'),"&eth;");
-        map.put(new Character('\u00CB'),"&Euml;");
-        map.put(new Character('\u00EB'),"&euml;");
-        map.put(new Character('\u20AC'),"&euro;");
-        map.put(new Character('\u00CD'),"&Iacute;");
-        map.put(new Character('\u00ED'),"&iacute;");
-        map.put(new Character('\u00CE'),"&Icirc;");
-        map.put(new Character('\u00EE'),"&icirc;");
-        map.put(new Character('\u00A1'),"&iexcl;");
-        map.put(new Character('\u00CC'),"&Igrave;");
-        map.put(new Character('\u00EC'),"&igrave;");
-        map.put(new Character('\u00BF'),"&iquest;");
-        map.put(new Character('\u00CF'),"&Iuml;");
-        map.put(new Character('\u00EF'),"&iuml;");
-        map.put(new Character('\u00AB'),"&laquo;");
-        map.put(new Character('\u2014'),"&mdash;");
-        map.put(new Character('\u00B5'),"&micro;");
-        map.put(new Character('\u00B7'),"&middot;");
-        map.put(new Character('\u2013'),"&ndash;");
-        map.put(new Character('\u00D1'),"&Ntilde;");
-        map.put(new Character('\u00F1'),"&ntilde;");
-        map.put(new Character('\u00D3'),"&Oacute;");
-        map.put(new Character('\u00F3'),"&oacute;");
-        map.put(new Character('\u00D4'),"&Ocirc;");
-        map.put(new Character('\u00F4'),"&ocirc;");
-        map.put(new Character('\u0152'),"&OElig;");
-        map.put(new Character('\u0153'),"&oelig;");
-        map.put(new Character('\u00D2'),"&Ograve;");
-        map.put(new Character('\u00F2'),"&ograve;");
-        map.put(new Character('\u00AA'),"&ordf;");
-        map.put(new Character('\u00BA'),"&ordm;");
-        map.put(new Character('\u00D8'),"&Oslash;");
-        map.put(new Character('\u00F8'),"&oslash;");
-        map.put(new Character('\u00D5'),"&Otilde;");
-        map.put(new Character('\u00F5'),"&otilde;");
-        map.put(new Character('\u00D6'),"&Ouml;");
-        map.put(new Character('\u00F6'),"&ouml;");
-        map.put(new Character('\u00A3'),"&pound;");
-        map.put(new Character('\u00BB'),"&raquo;");
-        map.put(new Character('\u00AE'),"&reg;");
-        map.put(new Character('\u00DF'),"&szlig;");
-        map.put(new Character('\u00DE'),"&THORN;");
-        map.put(new Character('\u00FE'),"&thorn;");
-        map.put(new Character('\u00DA'),"&Uacute;");
-        map.put(new Character('\u00FA'),"&uacute;");
-        map.put(new Character('\u00DB'),"&Ucirc;");
-        map.put(new Character('\u00FB'),"&ucirc;");
-        map.put(new Character('\u00D9'),"&Ugrave;");
-        map.put(new Character('\u00F9'),"&ugrave;");
-        map.put(new Character('\u00F6'),"&uml;");
-        map.put(new Character('\u00DC'),"&Uuml;");
-        map.put(new Character('\u00FC'),"&uuml;");
-        map.put(new Character('\u00DD'),"&Yacute;");
-        map.put(new Character('\u00FD'),"&yacute;");
-        map.put(new Character('\u00FF'),"&yuml;");
+        map.put(Character.valueOf('\u0100'),"&#256;");
+        map.put(Character.valueOf('\u0101'),"&#257;");
+        map.put(Character.valueOf('\u0102'),"&#258;");
+        map.put(Character.valueOf('\u0103'),"&#259;");
+        map.put(Character.valueOf('\u0104'),"&#260;");
+        map.put(Character.valueOf('\u0105'),"&#261;");
+        map.put(Character.valueOf('\u0106'),"&#262;");
+        map.put(Character.valueOf('\u0107'),"&#263;");
+        map.put(Character.valueOf('\u0108'),"&#264;");
+        map.put(Character.valueOf('\u0108'),"&#265;");
+        map.put(Character.valueOf('\u010C'),"&#268;");
+        map.put(Character.valueOf('\u010D'),"&#269;");
+        map.put(Character.valueOf('\u010E'),"&#270;");
+        map.put(Character.valueOf('\u010F'),"&#271;");
+        map.put(Character.valueOf('\u0110'),"&#272;");
+        map.put(Character.valueOf('\u0111'),"&#273;");
+        map.put(Character.valueOf('\u0112'),"&#274;");
+        map.put(Character.valueOf('\u0113'),"&#275;");
+        map.put(Character.valueOf('\u0118'),"&#280;");
+        map.put(Character.valueOf('\u0119'),"&#281;");
+        map.put(Character.valueOf('\u011A'),"&#282;");
+        map.put(Character.valueOf('\u011B'),"&#283;");
+        map.put(Character.valueOf('\u011C'),"&#284;");
+        map.put(Character.valueOf('\u011D'),"&#285;");
+        map.put(Character.valueOf('\u011E'),"&#286;");
+        map.put(Character.valueOf('\u011F'),"&#287;");
+        map.put(Character.valueOf('\u0122'),"&#290;");
+        map.put(Character.valueOf('\u0123'),"&#291;");
+        map.put(Character.valueOf('\u0124'),"&#292;");
+        map.put(Character.valueOf('\u0125'),"&#293;");
+        map.put(Character.valueOf('\u012A'),"&#298;");
+        map.put(Character.valueOf('\u012B'),"&#299;");
+        map.put(Character.valueOf('\u0130'),"&#304;");
+        map.put(Character.valueOf('\u0131'),"&#305;");
+        map.put(Character.valueOf('\u0134'),"&#308;");
+        map.put(Character.valueOf('\u0135'),"&#309;");
+        map.put(Character.valueOf('\u0136'),"&#310;");
+        map.put(Character.valueOf('\u0137'),"&#311;");
+        map.put(Character.valueOf('\u0139'),"&#313;");
+        map.put(Character.valueOf('\u013A'),"&#314;");
+        map.put(Character.valueOf('\u013B'),"&#315;");
+        map.put(Character.valueOf('\u013C'),"&#316;");
+        map.put(Character.valueOf('\u013D'),"&#317;");
+        map.put(Character.valueOf('\u013E'),"&#318;");
+        map.put(Character.valueOf('\u0141'),"&#321;");
+        map.put(Character.valueOf('\u0142'),"&#322;");
+        map.put(Character.valueOf('\u0143'),"&#323;");
+        map.put(Character.valueOf('\u0144'),"&#324;");
+        map.put(Character.valueOf('\u0145'),"&#325;");
+        map.put(Character.valueOf('\u0146'),"&#326;");
+        map.put(Character.valueOf('\u0147'),"&#327;");
+        map.put(Character.valueOf('\u0148'),"&#328;");
+        map.put(Character.valueOf('\u0150'),"&#336;");
+        map.put(Character.valueOf('\u0151'),"&#337;");
+        map.put(Character.valueOf('\u0154'),"&#340;");
+        map.put(Character.valueOf('\u0155'),"&#341;");
+        map.put(Character.valueOf('\u0156'),"&#342;");
+        map.put(Character.valueOf('\u0157'),"&#343;");
+        map.put(Character.valueOf('\u0158'),"&#344;");
+        map.put(Character.valueOf('\u0159'),"&#345;");
+        map.put(Character.valueOf('\u015A'),"&#346;");
+        map.put(Character.valueOf('\u015B'),"&#347;");
+        map.put(Character.valueOf('\u015C'),"&#348;");
+        map.put(Character.valueOf('\u015D'),"&#349;");
+        map.put(Character.valueOf('\u015E'),"&#350;");
+        map.put(Character.valueOf('\u015F'),"&#351;");
+        map.put(Character.valueOf('\u0160'),"&#352;");
+        map.put(Character.valueOf('\u0161'),"&#353;");
+        map.put(Character.valueOf('\u0162'),"&#354;");
+        map.put(Character.valueOf('\u0163'),"&#355;");
+        map.put(Character.valueOf('\u0164'),"&#356;");
+        map.put(Character.valueOf('\u0165'),"&#357;");
+        map.put(Character.valueOf('\u016A'),"&#362;");
+        map.put(Character.valueOf('\u016B'),"&#363;");
+        map.put(Character.valueOf('\u016C'),"&#364;");
+        map.put(Character.valueOf('\u016D'),"&#365;");
+        map.put(Character.valueOf('\u016E'),"&#366;");
+        map.put(Character.valueOf('\u016F'),"&#367;");
+        map.put(Character.valueOf('\u0170'),"&#368;");
+        map.put(Character.valueOf('\u0171'),"&#369;");
+        map.put(Character.valueOf('\u0178'),"&#376;");
+        map.put(Character.valueOf('\u0179'),"&#377;");
+        map.put(Character.valueOf('\u017A'),"&#378;");
+        map.put(Character.valueOf('\u017B'),"&#379;");
+        map.put(Character.valueOf('\u017C'),"&#380;");
+        map.put(Character.valueOf('\u017D'),"&#381;");
+        map.put(Character.valueOf('\u017E'),"&#382;");
+        map.put(Character.valueOf('\u2116'),"&#8470;");
+        map.put(Character.valueOf('\u00C1'),"&Aacute;");
+        map.put(Character.valueOf('\u00E1'),"&aacute;");
+        map.put(Character.valueOf('\u00C2'),"&Acirc;");
+        map.put(Character.valueOf('\u00E2'),"&acirc;");
+        map.put(Character.valueOf('\u00C6'),"&AElig;");
+        map.put(Character.valueOf('\u00E6'),"&aelig;");
+        map.put(Character.valueOf('\u00E0'),"&agrave;");
+        map.put(Character.valueOf('\u00C0'),"&Agrave;");
+        map.put(Character.valueOf('\u00C5'),"&Aring;");
+        map.put(Character.valueOf('\u00E5'),"&aring;");
+        map.put(Character.valueOf('\u00C3'),"&Atilde;");
+        map.put(Character.valueOf('\u00E3'),"&atilde;");
+        map.put(Character.valueOf('\u00C4'),"&Auml;");
+        map.put(Character.valueOf('\u00E4'),"&auml;");
+        map.put(Character.valueOf('\u2022'),"&bull;");
+        map.put(Character.valueOf('\u00C7'),"&Ccedil;");
+        map.put(Character.valueOf('\u00E7'),"&ccedil;");
+        map.put(Character.valueOf('\u00A9'),"&copy;");
+        map.put(Character.valueOf('\u2020'),"&dagger;");
+        map.put(Character.valueOf('\u00B0'),"&deg;");
+        map.put(Character.valueOf('\u00C9'),"&Eacute;");
+        map.put(Character.valueOf('\u00E9'),"&eacute;");
+        map.put(Character.valueOf('\u00CA'),"&Ecirc;");
+        map.put(Character.valueOf('\u00EA'),"&ecirc;");
+        map.put(Character.valueOf('\u00C8'),"&Egrave;");
+        map.put(Character.valueOf('\u00E8'),"&egrave;");
+        map.put(Character.valueOf('\u00D0'),"&ETH;");
+        map.put(Character.valueOf('\u00F0'),"&eth;");
+        map.put(Character.valueOf('\u00CB'),"&Euml;");
+        map.put(Character.valueOf('\u00EB'),"&euml;");
+        map.put(Character.valueOf('\u20AC'),"&euro;");
+        map.put(Character.valueOf('\u00CD'),"&Iacute;");
+        map.put(Character.valueOf('\u00ED'),"&iacute;");
+        map.put(Character.valueOf('\u00CE'),"&Icirc;");
+        map.put(Character.valueOf('\u00EE'),"&icirc;");
+        map.put(Character.valueOf('\u00A1'),"&iexcl;");
+        map.put(Character.valueOf('\u00CC'),"&Igrave;");
+        map.put(Character.valueOf('\u00EC'),"&igrave;");
+        map.put(Character.valueOf('\u00BF'),"&iquest;");
+        map.put(Character.valueOf('\u00CF'),"&Iuml;");
+        map.put(Character.valueOf('\u00EF'),"&iuml;");
+        map.put(Character.valueOf('\u00AB'),"&laquo;");
+        map.put(Character.valueOf('\u2014'),"&mdash;");
+        map.put(Character.valueOf('\u00B5'),"&micro;");
+        map.put(Character.valueOf('\u00B7'),"&middot;");
+        map.put(Character.valueOf('\u2013'),"&ndash;");
+        map.put(Character.valueOf('\u00D1'),"&Ntilde;");
+        map.put(Character.valueOf('\u00F1'),"&ntilde;");
+        map.put(Character.valueOf('\u00D3'),"&Oacute;");
+        map.put(Character.valueOf('\u00F3'),"&oacute;");
+        map.put(Character.valueOf('\u00D4'),"&Ocirc;");
+        map.put(Character.valueOf('\u00F4'),"&ocirc;");
+        map.put(Character.valueOf('\u0152'),"&OElig;");
+        map.put(Character.valueOf('\u0153'),"&oelig;");
+        map.put(Character.valueOf('\u00D2'),"&Ograve;");
+        map.put(Character.valueOf('\u00F2'),"&ograve;");
+        map.put(Character.valueOf('\u00AA'),"&ordf;");
+        map.put(Character.valueOf('\u00BA'),"&ordm;");
+        map.put(Character.valueOf('\u00D8'),"&Oslash;");
+        map.put(Character.valueOf('\u00F8'),"&oslash;");
+        map.put(Character.valueOf('\u00D5'),"&Otilde;");
+        map.put(Character.valueOf('\u00F5'),"&otilde;");
+        map.put(Character.valueOf('\u00D6'),"&Ouml;");
+        map.put(Character.valueOf('\u00F6'),"&ouml;");
+        map.put(Character.valueOf('\u00A3'),"&pound;");
+        map.put(Character.valueOf('\u00BB'),"&raquo;");
+        map.put(Character.valueOf('\u00AE'),"&reg;");
+        map.put(Character.valueOf('\u00DF'),"&szlig;");
+        map.put(Character.valueOf('\u00DE'),"&THORN;");
+        map.put(Character.valueOf('\u00FE'),"&thorn;");
+        map.put(Character.valueOf('\u00DA'),"&Uacute;");
+        map.put(Character.valueOf('\u00FA'),"&uacute;");
+        map.put(Character.valueOf('\u00DB'),"&Ucirc;");
+        map.put(Character.valueOf('\u00FB'),"&ucirc;");
+        map.put(Character.valueOf('\u00D9'),"&Ugrave;");
+        map.put(Character.valueOf('\u00F9'),"&ugrave;");
+        map.put(Character.valueOf('\u00F6'),"&uml;");
+        map.put(Character.valueOf('\u00DC'),"&Uuml;");
+        map.put(Character.valueOf('\u00FC'),"&uuml;");
+        map.put(Character.valueOf('\u00DD'),"&Yacute;");
+        map.put(Character.valueOf('\u00FD'),"&yacute;");
+        map.put(Character.valueOf('\u00FF'),"&yuml;");
         
         return map;
     }
@@ -0,0 +1,87 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Class JBTRateLimiter.
+ * 
+ * A token bucket limiting the rate at which requests are sent to Jira,
+ * shared by all worker threads. Tokens accumulate while the importer is
+ * idle, up to one second's worth, so short bursts are allowed.
+ */
+public class JBTRateLimiter {
+
+    /** The number of nanoseconds in a second. */
+    private static final double NANOS_PER_SECOND = 1000000000.0;
+
+    /** The maximum requests per second. */
+    private final double requestsPerSecond;
+
+    /** The nanoseconds between each token. */
+    private final long interval;
+
+    /** The nanoseconds of tokens that can be accumulated. */
+    private final long burst;
+
+    /** The time the next token becomes available. */
+    private long nextToken;
+
+    /**
+     * Instantiates a new JBT rate limiter.
+     *
+     * @param requestsPerSecondValue the maximum requests per second
+     */
+    public JBTRateLimiter(final double requestsPerSecondValue) {
+        this.requestsPerSecond = requestsPerSecondValue;
+        this.interval = Math.max(1, (long) (NANOS_PER_SECOND / requestsPerSecondValue));
+        this.burst = (long) (Math.max(1, Math.floor(requestsPerSecondValue)) - 1) 
+                * this.interval;
+        this.nextToken = System.nanoTime();
+    }
+
+    /**
+     * Gets the maximum requests per second.
+     *
+     * @return the requests per second
+     */
+    public final double getRequestsPerSecond() {
+        return this.requestsPerSecond;
+    }
+
+    /**
+     * Take a token, waiting until one is available.
+     *
+     * @throws InterruptedException the interrupted exception
+     */
+    public final void acquire() throws InterruptedException {
+
+        long wait = 0;
+        synchronized (this) {
+            final long now = System.nanoTime();
+            if (this.nextToken < now - this.burst) {
+                // The bucket is full, tokens beyond the burst are lost
+                this.nextToken = now - this.burst;
+            }
+            wait = this.nextToken - now;
+            this.nextToken += this.interval;
+        }
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class JBTRequest.
+ * 
+ * A form posted to Jira, independent of the transport that sends it. The
+ * form may end with a Jelly script, supplied as either a string or a UTF-8
+ * file, that the transport encodes as it is sent.
+ */
+public class JBTRequest {
+
+    /** The character set forms are encoded in, as sent by HttpClient 3. */
+    public static final String FORM_CHARSET = "ISO-8859-1";
+
+    /** The form content type. */
+    public static final String CONTENT_TYPE = "application/x-www-form-urlencoded";
+
+    /** The url. */
+    private final String url;
+
+    /** The form parameters preceding the script. */
+    private final Map<String, String> parameters;
+
+    /** The name of the script parameter, null if there is no script. */
+    private final String scriptName;
+
+    /** The script, if supplied as a string. */
+    private final String script;
+
+    /** The script file, if supplied as a file. */
+    private final File scriptFile;
+
+    /**
+     * Instantiates a new JBT request for a form without a script.
+     *
+     * @param urlValue the url
+     * @param parametersValue the form parameters
+     */
+    public JBTRequest(final String urlValue, final Map<String, String> parametersValue) {
+        this(urlValue, parametersValue, null, null, null);
+    }
+
+    /**
+     * Instantiates a new JBT request for a form ending with a script,
+     * supplied as either a string or a file.
+     *
+     * @param urlValue the url
+     * @param parametersValue the form parameters preceding the script
+     * @param scriptNameValue the name of the script parameter
+     * @param scriptValue the script, or null if supplied as a file
+     * @param scriptFileValue the script file, or null if supplied as a string
+     */
+    public JBTRequest(final String urlValue, final Map<String, String> parametersValue,
+            final String scriptNameValue, final String scriptValue,
+            final File scriptFileValue) {
+        this.url = urlValue;
+        this.parameters = new LinkedHashMap<String, String>(parametersValue);
+        this.scriptName = scriptNameValue;
+        this.script = scriptValue;
+        this.scriptFile = scriptFileValue;
+    }
+
+    /**
+     * Gets the url.
+     *
+     * @return the url
+     */
+    public final String getUrl() {
+        return this.url;
+    }
+
+    /**
+     * Checks if the form ends with a script.
+     *
+     * @return true, if the form has a script
+     */
+    public final boolean hasScript() {
+        return this.scriptName != null;
+    }
+
+    /**
+     * Gets the URL encoded form up to the value of the script, or the whole
+     * form if there is no script.
+     *
+     * @return the encoded form parameters
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final String getEncodedPrefix() throws IOException {
+
+        final StringBuilder prefix = new StringBuilder();
+        for (Map.Entry<String, String> parameter : this.parameters.entrySet()) {
+            if (prefix.length() > 0) {
+                prefix.append('&');
+            }
+            prefix.append(URLEncoder.encode(parameter.getKey(), FORM_CHARSET));
+            prefix.append('=');
+            prefix.append(URLEncoder.encode(StringUtils.defaultString(
+                    parameter.getValue()), FORM_CHARSET));
+        }
+        if (this.hasScript()) {
+            if (prefix.length() > 0) {
+                prefix.append('&');
+            }
+            prefix.append(URLEncoder.encode(this.scriptName, FORM_CHARSET));
+            prefix.append('=');
+        }
+        return prefix.toString();
+    }
+
+    /**
+     * Gets the length of the URL encoded form. The length of a script read
+     * from a file is not known until it has been encoded as it is sent.
+     *
+     * @return the content length, or -1 if the script is read from a file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final long getContentLength() throws IOException {
+
+        final long prefix = this.getEncodedPrefix().length();
+        if (!this.hasScript()) {
+            return prefix;
+        }
+        if (this.scriptFile != null) {
+            return -1;
+        }
+        // Unmappable characters are replaced as they are when streamed
+        final byte[] bytes = StringUtils.defaultString(this.script).getBytes(
+                FORM_CHARSET);
+        return prefix + JBTFormEncoder.encodedLength(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Open a reader of the script, read from its file on disk where one is
+     * supplied.
+     *
+     * @return the script reader, or null if there is no script
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public final Reader openScript() throws IOException {
+
+        if (!this.hasScript()) {
+            return null;
+        }
+        if (this.scriptFile != null) {
+            return new InputStreamReader(new FileInputStream(this.scriptFile), "UTF-8");
+        }
+        return new StringReader(StringUtils.defaultString(this.script));
+    }
+}
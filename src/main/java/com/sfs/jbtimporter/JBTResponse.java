@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Class JBTResponse.
+ * 
+ * The parts of a Jira JellyRunner page that the importer needs, as found by
+ * the JBTResponseScanner.
+ */
+public class JBTResponse {
+
+    /** The security key. */
+    private String securityKey = "";
+
+    /** The output of the Jelly script. */
+    private String output;
+
+    /** The script exception. */
+    private String scriptException;
+
+    /** The key rejected flag. */
+    private boolean keyRejected = false;
+
+    /** The time taken to scan the response in nanoseconds. */
+    private long scanTime = 0;
+
+    /** The bytes sent in the request. */
+    private long bytesSent = 0;
+
+    /** The bytes of the response read. */
+    private long bytesReceived = 0;
+
+    /**
+     * Sets the security key.
+     *
+     * @param securityKeyValue the new security key
+     */
+    final void setSecurityKey(final String securityKeyValue) {
+        this.securityKey = securityKeyValue;
+    }
+
+    /**
+     * Gets the security key, the value of the atl_token field.
+     *
+     * @return the security key, or an empty string if not found
+     */
+    public final String getSecurityKey() {
+        return this.securityKey;
+    }
+
+    /**
+     * Sets the output of the Jelly script.
+     *
+     * @param outputValue the new output
+     */
+    final void setOutput(final String outputValue) {
+        this.output = outputValue;
+    }
+
+    /**
+     * Gets the output of the Jelly script.
+     *
+     * @return the output, or null if the script produced no output
+     */
+    public final String getOutput() {
+        return this.output;
+    }
+
+    /**
+     * Sets the script exception.
+     *
+     * @param scriptExceptionValue the new script exception
+     */
+    final void setScriptException(final String scriptExceptionValue) {
+        this.scriptException = scriptExceptionValue;
+    }
+
+    /**
+     * Gets the exception thrown when the script could not be run.
+     *
+     * @return the script exception, or null if no exception was thrown
+     */
+    public final String getScriptException() {
+        return this.scriptException;
+    }
+
+    /**
+     * Sets the key rejected flag.
+     *
+     * @param keyRejectedValue the new key rejected flag
+     */
+    final void setKeyRejected(final boolean keyRejectedValue) {
+        this.keyRejected = keyRejectedValue;
+    }
+
+    /**
+     * Checks if Jira rejected the security key.
+     *
+     * @return true, if the key was rejected
+     */
+    public final boolean isKeyRejected() {
+        return this.keyRejected;
+    }
+
+    /**
+     * Sets the time taken to scan the response.
+     *
+     * @param scanTimeValue the new scan time in nanoseconds
+     */
+    final void setScanTime(final long scanTimeValue) {
+        this.scanTime = scanTimeValue;
+    }
+
+    /**
+     * Gets the time taken to read and scan the response.
+     *
+     * @return the scan time in nanoseconds
+     */
+    public final long getScanTime() {
+        return this.scanTime;
+    }
+
+    /**
+     * Sets the bytes sent in the request.
+     *
+     * @param bytesSentValue the new bytes sent
+     */
+    final void setBytesSent(final long bytesSentValue) {
+        this.bytesSent = bytesSentValue;
+    }
+
+    /**
+     * Gets the bytes sent in the request.
+     *
+     * @return the bytes sent
+     */
+    public final long getBytesSent() {
+        return this.bytesSent;
+    }
+
+    /**
+     * Sets the bytes of the response read.
+     *
+     * @param bytesReceivedValue the new bytes received
+     */
+    final void setBytesReceived(final long bytesReceivedValue) {
+        this.bytesReceived = bytesReceivedValue;
+    }
+
+    /**
+     * Gets the bytes of the response read, which stops once the outcome
+     * is settled.
+     *
+     * @return the bytes received
+     */
+    public final long getBytesReceived() {
+        return this.bytesReceived;
+    }
+
+    /**
+     * Gets the result of running the script, the script exception if one
+     * was thrown otherwise the output of the script.
+     *
+     * @return the result, or an empty string if neither was found
+     */
+    public final String getResult() {
+        if (this.scriptException != null) {
+            return this.scriptException;
+        }
+        if (this.output != null) {
+            return this.output;
+        }
+        return "";
+    }
+}
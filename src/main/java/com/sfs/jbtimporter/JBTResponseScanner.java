@@ -0,0 +1,364 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class JBTResponseScanner.
+ * 
+ * Finds the parts of a Jira JellyRunner page that the importer needs as the
+ * response is read, without buffering the page. Each marker is looked for
+ * in a single pass, only the text being captured and a few characters
+ * either side of a chunk boundary are held in memory. Reading stops as soon
+ * as a marker that settles the outcome has been found.
+ */
+public final class JBTResponseScanner {
+
+    /** The size of the buffer the response is read through. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The rules the response is scanned with. */
+    private final List<Rule> rules = new ArrayList<Rule>();
+
+    /**
+     * Instantiates a new JBT response scanner.
+     */
+    private JBTResponseScanner() {
+    }
+
+    /**
+     * Creates a scanner for the page holding the atl_token security key.
+     *
+     * @return the response scanner
+     */
+    public static JBTResponseScanner forSecurityKey() {
+
+        final JBTResponseScanner scanner = new JBTResponseScanner();
+        // The value of the atl_token input field
+        scanner.rules.add(new Rule(Slot.SECURITY_KEY, "name=\"atl_token\"", 
+                "value=\"", "\"", true));
+        return scanner;
+    }
+
+    /**
+     * Creates a scanner for the page returned when a Jelly script is run.
+     *
+     * @param rejectedKeyMarkers the markers of a page returned when the
+     *            security key is rejected
+     * @return the response scanner
+     */
+    public static JBTResponseScanner forJellyRunner(
+            final String[] rejectedKeyMarkers) {
+
+        final JBTResponseScanner scanner = new JBTResponseScanner();
+        // The output of the script follows the escaped JiraJelly root element
+        scanner.rules.add(new Rule(Slot.OUTPUT, "xmlns:j='jelly:core'", 
+                "&gt;", "&lt;/JiraJelly", false));
+        scanner.rules.add(new Rule(Slot.OUTPUT, "xmlns:j=\"jelly:core\"", 
+                "&gt;", "&lt;/JiraJelly", false));
+        scanner.rules.add(new Rule(Slot.QUOTED_OUTPUT, 
+                "xmlns:j=&quot;jelly:core&quot;", "&gt;", "&lt;/JiraJelly", false));
+        // The exception thrown when the script could not be run
+        scanner.rules.add(new Rule(Slot.SCRIPT_EXCEPTION, "id=\"scriptException\"",
+                ">", "</div", true));
+        for (String marker : rejectedKeyMarkers) {
+            scanner.rules.add(new Rule(Slot.KEY_REJECTED, marker, null, null, true));
+        }
+        return scanner;
+    }
+
+    /**
+     * Scan the response.
+     *
+     * @param reader the response reader
+     * @return the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public JBTResponse scan(final Reader reader) throws IOException {
+
+        final long start = System.nanoTime();
+        final char[] buffer = new char[BUFFER_SIZE];
+        boolean settled = false;
+
+        int read = reader.read(buffer);
+        while (read != -1 && !settled) {
+            final String chunk = new String(buffer, 0, read);
+            for (Rule rule : this.rules) {
+                if (rule.scan(chunk) && rule.isTerminal()) {
+                    settled = true;
+                }
+            }
+            read = reader.read(buffer);
+        }
+        final JBTResponse response = this.buildResponse();
+        response.setScanTime(System.nanoTime() - start);
+        return response;
+    }
+
+    /**
+     * Builds the response from the rules that matched.
+     *
+     * @return the response
+     */
+    private JBTResponse buildResponse() {
+
+        final JBTResponse response = new JBTResponse();
+        String output = null;
+        String quotedOutput = null;
+
+        for (Rule rule : this.rules) {
+            if (!rule.isComplete()) {
+                continue;
+            }
+            switch (rule.getSlot()) {
+                case SECURITY_KEY:
+                    response.setSecurityKey(rule.getCapture());
+                    break;
+                case OUTPUT:
+                    if (output == null) {
+                        output = rule.getCapture();
+                    }
+                    break;
+                case QUOTED_OUTPUT:
+                    quotedOutput = rule.getCapture();
+                    break;
+                case SCRIPT_EXCEPTION:
+                    response.setScriptException(
+                            stripLeadingMarkup(rule.getCapture()));
+                    break;
+                case KEY_REJECTED:
+                    response.setKeyRejected(true);
+                    break;
+                default:
+                    break;
+            }
+        }
+        // The entity quoted form takes precedence, as it always has
+        response.setOutput(quotedOutput != null ? quotedOutput : output);
+
+        return response;
+    }
+
+    /**
+     * Strip the markup, such as headings, that precedes the text.
+     *
+     * @param text the text
+     * @return the text without the leading markup
+     */
+    private static String stripLeadingMarkup(final String text) {
+
+        int start = 0;
+        while (start < text.length()) {
+            final char c = text.charAt(start);
+            if (Character.isWhitespace(c)) {
+                start++;
+            } else if (c == '<' && text.indexOf('>', start) > 0) {
+                start = text.indexOf('>', start) + 1;
+            } else {
+                break;
+            }
+        }
+        return text.substring(start);
+    }
+
+    /**
+     * The parts of the response that the rules capture.
+     */
+    private enum Slot {
+
+        /** The security key. */
+        SECURITY_KEY,
+
+        /** The output of the script. */
+        OUTPUT,
+
+        /** The output of the script, with entity quoted attributes. */
+        QUOTED_OUTPUT,
+
+        /** The script exception. */
+        SCRIPT_EXCEPTION,
+
+        /** The security key was rejected. */
+        KEY_REJECTED
+    }
+
+    /**
+     * A rule that looks for a start marker, skips past an optional marker
+     * and then captures the text up to an end marker. Text that may hold
+     * the start of a marker split across two chunks is carried over.
+     */
+    private static final class Rule {
+
+        /** Looking for the start marker. */
+        private static final int SEARCHING = 0;
+
+        /** Skipping to the end of the skip marker. */
+        private static final int SKIPPING = 1;
+
+        /** Capturing up to the end marker. */
+        private static final int CAPTURING = 2;
+
+        /** The rule is complete. */
+        private static final int COMPLETE = 3;
+
+        /** The slot the rule captures. */
+        private final Slot slot;
+
+        /** The start marker. */
+        private final String startMarker;
+
+        /** The skip marker, or null. */
+        private final String skipMarker;
+
+        /** The end marker, or null if nothing is captured. */
+        private final String endMarker;
+
+        /** The terminal flag. */
+        private final boolean terminal;
+
+        /** The captured text. */
+        private final StringBuilder capture = new StringBuilder();
+
+        /** The text carried over from the previous chunk. */
+        private String carry = "";
+
+        /** The state. */
+        private int state = SEARCHING;
+
+        /**
+         * Instantiates a new rule.
+         *
+         * @param slotValue the slot the rule captures
+         * @param startMarkerValue the start marker
+         * @param skipMarkerValue the skip marker, or null
+         * @param endMarkerValue the end marker, or null
+         * @param terminalValue true if the outcome is settled once the rule
+         *            is complete
+         */
+        Rule(final Slot slotValue, final String startMarkerValue,
+                final String skipMarkerValue, final String endMarkerValue,
+                final boolean terminalValue) {
+            this.slot = slotValue;
+            this.startMarker = startMarkerValue;
+            this.skipMarker = skipMarkerValue;
+            this.endMarker = endMarkerValue;
+            this.terminal = terminalValue;
+        }
+
+        /**
+         * Scan the next chunk of the response.
+         *
+         * @param chunk the chunk
+         * @return true, if the rule is complete
+         */
+        boolean scan(final String chunk) {
+
+            if (this.state == COMPLETE) {
+                return true;
+            }
+            final String text = this.carry + chunk;
+            int position = 0;
+
+            while (this.state != COMPLETE) {
+                if (this.state == SEARCHING || this.state == SKIPPING) {
+                    final String marker = this.state == SEARCHING
+                            ? this.startMarker : this.skipMarker;
+                    final int index = text.indexOf(marker, position);
+                    if (index < 0) {
+                        this.carry = tail(text, position, marker.length() - 1);
+                        return false;
+                    }
+                    position = index + marker.length();
+                    if (this.state == SEARCHING && this.skipMarker != null) {
+                        this.state = SKIPPING;
+                    } else if (this.endMarker != null) {
+                        this.state = CAPTURING;
+                    } else {
+                        this.state = COMPLETE;
+                    }
+                } else {
+                    final int index = text.indexOf(this.endMarker, position);
+                    if (index < 0) {
+                        // Capture all but the text that may start the end marker
+                        final int safe = Math.max(position,
+                                text.length() - (this.endMarker.length() - 1));
+                        this.capture.append(text, position, safe);
+                        this.carry = text.substring(safe);
+                        return false;
+                    }
+                    this.capture.append(text, position, index);
+                    this.state = COMPLETE;
+                }
+            }
+            this.carry = "";
+            return true;
+        }
+
+        /**
+         * Gets the text from the end of the string that may hold the start
+         * of a marker.
+         *
+         * @param text the text
+         * @param position the position scanned up to
+         * @param length the maximum length of the tail
+         * @return the tail
+         */
+        private static String tail(final String text, final int position,
+                final int length) {
+            return text.substring(Math.max(position, text.length() - length));
+        }
+
+        /**
+         * Gets the slot the rule captures.
+         *
+         * @return the slot
+         */
+        Slot getSlot() {
+            return this.slot;
+        }
+
+        /**
+         * Checks if the outcome is settled once the rule is complete.
+         *
+         * @return true, if terminal
+         */
+        boolean isTerminal() {
+            return this.terminal;
+        }
+
+        /**
+         * Checks if the rule is complete.
+         *
+         * @return true, if complete
+         */
+        boolean isComplete() {
+            return this.state == COMPLETE;
+        }
+
+        /**
+         * Gets the captured text.
+         *
+         * @return the captured text
+         */
+        String getCapture() {
+            return this.capture.toString();
+        }
+    }
+}
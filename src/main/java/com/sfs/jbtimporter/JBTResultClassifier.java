@@ -0,0 +1,186 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * The Class JBTResultClassifier.
+ * 
+ * Classifies the result of a Jelly script by the failure messages it holds.
+ * The rules are compiled into a single pattern, with a group per rule, so
+ * the result is classified in one pass however many rules there are. The
+ * compiled pattern is immutable and safe to share between worker threads.
+ * 
+ * Rules can be loaded from a file with one rule per line, in the form
+ * TYPE=message text, where TYPE is a JBTResultType. Blank lines and lines
+ * starting with # are ignored. Earlier rules take precedence. The loaded
+ * rules are added ahead of the default rules, which always apply.
+ */
+public class JBTResultClassifier {
+
+    /** The failure class of each rule, in rule order. */
+    private final List<JBTResultType> types = new ArrayList<JBTResultType>();
+
+    /** The compiled pattern. */
+    private final Pattern pattern;
+
+    /**
+     * Instantiates a new JBT result classifier.
+     *
+     * @param messages the message text of each rule
+     * @param typesValue the failure class of each rule
+     */
+    public JBTResultClassifier(final List<String> messages,
+            final List<JBTResultType> typesValue) {
+
+        final StringBuilder regex = new StringBuilder();
+        for (String message : messages) {
+            if (regex.length() > 0) {
+                regex.append('|');
+            }
+            regex.append('(').append(Pattern.quote(message)).append(')');
+        }
+        this.types.addAll(typesValue);
+        this.pattern = messages.isEmpty() ? null : Pattern.compile(regex.toString());
+    }
+
+    /**
+     * Creates a classifier with the default rules.
+     *
+     * @return the result classifier
+     */
+    public static JBTResultClassifier getDefault() {
+
+        final List<String> messages = new ArrayList<String>();
+        final List<JBTResultType> ruleTypes = new ArrayList<JBTResultType>();
+
+        addDefaultRules(messages, ruleTypes);
+
+        return new JBTResultClassifier(messages, ruleTypes);
+    }
+
+    /**
+     * Add the default rules.
+     *
+     * @param messages the message text of each rule
+     * @param ruleTypes the failure class of each rule
+     */
+    private static void addDefaultRules(final List<String> messages,
+            final List<JBTResultType> ruleTypes) {
+
+        // File attachment error
+        messages.add("Unable to make temporary copy of file");
+        ruleTypes.add(JBTResultType.ATTACHMENT_FAILURE);
+        // Issue transition error
+        messages.add("that is not a valid workflow transition for the");
+        ruleTypes.add(JBTResultType.TRANSITION_FAILURE);
+    }
+
+    /**
+     * Load a classifier from a rules file, followed by the default rules.
+     *
+     * @param file the rules file
+     * @return the result classifier
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws JBTException the jBT exception, if a rule is not valid
+     */
+    public static JBTResultClassifier load(final File file)
+            throws IOException, JBTException {
+
+        final List<String> messages = new ArrayList<String>();
+        final List<JBTResultType> ruleTypes = new ArrayList<JBTResultType>();
+
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line = reader.readLine();
+            while (line != null) {
+                if (StringUtils.isNotBlank(line) && !line.trim().startsWith("#")) {
+                    final int equals = line.indexOf('=');
+                    if (equals < 1 || equals == line.length() - 1) {
+                        throw new JBTException("Invalid classification rule: " + line);
+                    }
+                    try {
+                        ruleTypes.add(JBTResultType.valueOf(
+                                line.substring(0, equals).trim()));
+                    } catch (IllegalArgumentException iae) {
+                        throw new JBTException("Invalid classification type: " + line);
+                    }
+                    messages.add(line.substring(equals + 1));
+                }
+                line = reader.readLine();
+            }
+        } finally {
+            reader.close();
+        }
+        addDefaultRules(messages, ruleTypes);
+
+        return new JBTResultClassifier(messages, ruleTypes);
+    }
+
+    /**
+     * Find the failure classes whose rules match the text.
+     *
+     * @param text the text
+     * @return the failure classes, in rule order
+     */
+    public final Set<JBTResultType> classify(final String text) {
+
+        final Set<JBTResultType> matched = EnumSet.noneOf(JBTResultType.class);
+        if (this.pattern == null || text == null) {
+            return matched;
+        }
+        final Matcher matcher = this.pattern.matcher(text);
+        while (matcher.find()) {
+            for (int group = 1; group <= matcher.groupCount(); group++) {
+                if (matcher.start(group) >= 0) {
+                    matched.add(this.types.get(group - 1));
+                    break;
+                }
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Gets the first of the matched failure classes in rule order.
+     *
+     * @param matched the failure classes matched by classify
+     * @return the failure class, or null if none matched
+     */
+    public final JBTResultType getPrimaryType(final Set<JBTResultType> matched) {
+
+        for (JBTResultType type : this.types) {
+            if (matched.contains(type)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
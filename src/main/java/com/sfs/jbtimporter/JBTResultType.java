@@ -0,0 +1,71 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+/**
+ * The Enum JBTResultType.
+ * 
+ * The outcome of importing an issue into Jira.
+ */
+public enum JBTResultType {
+
+    /** The issue was imported cleanly. */
+    SUCCESS,
+
+    /** The issue was imported but a file could not be attached. */
+    ATTACHMENT_FAILURE,
+
+    /** The issue was imported but could not be transitioned. */
+    TRANSITION_FAILURE,
+
+    /** The Jelly script could not be run, or reported an error. */
+    SCRIPT_EXCEPTION,
+
+    /** Jira did not accept the credentials or the security key. */
+    AUTH_FAILURE,
+
+    /** Jira could not be reached, the script was never sent. */
+    CONNECTION_FAILURE,
+
+    /** The request failed after the script may have reached Jira. */
+    TRANSPORT_FAILURE,
+
+    /** The batch holding the issue threw before reporting it, it may exist. */
+    UNCONFIRMED,
+
+    /** The issue's XML file could not be read. */
+    FILE_FAILURE;
+
+    /**
+     * Checks if the issue was created in Jira, cleanly or not, so it must
+     * not be imported again.
+     *
+     * @return true, if the issue was created
+     */
+    public boolean isIssueCreated() {
+        return this == SUCCESS || this == ATTACHMENT_FAILURE || this == TRANSITION_FAILURE;
+    }
+
+    /**
+     * Checks if the issue must not be imported again, as it was created or
+     * may have been and has to be reconciled with Jira first.
+     *
+     * @return true, if the import of the issue is complete
+     */
+    public boolean isComplete() {
+        return this.isIssueCreated() || this == UNCONFIRMED;
+    }
+}
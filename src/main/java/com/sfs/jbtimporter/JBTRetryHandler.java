@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * The Class JBTRetryHandler.
+ * 
+ * Decides whether a failed import is retried, using the retry policy of its
+ * class of failure, and counts the retries made. Transport failures are
+ * retried with backoff, and the key is fetched again for authentication
+ * failures. Failures reported by the Jelly script itself are not retried as
+ * the script may have partially created the issue.
+ * 
+ * The Jelly runner creates issues, so a script is only retried by default
+ * when it provably never reached Jira, because the connection could not be
+ * made. A transport failure after the script was sent, such as a timeout
+ * or server error, may follow Jira having run the script; retrying it
+ * would create the issues again, so those retries must be asked for.
+ */
+public class JBTRetryHandler {
+
+    /** The default maximum number of retries of a connection failure. */
+    public static final int DEFAULT_CONNECTION_RETRIES = 4;
+
+    /** The default maximum number of retries of a transport failure. */
+    public static final int DEFAULT_TRANSPORT_RETRIES = 0;
+
+    /** The default base delay in milliseconds before retrying. */
+    public static final long DEFAULT_BASE_DELAY = 500;
+
+    /** The default maximum delay in milliseconds before retrying. */
+    public static final long DEFAULT_MAX_DELAY = 30000;
+
+    /** The retry policy of each class of failure. */
+    private final Map<JBTResultType, JBTRetryPolicy> policies =
+        new EnumMap<JBTResultType, JBTRetryPolicy>(JBTResultType.class);
+
+    /** The number of retries made for each class of failure. */
+    private final Map<JBTResultType, Integer> retryCounts =
+        new EnumMap<JBTResultType, Integer>(JBTResultType.class);
+
+    /** The circuit breaker. */
+    private final JBTCircuitBreaker circuitBreaker = new JBTCircuitBreaker();
+
+    /** The source of jitter. */
+    private final Random random = new Random();
+
+    /**
+     * Instantiates a new JBT retry handler with the default policies.
+     */
+    public JBTRetryHandler() {
+        this.setPolicy(JBTResultType.CONNECTION_FAILURE, new JBTRetryPolicy(
+                DEFAULT_CONNECTION_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY));
+        this.setPolicy(JBTResultType.TRANSPORT_FAILURE, new JBTRetryPolicy(
+                DEFAULT_TRANSPORT_RETRIES, DEFAULT_BASE_DELAY, DEFAULT_MAX_DELAY));
+        this.setPolicy(JBTResultType.AUTH_FAILURE, new JBTRetryPolicy(
+                1, DEFAULT_BASE_DELAY, DEFAULT_BASE_DELAY));
+    }
+
+    /**
+     * Sets the retry policy of a class of failure.
+     *
+     * @param type the class of failure
+     * @param policy the retry policy
+     */
+    public final synchronized void setPolicy(final JBTResultType type,
+            final JBTRetryPolicy policy) {
+        this.policies.put(type, policy);
+    }
+
+    /**
+     * Gets the retry policy of a class of failure.
+     *
+     * @param type the class of failure
+     * @return the retry policy
+     */
+    public final synchronized JBTRetryPolicy getPolicy(final JBTResultType type) {
+        final JBTRetryPolicy policy = this.policies.get(type);
+        return policy != null ? policy : JBTRetryPolicy.NONE;
+    }
+
+    /**
+     * Gets the circuit breaker.
+     *
+     * @return the circuit breaker
+     */
+    public final JBTCircuitBreaker getCircuitBreaker() {
+        return this.circuitBreaker;
+    }
+
+    /**
+     * Record the result of an attempt with the circuit breaker.
+     *
+     * @param result the import result
+     */
+    public final void recordAttempt(final JBTImportResult result) {
+        if (result.getType() == JBTResultType.CONNECTION_FAILURE
+                || result.getType() == JBTResultType.TRANSPORT_FAILURE) {
+            this.circuitBreaker.recordFailure();
+        } else {
+            this.circuitBreaker.recordSuccess();
+        }
+    }
+
+    /**
+     * If the result can be retried, wait for the backoff delay and count the
+     * retry. The caller must wait for the circuit breaker before retrying.
+     *
+     * @param result the import result
+     * @param retries the number of retries already made
+     * @return true, if the import should be retried
+     */
+    public final boolean awaitRetry(final JBTImportResult result, final int retries) {
+
+        final long delay = this.nextRetryDelay(result, retries);
+        if (delay < 0) {
+            return false;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * If the result can be retried, count the retry and get the backoff
+     * delay to wait for, without waiting. The caller must wait for the
+     * circuit breaker before retrying.
+     *
+     * @param result the import result
+     * @param retries the number of retries already made
+     * @return the delay in milliseconds, or -1 if not retried
+     */
+    public final long nextRetryDelay(final JBTImportResult result, final int retries) {
+
+        if (result.isSuccess()) {
+            return -1;
+        }
+        final JBTRetryPolicy policy = this.getPolicy(result.getType());
+        if (!policy.allowsRetry(retries)) {
+            return -1;
+        }
+        synchronized (this) {
+            final Integer count = this.retryCounts.get(result.getType());
+            this.retryCounts.put(result.getType(), count == null ? 1 : count + 1);
+        }
+        return policy.getDelay(retries, this.random);
+    }
+
+    /**
+     * Gets the number of retries made for each class of failure.
+     *
+     * @return the retry counts
+     */
+    public final synchronized Map<JBTResultType, Integer> getRetryCounts() {
+        return new EnumMap<JBTResultType, Integer>(this.retryCounts);
+    }
+}
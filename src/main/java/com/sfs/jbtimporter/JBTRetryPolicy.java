@@ -0,0 +1,112 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.Random;
+
+/**
+ * The Class JBTRetryPolicy.
+ * 
+ * How an import that failed with a given class of failure is retried. The
+ * delay before each retry grows exponentially from the base delay up to the
+ * maximum delay, and a random delay up to that limit is chosen (full jitter)
+ * so workers that failed together do not all retry at the same moment.
+ */
+public class JBTRetryPolicy {
+
+    /** The policy of failures that are never retried. */
+    public static final JBTRetryPolicy NONE = new JBTRetryPolicy(0, 0, 0);
+
+    /** The maximum number of retries. */
+    private final int maxRetries;
+
+    /** The base delay in milliseconds. */
+    private final long baseDelay;
+
+    /** The maximum delay in milliseconds. */
+    private final long maxDelay;
+
+    /**
+     * Instantiates a new JBT retry policy.
+     *
+     * @param maxRetriesValue the maximum number of retries
+     * @param baseDelayValue the base delay in milliseconds
+     * @param maxDelayValue the maximum delay in milliseconds
+     */
+    public JBTRetryPolicy(final int maxRetriesValue, final long baseDelayValue,
+            final long maxDelayValue) {
+        this.maxRetries = maxRetriesValue;
+        this.baseDelay = baseDelayValue;
+        this.maxDelay = Math.max(baseDelayValue, maxDelayValue);
+    }
+
+    /**
+     * Gets the maximum number of retries.
+     *
+     * @return the maximum number of retries
+     */
+    public final int getMaxRetries() {
+        return this.maxRetries;
+    }
+
+    /**
+     * Gets the base delay in milliseconds.
+     *
+     * @return the base delay
+     */
+    public final long getBaseDelay() {
+        return this.baseDelay;
+    }
+
+    /**
+     * Gets the maximum delay in milliseconds.
+     *
+     * @return the maximum delay
+     */
+    public final long getMaxDelay() {
+        return this.maxDelay;
+    }
+
+    /**
+     * Checks if another retry is allowed.
+     *
+     * @param retries the number of retries already made
+     * @return true, if another retry is allowed
+     */
+    public final boolean allowsRetry(final int retries) {
+        return retries < this.maxRetries;
+    }
+
+    /**
+     * Gets the delay before the next retry.
+     *
+     * @param retries the number of retries already made
+     * @param random the source of jitter
+     * @return the delay in milliseconds
+     */
+    public final long getDelay(final int retries, final Random random) {
+
+        long limit = this.baseDelay;
+        for (int i = 0; i < retries && limit < this.maxDelay; i++) {
+            limit *= 2;
+        }
+        limit = Math.min(limit, this.maxDelay);
+        if (limit <= 0) {
+            return 0;
+        }
+        return (long) (random.nextDouble() * (limit + 1));
+    }
+}
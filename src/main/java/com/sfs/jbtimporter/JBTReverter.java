@@ -0,0 +1,333 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xml.sax.SAXException;
+
+/**
+ * The Class JBTReverter.
+ * 
+ * Reverts the transformed XML files to their .old originals across a pool
+ * of worker threads. Each file is reverted with two atomic moves, the
+ * transformed .xml to .xml.rev and the .old to .xml, and recorded in the
+ * revert journal once both are done. Every step checks the files on disk,
+ * so an interrupted revert can be finished by running it again, or rolled
+ * back to the transformed files. A roll back only restores the files the
+ * journal records as reverted, or whose revert stopped between its two
+ * moves. No move replaces an existing file, so an original is never lost
+ * to a stale file. Once a revert completes without failures the .xml.rev
+ * files and the journal are removed. Only failures are reported for each
+ * issue.
+ */
+public class JBTReverter {
+
+    /** The suffix of the original XML files. */
+    private static final String ORIGINAL_SUFFIX = ".old";
+
+    /** The suffix of the transformed XML files kept during a revert. */
+    private static final String REVERTED_SUFFIX = ".rev";
+
+    /** The outcome recorded in the journal for a rolled back file. */
+    private static final String ROLLED_BACK = "ROLLED_BACK";
+
+    /** The jbt processor. */
+    private final JBTProcessor jbt;
+
+    /** The count of files reverted or rolled back. */
+    private final AtomicInteger changedCount = new AtomicInteger();
+
+    /** The count of files that needed no change. */
+    private final AtomicInteger unchangedCount = new AtomicInteger();
+
+    /** The count of files that failed. */
+    private final AtomicInteger failedCount = new AtomicInteger();
+
+    /**
+     * Instantiates a new JBT reverter.
+     *
+     * @param jbtValue the jbt processor
+     */
+    public JBTReverter(final JBTProcessor jbtValue) {
+        this.jbt = jbtValue;
+    }
+
+    /**
+     * Revert the transformed files, finishing a previous revert that was
+     * interrupted.
+     */
+    public final void revert() {
+
+        final JBTJournal journal = this.jbt.getRevertJournal();
+        if (journal.getFile().exists()) {
+            System.out.println("Finishing the interrupted revert");
+        }
+        if (!this.run(journal, new IssueAction() {
+                    public void perform(final JBTIssue issue) throws IOException {
+                        revertIssue(issue);
+                    }
+                })) {
+            return;
+        }
+        System.out.println(this.changedCount.get() + " reverted, " 
+                + this.unchangedCount.get() + " not transformed or already reverted, " 
+                + this.failedCount.get() + " failed");
+
+        if (this.failedCount.get() == 0) {
+            // The revert is complete, the transformed files are not needed
+            this.run(null, new IssueAction() {
+                public void perform(final JBTIssue issue) throws IOException {
+                    Files.deleteIfExists(getFile(issue, REVERTED_SUFFIX).toPath());
+                }
+            });
+            journal.getFile().delete();
+        } else {
+            System.out.println("Run the revert again to finish it, "
+                    + "or with --rollback to restore the transformed files");
+        }
+    }
+
+    /**
+     * Roll back an interrupted revert, restoring the transformed files.
+     */
+    public final void rollback() {
+
+        final JBTJournal journal = this.jbt.getRevertJournal();
+        try {
+            // The files recorded as reverted
+            journal.load();
+        } catch (IOException ioe) {
+            System.out.println("ERROR loading the revert journal: " + ioe.getMessage());
+            return;
+        }
+        if (!this.run(journal, new IssueAction() {
+                    public void perform(final JBTIssue issue) throws IOException {
+                        rollbackIssue(issue);
+                    }
+                })) {
+            return;
+        }
+        System.out.println(this.changedCount.get() + " rolled back, " 
+                + this.unchangedCount.get() + " not reverted, " 
+                + this.failedCount.get() + " failed");
+
+        if (this.failedCount.get() == 0) {
+            journal.getFile().delete();
+        }
+    }
+
+    /**
+     * Perform the action on every issue in the index across the worker
+     * threads, with the journal open for the action to record to.
+     *
+     * @param journal the journal, or null if not recorded
+     * @param action the action
+     * @return true, if the index was read and the journal written
+     */
+    private boolean run(final JBTJournal journal, final IssueAction action) {
+
+        if (journal != null) {
+            try {
+                journal.open(true);
+            } catch (IOException ioe) {
+                System.out.println("ERROR opening the revert journal: " 
+                        + ioe.getMessage());
+                return false;
+            }
+        }
+        final ExecutorService executor = JBTExecutors.newBlockingExecutor(
+                this.jbt.getThreads(), this.jbt.getThreads() * 2);
+        boolean indexRead = false;
+        try {
+            this.jbt.parseXmlIndex(new JBTIssueHandler() {
+                public void handleIssue(final JBTIssue issue) {
+                    executor.execute(new Runnable() {
+                        public void run() {
+                            performAction(action, issue);
+                        }
+                    });
+                }
+            });
+            indexRead = true;
+        } catch (IOException ioe) {
+            System.out.println("ERROR loading index.xml file: " + ioe.getMessage());
+        } catch (SAXException se) {
+            System.out.println("ERROR parsing index.xml file: " + se.getMessage());
+        }
+        JBTExecutors.awaitCompletion(executor);
+
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ioe) {
+                System.out.println("ERROR closing the revert journal: " 
+                        + ioe.getMessage());
+                return false;
+            }
+        }
+        return indexRead;
+    }
+
+    /**
+     * Perform the action on an issue, reporting it if it fails.
+     *
+     * @param action the action
+     * @param issue the issue
+     */
+    private void performAction(final IssueAction action, final JBTIssue issue) {
+        try {
+            action.perform(issue);
+        } catch (IOException ioe) {
+            this.failedCount.incrementAndGet();
+
+            final StringBuilder message = new StringBuilder();
+            message.append("Error reverting Issue ID: " + issue.getId() + "\n");
+            message.append("Filename: " + issue.getFullFileName() + "\n");
+            message.append("ERROR: " + ioe.getMessage() + "\n");
+            message.append("-------------------------------------");
+            System.out.println(message.toString());
+        }
+    }
+
+    /**
+     * Revert an issue file to its original.
+     *
+     * @param issue the issue
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void revertIssue(final JBTIssue issue) throws IOException {
+
+        final File xmlFile = getFile(issue, "");
+        final File originalFile = getFile(issue, ORIGINAL_SUFFIX);
+
+        if (!originalFile.exists()) {
+            // Not transformed, or already reverted
+            this.unchangedCount.incrementAndGet();
+            return;
+        }
+        if (xmlFile.exists()) {
+            // Keep the transformed file until the revert is complete
+            move(xmlFile, getFile(issue, REVERTED_SUFFIX));
+        }
+        move(originalFile, xmlFile);
+
+        this.jbt.getRevertJournal().record(getKey(issue), JBTJournal.SUCCESS);
+        this.changedCount.incrementAndGet();
+    }
+
+    /**
+     * Roll back the revert of an issue file, restoring the transformed file.
+     *
+     * @param issue the issue
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private void rollbackIssue(final JBTIssue issue) throws IOException {
+
+        final File xmlFile = getFile(issue, "");
+        final File revertedFile = getFile(issue, REVERTED_SUFFIX);
+
+        if (!revertedFile.exists()) {
+            // Not reverted
+            this.unchangedCount.incrementAndGet();
+            return;
+        }
+        if (xmlFile.exists()) {
+            if (!this.jbt.getRevertJournal().isComplete(getKey(issue))) {
+                // A stale file left by an earlier revert, the file in place
+                // may be a newer transformation or the original
+                System.out.println("Issue ID: " + issue.getId() + " was not reverted, "
+                        + "leaving " + revertedFile.getName() + " in place");
+                this.unchangedCount.incrementAndGet();
+                return;
+            }
+            move(xmlFile, getFile(issue, ORIGINAL_SUFFIX));
+        }
+        move(revertedFile, xmlFile);
+
+        this.jbt.getRevertJournal().record(getKey(issue), ROLLED_BACK);
+        this.changedCount.incrementAndGet();
+    }
+
+    /**
+     * Move the file atomically. The target is never replaced, as it may be
+     * the only copy of an original file. If the file system does not
+     * support atomic moves the file is moved without.
+     *
+     * @param source the source file
+     * @param target the target file
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private static void move(final File source, final File target) throws IOException {
+
+        final Path sourcePath = source.toPath();
+        final Path targetPath = target.toPath();
+        if (Files.exists(targetPath, LinkOption.NOFOLLOW_LINKS)) {
+            // An atomic move may replace the target whatever the options
+            throw new FileAlreadyExistsException(target.getPath(), null,
+                    "already exists and was not replaced");
+        }
+        try {
+            Files.move(sourcePath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException amnse) {
+            Files.move(sourcePath, targetPath);
+        }
+    }
+
+    /**
+     * Gets the issue file with the suffix.
+     *
+     * @param issue the issue
+     * @param suffix the suffix
+     * @return the file
+     */
+    private static File getFile(final JBTIssue issue, final String suffix) {
+        return new File(issue.getFullFileName() + suffix);
+    }
+
+    /**
+     * Gets the key of the issue in the revert journal.
+     *
+     * @param issue the issue
+     * @return the key
+     */
+    private static String getKey(final JBTIssue issue) {
+        return issue.getBase() + "/" + issue.getFileName();
+    }
+
+    /**
+     * An action performed on each issue.
+     */
+    private interface IssueAction {
+
+        /**
+         * Perform the action on the issue.
+         *
+         * @param issue the issue
+         * @throws IOException Signals that an I/O exception has occurred.
+         */
+        void perform(JBTIssue issue) throws IOException;
+    }
+}
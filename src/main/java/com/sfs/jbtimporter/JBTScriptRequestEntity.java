@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.util.EncodingUtil;
+
+/**
+ * The Class JBTScriptRequestEntity.
+ * 
+ * A URL encoded form request body holding the Jelly script. The script is
+ * encoded as it is written to the connection, read from the issue file on
+ * disk where one is supplied, so the size of the script does not affect
+ * the memory used by the request. Only a script read from a file is sent
+ * chunked, the length of one held in memory is calculated up front. The
+ * body matches the one produced by PostMethod.setRequestBody(NameValuePair[])
+ * for the same parameters.
+ */
+public class JBTScriptRequestEntity implements RequestEntity {
+
+    /** The size of the buffer used when copying the script. */
+    private static final int BUFFER_SIZE = 8192;
+
+    /** The content length before it has been calculated. */
+    private static final long UNKNOWN_LENGTH = -2;
+
+    /** The request. */
+    private final JBTRequest request;
+
+    /** The length of the body, UNKNOWN_LENGTH until it is first requested. */
+    private volatile long contentLength = UNKNOWN_LENGTH;
+
+    /** The counter of the bytes last written, null until written. */
+    private volatile JBTCountingOutputStream counter;
+
+    /**
+     * Instantiates a new JBT script request entity.
+     *
+     * @param requestValue the request
+     */
+    public JBTScriptRequestEntity(final JBTRequest requestValue) {
+        this.request = requestValue;
+    }
+
+    /**
+     * Gets the bytes written the last time the request was written.
+     *
+     * @return the bytes written
+     */
+    public final long getBytesWritten() {
+        final JBTCountingOutputStream out = this.counter;
+        return out != null ? out.getCount() : 0;
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.commons.httpclient.methods.RequestEntity#isRepeatable()
+     */
+    public final boolean isRepeatable() {
+        return true;
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.commons.httpclient.methods.RequestEntity#getContentLength()
+     */
+    public final long getContentLength() {
+        if (this.contentLength == UNKNOWN_LENGTH) {
+            try {
+                // A script read from a file is sent using chunked
+                // transfer encoding, as it is encoded while it is sent
+                this.contentLength = this.request.getContentLength();
+            } catch (IOException ioe) {
+                this.contentLength = -1;
+            }
+        }
+        return this.contentLength;
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.commons.httpclient.methods.RequestEntity#getContentType()
+     */
+    public final String getContentType() {
+        return JBTRequest.CONTENT_TYPE;
+    }
+
+    /* (non-Javadoc)
+     * @see org.apache.commons.httpclient.methods.RequestEntity#writeRequest(
+     * java.io.OutputStream)
+     */
+    public final void writeRequest(final OutputStream connection) throws IOException {
+
+        // Counted afresh each time the request is written, as it is retried
+        final JBTCountingOutputStream out = new JBTCountingOutputStream(connection);
+        this.counter = out;
+
+        out.write(EncodingUtil.getAsciiBytes(this.request.getEncodedPrefix()));
+
+        final Reader reader = this.request.openScript();
+        if (reader == null) {
+            return;
+        }
+        try {
+            // Encode the script into the form character set, unmappable
+            // characters are replaced as they would be by String.getBytes
+            final Writer writer = new OutputStreamWriter(
+                    new FormEncodingOutputStream(out), JBTRequest.FORM_CHARSET);
+            final char[] buffer = new char[BUFFER_SIZE];
+            int read = reader.read(buffer);
+            while (read != -1) {
+                writer.write(buffer, 0, read);
+                read = reader.read(buffer);
+            }
+            writer.flush();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * An output stream that URL encodes the bytes written to it using the
+     * rules for the application/x-www-form-urlencoded content type.
+     */
+    private static class FormEncodingOutputStream extends FilterOutputStream {
+
+        /** The URL encoded bytes, reused for each write. */
+        private final byte[] encoded =
+            new byte[BUFFER_SIZE * JBTFormEncoder.MAX_EXPANSION];
+
+        /**
+         * Instantiates a new form encoding output stream.
+         *
+         * @param out the underlying output stream
+         */
+        FormEncodingOutputStream(final OutputStream out) {
+            super(out);
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.FilterOutputStream#write(int)
+         */
+        @Override
+        public void write(final int b) throws IOException {
+            this.write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.FilterOutputStream#write(byte[], int, int)
+         */
+        @Override
+        public void write(final byte[] b, final int off, final int len)
+                throws IOException {
+
+            for (int i = off; i < off + len; i += BUFFER_SIZE) {
+                final int count = JBTFormEncoder.encode(b, i,
+                        Math.min(BUFFER_SIZE, off + len - i), this.encoded, 0);
+                this.out.write(this.encoded, 0, count);
+            }
+        }
+
+        /* (non-Javadoc)
+         * @see java.io.FilterOutputStream#close()
+         */
+        @Override
+        public void close() throws IOException {
+            // The underlying connection stream is closed by HttpClient
+            this.flush();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The Interface JBTTransport.
+ * 
+ * Sends forms to Jira. A response with a 5xx status is raised as an
+ * IOException so it is handled, and retried, as a transport failure.
+ * An asynchronous transport returns from sendAsync as soon as the request
+ * is under way, so the requests in flight are not tied to a thread each.
+ */
+public interface JBTTransport {
+
+    /**
+     * Send the request and scan the response as it is read.
+     *
+     * @param request the request
+     * @param scanner the scanner for the response
+     * @return the response
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    JBTResponse send(JBTRequest request, JBTResponseScanner scanner)
+            throws IOException;
+
+    /**
+     * Send the request, returning a future completed with the scanned
+     * response, or with the IOException the request failed with. A
+     * transport that is not asynchronous completes the future before
+     * returning it.
+     *
+     * @param request the request
+     * @param scanner the scanner for the response
+     * @return the future response
+     */
+    CompletableFuture<JBTResponse> sendAsync(JBTRequest request,
+            JBTResponseScanner scanner);
+
+    /**
+     * Checks if sendAsync returns without waiting for the response.
+     *
+     * @return true, if the transport is asynchronous
+     */
+    boolean isAsync();
+
+    /**
+     * Close the connections and stop any threads of the transport.
+     */
+    void shutdown();
+}
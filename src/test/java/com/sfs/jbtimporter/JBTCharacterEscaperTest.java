@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTCharacterEscaperTest.
+ */
+public class JBTCharacterEscaperTest extends TestCase {
+
+    /** The escaper. */
+    private JBTCharacterEscaper escaper;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        final Map<Character, String> map = new HashMap<Character, String>();
+        map.put(Character.valueOf('\u00e9'), "&eacute;");
+        map.put(Character.valueOf('\u0100'), "&#256;");
+        map.put(Character.valueOf('\u00a9'), "&copy;");
+        this.escaper = new JBTCharacterEscaper(map);
+    }
+
+    /**
+     * Escape the string, both as a string and as characters, checking the
+     * two agree.
+     *
+     * @param text the text
+     * @param off the offset of the first character
+     * @param len the number of characters
+     * @return the escaped text
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private String escape(final String text, final int off, final int len)
+            throws IOException {
+
+        final StringWriter fromString = new StringWriter();
+        this.escaper.escape(text, off, len, fromString);
+
+        final StringWriter fromChars = new StringWriter();
+        this.escaper.escape(text.toCharArray(), off, len, fromChars);
+
+        assertEquals(fromString.toString(), fromChars.toString());
+        return fromString.toString();
+    }
+
+    /**
+     * Test the replacement of each character.
+     */
+    public void testGetReplacement() {
+
+        assertEquals("&eacute;", new String(this.escaper.getReplacement('\u00e9')));
+        assertEquals("&#256;", new String(this.escaper.getReplacement('\u0100')));
+        // Within the table but not mapped
+        assertNull(this.escaper.getReplacement('\u00ea'));
+        // Either side of the table
+        assertNull(this.escaper.getReplacement('a'));
+        assertNull(this.escaper.getReplacement('\u0101'));
+        assertNull(this.escaper.getReplacement('\uffff'));
+    }
+
+    /**
+     * Test escaping text.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testEscape() throws IOException {
+
+        assertEquals("caf&eacute; &copy; &#256;&#256;", 
+                this.escape("caf\u00e9 \u00a9 \u0100\u0100", 0, 9));
+        assertEquals("plain text", this.escape("plain text", 0, 10));
+        assertEquals("", this.escape("", 0, 0));
+    }
+
+    /**
+     * Test that only the characters in range are escaped.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testEscapeRange() throws IOException {
+
+        assertEquals("&eacute;b", this.escape("a\u00e9bc", 1, 2));
+        assertEquals("&copy;", this.escape("\u00e9\u00a9\u00e9", 1, 1));
+    }
+
+    /**
+     * Test that an empty map passes all text through.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testEmptyMap() throws IOException {
+
+        this.escaper = new JBTCharacterEscaper(new HashMap<Character, String>());
+
+        assertNull(this.escaper.getReplacement('\uffff'));
+        assertEquals("caf\u00e9", this.escape("caf\u00e9", 0, 4));
+    }
+}
@@ -0,0 +1,80 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTExecutorsTest.
+ */
+public class JBTExecutorsTest extends TestCase {
+
+    /** The first Java release with virtual threads. */
+    private static final int VIRTUAL_THREADS_RELEASE = 21;
+
+    /**
+     * Test that no virtual thread executor is created before Java 21, so the
+     * pipeline falls back to platform threads, and that one runs tasks when
+     * it is.
+     *
+     * @throws Exception the exception
+     */
+    public void testVirtualThreadExecutor() throws Exception {
+
+        final ExecutorService executor = JBTExecutors.newVirtualThreadExecutor();
+
+        if (Runtime.version().feature() < VIRTUAL_THREADS_RELEASE) {
+            assertNull(executor);
+        } else {
+            assertNotNull(executor);
+            final Future<?> task = executor.submit(new Runnable() {
+                public void run() {
+                    // Nothing to do
+                }
+            });
+            task.get();
+            assertTrue(task.isDone());
+            JBTExecutors.awaitCompletion(executor);
+        }
+    }
+
+    /**
+     * Test that the platform thread executor the pipeline falls back to runs
+     * every task, holding back the submitter while its queue is full.
+     *
+     * @throws Exception the exception
+     */
+    public void testBlockingExecutor() throws Exception {
+
+        final ExecutorService executor = JBTExecutors.newBlockingExecutor(2, 1);
+        final int[] count = new int[1];
+        for (int i = 0; i < 20; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    synchronized (count) {
+                        count[0]++;
+                    }
+                }
+            });
+        }
+        JBTExecutors.awaitCompletion(executor);
+
+        assertEquals(20, count[0]);
+    }
+}
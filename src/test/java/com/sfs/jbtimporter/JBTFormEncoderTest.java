@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTFormEncoderTest.
+ */
+public class JBTFormEncoderTest extends TestCase {
+
+    /**
+     * Encode the text as UTF-8.
+     *
+     * @param text the text
+     * @return the encoded text
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    private static String encode(final String text) throws UnsupportedEncodingException {
+
+        final byte[] in = text.getBytes("UTF-8");
+        final byte[] out = new byte[in.length * JBTFormEncoder.MAX_EXPANSION];
+        final int count = JBTFormEncoder.encode(in, 0, in.length, out, 0);
+        return new String(out, 0, count, "US-ASCII");
+    }
+
+    /**
+     * Test encoding the characters of a script.
+     *
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    public void testEncode() throws UnsupportedEncodingException {
+
+        assertEquals("az-_.*09AZ", encode("az-_.*09AZ"));
+        assertEquals("a+b%26c%3Dd", encode("a b&c=d"));
+        assertEquals("%3Cj%3A%2F%3E%0D%0A%25%2B", encode("<j:/>\r\n%+"));
+        assertEquals("caf%C3%A9", encode("caf\u00e9"));
+        assertEquals("", encode(""));
+    }
+
+    /**
+     * Test that the encoding matches that of URLEncoder.
+     *
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    public void testMatchesUrlEncoder() throws UnsupportedEncodingException {
+
+        final Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) {
+            final char[] text = new char[random.nextInt(64)];
+            for (int j = 0; j < text.length; j++) {
+                text[j] = (char) (random.nextBoolean()
+                        ? random.nextInt(128) : random.nextInt(0xD800));
+            }
+            final String value = new String(text);
+            assertEquals(URLEncoder.encode(value, "UTF-8"), encode(value));
+        }
+    }
+
+    /**
+     * Test that the encoded length is the number of bytes encoded.
+     *
+     * @throws UnsupportedEncodingException the unsupported encoding exception
+     */
+    public void testEncodedLength() throws UnsupportedEncodingException {
+
+        final Random random = new Random(2);
+        for (int i = 0; i < 1000; i++) {
+            final byte[] in = new byte[random.nextInt(64)];
+            random.nextBytes(in);
+            final byte[] out = new byte[in.length * JBTFormEncoder.MAX_EXPANSION];
+            final int count = JBTFormEncoder.encode(in, 0, in.length, out, 0);
+            assertEquals(count, JBTFormEncoder.encodedLength(in, 0, in.length));
+        }
+        assertEquals(4, JBTFormEncoder.encodedLength("x &x".getBytes("UTF-8"), 1, 2));
+    }
+
+    /**
+     * Test that only the range is encoded, at the output offset.
+     */
+    public void testEncodeRange() {
+
+        final byte[] in = {'x', ' ', '&', 'x'};
+        final byte[] out = new byte[10];
+        Arrays.fill(out, (byte) '#');
+
+        final int count = JBTFormEncoder.encode(in, 1, 2, out, 3);
+
+        assertEquals(4, count);
+        assertEquals("###+%26###", new String(out, 0, 10));
+    }
+}
@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTHistogramTest.
+ */
+public class JBTHistogramTest extends TestCase {
+
+    /** The largest relative error of a value reported from its bucket. */
+    private static final double PRECISION = 1.0 / 64;
+
+    /**
+     * Test that small values are counted exactly.
+     */
+    public void testSmallValuesExact() {
+        for (int value = 0; value < 128; value++) {
+            assertEquals(value, JBTHistogram.getIndex(value));
+            assertEquals(value, JBTHistogram.getUpperBound(value));
+        }
+    }
+
+    /**
+     * Test that each value is within the bounds of its bucket, and the
+     * bucket is within the precision of the value.
+     */
+    public void testValueWithinBucket() {
+
+        final Random random = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            final long value = (random.nextLong() >>> 1) >>> random.nextInt(Long.SIZE - 1);
+            final int index = JBTHistogram.getIndex(value);
+
+            final long upper = JBTHistogram.getUpperBound(index);
+            assertTrue(value + " above " + upper, value <= upper);
+            if (index > 0) {
+                final long lower = JBTHistogram.getUpperBound(index - 1);
+                assertTrue(value + " not above " + lower, value > lower);
+            }
+            assertTrue(value + " in bucket to " + upper,
+                    upper - value <= Math.max(0, value * PRECISION));
+        }
+    }
+
+    /**
+     * Test that the bucket boundaries follow on from each other.
+     */
+    public void testBucketsContiguous() {
+
+        final int last = JBTHistogram.getIndex(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, JBTHistogram.getUpperBound(last));
+
+        for (int index = 1; index <= last; index++) {
+            final long lower = JBTHistogram.getUpperBound(index - 1) + 1;
+            assertEquals(index, JBTHistogram.getIndex(lower));
+            assertEquals(index, JBTHistogram.getIndex(JBTHistogram.getUpperBound(index)));
+        }
+    }
+
+    /**
+     * Test the percentiles of a uniform range of values.
+     */
+    public void testPercentiles() {
+
+        final JBTHistogram histogram = new JBTHistogram();
+        for (int value = 1; value <= 10000; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(50005000, histogram.getSum());
+        assertEquals(5000.5, histogram.getMean(), 0.001);
+        assertEquals(10000, histogram.getMax());
+        assertEquals(5000, histogram.getValueAtPercentile(50), 5000 * PRECISION);
+        assertEquals(9900, histogram.getValueAtPercentile(99), 9900 * PRECISION);
+        assertEquals(10000, histogram.getValueAtPercentile(100));
+        assertEquals(1, histogram.getValueAtPercentile(0));
+    }
+
+    /**
+     * Test an empty histogram, and that negative values are counted as zero.
+     */
+    public void testEmptyAndNegative() {
+
+        final JBTHistogram histogram = new JBTHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0.0, histogram.getMean(), 0.0);
+
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getSum());
+        assertEquals(0, histogram.getValueAtPercentile(100));
+    }
+}
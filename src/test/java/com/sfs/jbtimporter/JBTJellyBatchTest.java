@@ -0,0 +1,161 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTJellyBatchTest.
+ */
+public class JBTJellyBatchTest extends TestCase {
+
+    /** The root start tag of the scripts. */
+    private static final String ROOT = "<JiraJelly xmlns:jira=\"jelly:com.atlassian.jira"
+            + ".jelly.enterprise.JiraTagLib\" xmlns:j=\"jelly:core\">";
+
+    /**
+     * Creates the script of an issue.
+     *
+     * @param summary the summary of the issue
+     * @return the script
+     */
+    private static String script(final String summary) {
+        return "<?xml version=\"1.0\"?>\n" + ROOT + "\n  <jira:CreateIssue summary=\""
+                + summary + "\"/>\n</JiraJelly>\n";
+    }
+
+    /**
+     * Creates the scripts of the issues, keyed by issue id.
+     *
+     * @param ids the issue ids
+     * @return the scripts
+     */
+    private static Map<String, String> scripts(final String... ids) {
+        final Map<String, String> scripts = new LinkedHashMap<String, String>();
+        for (String id : ids) {
+            scripts.put(id, script("Issue " + id));
+        }
+        return scripts;
+    }
+
+    /**
+     * Test that the scripts are joined under the root of the first script,
+     * with each body surrounded by its markers.
+     */
+    public void testJoin() {
+
+        final String batch = JBTJellyBatch.join(scripts("1", "2"));
+
+        assertEquals("<?xml version=\"1.0\"?>\n" + ROOT 
+                + "[[JBT-START:1]]\n  <jira:CreateIssue summary=\"Issue 1\"/>\n"
+                + "[[JBT-END:1]][[JBT-START:2]]\n"
+                + "  <jira:CreateIssue summary=\"Issue 2\"/>\n"
+                + "[[JBT-END:2]]</JiraJelly>\n", batch);
+    }
+
+    /**
+     * Test that ids are escaped in the markers.
+     */
+    public void testJoinEscapesIds() {
+
+        final Map<String, String> scripts = new LinkedHashMap<String, String>();
+        scripts.put("a<b", script("One"));
+
+        assertTrue(JBTJellyBatch.join(scripts).contains("[[JBT-START:a&lt;b]]"));
+    }
+
+    /**
+     * Test that scripts with different root elements are not joined.
+     */
+    public void testJoinDifferentRoots() {
+
+        final Map<String, String> scripts = scripts("1");
+        scripts.put("2", "<JiraJelly xmlns:jira=\"jelly:com.atlassian.jira.jelly"
+                + ".JiraTagLib\">\n  <jira:CreateIssue/>\n</JiraJelly>");
+
+        assertNull(JBTJellyBatch.join(scripts));
+    }
+
+    /**
+     * Test that a script without a root element is not joined.
+     */
+    public void testJoinWithoutRoot() {
+
+        final Map<String, String> scripts = scripts("1");
+        scripts.put("2", "<?xml version=\"1.0\"?> not a script");
+
+        assertNull(JBTJellyBatch.join(scripts));
+    }
+
+    /**
+     * Test splitting the output of a batch that completed.
+     */
+    public void testSplit() {
+
+        final String result = "\n[[JBT-START:1]]\n[[JBT-END:1]]\n"
+                + "[[JBT-START:2]]created BT-2[[JBT-END:2]]\n";
+
+        final Map<String, String> outputs = JBTJellyBatch.split(result, scripts("1", "2"));
+
+        assertEquals(2, outputs.size());
+        assertEquals("\n", outputs.get("1"));
+        assertEquals("created BT-2", outputs.get("2"));
+    }
+
+    /**
+     * Test that only the issues a failed batch completed are returned.
+     */
+    public void testSplitPartial() {
+
+        final String result = "[[JBT-START:1]][[JBT-END:1]][[JBT-START:2]]"
+                + "Unable to make temporary copy of file";
+
+        final Map<String, String> outputs = JBTJellyBatch.split(result, 
+                scripts("1", "2", "3"));
+
+        assertEquals(1, outputs.size());
+        assertEquals("", outputs.get("1"));
+        assertFalse(outputs.containsKey("2"));
+        assertFalse(outputs.containsKey("3"));
+    }
+
+    /**
+     * Test that no issues are returned from an exception without markers.
+     */
+    public void testSplitException() {
+
+        final Map<String, String> outputs = JBTJellyBatch.split(
+                "org.apache.commons.jelly.JellyTagException: failed", scripts("1", "2"));
+
+        assertTrue(outputs.isEmpty());
+    }
+
+    /**
+     * Test that the markers of an issue are only found in order.
+     */
+    public void testSplitOutOfOrder() {
+
+        final String result = "[[JBT-START:2]][[JBT-END:2]][[JBT-START:1]][[JBT-END:1]]";
+
+        final Map<String, String> outputs = JBTJellyBatch.split(result, scripts("1", "2"));
+
+        assertEquals(1, outputs.size());
+        assertTrue(outputs.containsKey("1"));
+    }
+}
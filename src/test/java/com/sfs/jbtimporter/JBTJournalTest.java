@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTJournalTest.
+ */
+public class JBTJournalTest extends TestCase {
+
+    /** The journal file. */
+    private File file;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        this.file = File.createTempFile("jbt-journal", ".journal");
+        this.file.delete();
+    }
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        this.file.delete();
+    }
+
+    /**
+     * Write the records to a new journal and load it into another.
+     *
+     * @param records the pairs of id and outcome
+     * @return the loaded journal
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    private JBTJournal writeAndLoad(final String... records) throws IOException {
+
+        final JBTJournal journal = new JBTJournal(this.file);
+        journal.open(true);
+        for (int i = 0; i < records.length; i += 2) {
+            journal.record(records[i], records[i + 1]);
+        }
+        journal.close();
+
+        final JBTJournal loaded = new JBTJournal(this.file);
+        loaded.load();
+        return loaded;
+    }
+
+    /**
+     * Test that the issues created, or that may have been, are complete,
+     * and those that failed are not.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testLoad() throws IOException {
+
+        final JBTJournal journal = this.writeAndLoad(
+                "1", JBTJournal.SUCCESS,
+                "2", JBTResultType.ATTACHMENT_FAILURE.name(),
+                "3", JBTResultType.TRANSITION_FAILURE.name(),
+                "4", JBTResultType.TRANSPORT_FAILURE.name(),
+                "5", JBTResultType.SCRIPT_EXCEPTION.name(),
+                "6", JBTJournal.ERROR,
+                "7", JBTResultType.UNCONFIRMED.name());
+
+        assertTrue(journal.isComplete("1"));
+        assertTrue(journal.isComplete("2"));
+        assertTrue(journal.isComplete("3"));
+        assertFalse(journal.isComplete("4"));
+        assertFalse(journal.isComplete("5"));
+        assertFalse(journal.isComplete("6"));
+        assertTrue(journal.isComplete("7"));
+        assertFalse(journal.isComplete("8"));
+    }
+
+    /**
+     * Test that the last outcome recorded for an issue takes precedence.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testLastOutcome() throws IOException {
+
+        final JBTJournal journal = this.writeAndLoad(
+                "1", JBTJournal.ERROR, "1", JBTJournal.SUCCESS,
+                "2", JBTJournal.SUCCESS, "2", JBTJournal.ERROR);
+
+        assertTrue(journal.isComplete("1"));
+        assertFalse(journal.isComplete("2"));
+    }
+
+    /**
+     * Test that a new journal replaces the previous one, and a resumed
+     * journal adds to it.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testAppend() throws IOException {
+
+        this.writeAndLoad("1", JBTJournal.SUCCESS);
+
+        final JBTJournal resumed = new JBTJournal(this.file);
+        resumed.open(true);
+        resumed.record("2", JBTJournal.SUCCESS);
+        resumed.close();
+        resumed.load();
+        assertTrue(resumed.isComplete("1"));
+        assertTrue(resumed.isComplete("2"));
+
+        final JBTJournal restarted = new JBTJournal(this.file);
+        restarted.open(false);
+        restarted.close();
+        restarted.load();
+        assertFalse(restarted.isComplete("1"));
+    }
+
+    /**
+     * Test that an id holding tabs or line breaks is kept to one record.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testIdCleaned() throws IOException {
+
+        final JBTJournal journal = this.writeAndLoad(
+                "a\tb\nc", JBTJournal.SUCCESS, "d", JBTJournal.SUCCESS);
+
+        assertTrue(journal.isComplete("a b c"));
+        assertTrue(journal.isComplete("d"));
+    }
+
+    /**
+     * Test that a missing journal loads as empty.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testLoadMissing() throws IOException {
+
+        final JBTJournal journal = new JBTJournal(this.file);
+        journal.load();
+
+        assertFalse(journal.isComplete("1"));
+    }
+
+    /**
+     * Test that recording to a journal that is not open fails.
+     */
+    public void testRecordNotOpen() {
+
+        try {
+            new JBTJournal(this.file).record("1", JBTJournal.SUCCESS);
+            fail("Recorded to a journal that is not open");
+        } catch (IOException ioe) {
+            // Expected
+        }
+    }
+}
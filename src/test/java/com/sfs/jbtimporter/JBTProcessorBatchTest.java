@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTProcessorBatchTest.
+ * 
+ * Imports batches through a transport that answers with the pages of the
+ * Jelly runner, so the output of a batch is scanned, reformatted and split
+ * as it is from Jira.
+ */
+public class JBTProcessorBatchTest extends TestCase {
+
+    /** The jbt processor. */
+    private JBTProcessor jbt;
+
+    /** The page the transport answers with. */
+    private String page;
+
+    /** The number of requests sent. */
+    private int requests;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        this.jbt = new JBTProcessor("admin", "admin", "http://localhost:8080/",
+                System.getProperty("java.io.tmpdir"), null, false);
+        this.jbt.setTransport(new JBTTransport() {
+            public JBTResponse send(final JBTRequest request,
+                    final JBTResponseScanner scanner) throws IOException {
+                requests++;
+                return scanner.scan(new StringReader(page));
+            }
+
+            public CompletableFuture<JBTResponse> sendAsync(final JBTRequest request,
+                    final JBTResponseScanner scanner) {
+                try {
+                    return CompletableFuture.completedFuture(send(request, scanner));
+                } catch (IOException ioe) {
+                    return CompletableFuture.failedFuture(ioe);
+                }
+            }
+
+            public boolean isAsync() {
+                return false;
+            }
+
+            public void shutdown() {
+                // Nothing to release
+            }
+        });
+    }
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        this.jbt.shutdown();
+    }
+
+    /**
+     * Gets the page with the output of a script.
+     *
+     * @param output the output
+     * @return the page
+     */
+    private static String outputPage(final String output) {
+        return "<html><body><form><input type=\"hidden\" name=\"atl_token\" "
+                + "value=\"KEY\"><textarea name=\"script\"></textarea></form><pre>"
+                + "&lt;JiraJelly xmlns:jira=&quot;jelly:com.atlassian.jira.jelly."
+                + "enterprise.JiraTagLib&quot; xmlns:j=&quot;jelly:core&quot;&gt;"
+                + output + "&lt;/JiraJelly&gt;</pre></body></html>";
+    }
+
+    /**
+     * Creates the scripts of the issues, keyed by issue id.
+     *
+     * @param count the number of issues
+     * @return the scripts
+     */
+    private static Map<String, String> scripts(final int count) {
+        final Map<String, String> scripts = new LinkedHashMap<String, String>();
+        for (int i = 1; i <= count; i++) {
+            scripts.put(String.valueOf(i), "<JiraJelly xmlns:jira=\"jelly:com.atlassian"
+                    + ".jira.jelly.enterprise.JiraTagLib\"><jira:CreateIssue summary=\""
+                    + i + "\"/></JiraJelly>");
+        }
+        return scripts;
+    }
+
+    /**
+     * Test that a batch that ran is a success for every issue, although its
+     * output is longer than that of a single issue.
+     */
+    public void testBatchSuccess() {
+
+        final StringBuilder output = new StringBuilder("\n");
+        for (int i = 1; i <= 10; i++) {
+            output.append("[[JBT-START:" + i + "]]\n[[JBT-END:" + i + "]]\n");
+        }
+        this.page = outputPage(output.toString());
+
+        final Map<String, JBTImportResult> results = this.jbt.importXMLBatch("KEY",
+                scripts(10));
+
+        assertEquals(1, this.requests);
+        assertEquals(10, results.size());
+        for (JBTImportResult result : results.values()) {
+            assertEquals(JBTResultType.SUCCESS, result.getType());
+        }
+    }
+
+    /**
+     * Test that an issue reporting a failure within a batch is classified.
+     */
+    public void testBatchIssueFailure() {
+
+        this.page = outputPage("[[JBT-START:1]][[JBT-END:1]][[JBT-START:2]]"
+                + "Found workflow transition with name/id 'Resolve Issue' but that is "
+                + "not a valid workflow transition for the current state"
+                + "[[JBT-END:2]]");
+
+        final Map<String, JBTImportResult> results = this.jbt.importXMLBatch("KEY",
+                scripts(2));
+
+        assertEquals(JBTResultType.SUCCESS, results.get("1").getType());
+        assertEquals(JBTResultType.TRANSITION_FAILURE, results.get("2").getType());
+    }
+
+    /**
+     * Test that every issue of a batch that threw an exception is left
+     * unconfirmed, as any of them may have been created, and none is sent
+     * again.
+     */
+    public void testBatchScriptException() {
+
+        this.page = "<html><body><div class=\"errorArea\" id=\"scriptException\">"
+                + "org.apache.commons.jelly.JellyTagException: failed</div></body></html>";
+
+        final Map<String, JBTImportResult> results = this.jbt.importXMLBatch("KEY",
+                scripts(3));
+
+        assertEquals(1, this.requests);
+        assertEquals(3, results.size());
+        for (JBTImportResult result : results.values()) {
+            assertEquals(JBTResultType.UNCONFIRMED, result.getType());
+        }
+    }
+
+    /**
+     * Test that the issues a batch reported are classified, and those it
+     * stopped before reporting are left unconfirmed.
+     */
+    public void testBatchPartial() {
+
+        this.page = outputPage("[[JBT-START:1]][[JBT-END:1]][[JBT-START:2]]");
+
+        final Map<String, JBTImportResult> results = this.jbt.importXMLBatch("KEY",
+                scripts(3));
+
+        assertEquals(1, this.requests);
+        assertEquals(JBTResultType.SUCCESS, results.get("1").getType());
+        assertEquals(JBTResultType.UNCONFIRMED, results.get("2").getType());
+        assertEquals(JBTResultType.UNCONFIRMED, results.get("3").getType());
+    }
+
+    /**
+     * Test that a batch sent without waiting completes with the results of
+     * its issues, classified as they are when the batch is sent in turn.
+     *
+     * @throws Exception the exception
+     */
+    public void testBatchAsync() throws Exception {
+
+        this.page = outputPage("[[JBT-START:1]][[JBT-END:1]][[JBT-START:2]]");
+
+        final Map<String, JBTImportResult> results = this.jbt.importXMLBatchAsync(
+                "KEY", scripts(3)).get();
+
+        assertEquals(1, this.requests);
+        assertEquals(JBTResultType.SUCCESS, results.get("1").getType());
+        assertEquals(JBTResultType.UNCONFIRMED, results.get("2").getType());
+        assertEquals(JBTResultType.UNCONFIRMED, results.get("3").getType());
+    }
+
+    /**
+     * Test that scripts that cannot be joined are not sent.
+     */
+    public void testBatchNotJoined() {
+
+        final Map<String, String> scripts = scripts(1);
+        scripts.put("2", "not a script");
+
+        assertNull(this.jbt.importXMLBatch("KEY", scripts));
+        assertNull(this.jbt.importXMLBatchAsync("KEY", scripts));
+        assertEquals(0, this.requests);
+    }
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.EnumSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTResultClassifierTest.
+ */
+public class JBTResultClassifierTest extends TestCase {
+
+    /** The output of an attachment failure. */
+    private static final String ATTACHMENT = "JellyTagException: Unable to make "
+            + "temporary copy of file screenshot.png to the attachment directory.";
+
+    /** The output of a transition failure. */
+    private static final String TRANSITION = "Found workflow transition with name/id "
+            + "'Resolve Issue' but that is not a valid workflow transition for the "
+            + "current state of issue 'BT-1'.";
+
+    /** The rules file. */
+    private File file;
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#setUp()
+     */
+    protected void setUp() throws Exception {
+        this.file = File.createTempFile("jbt-rules", ".txt");
+    }
+
+    /* (non-Javadoc)
+     * @see junit.framework.TestCase#tearDown()
+     */
+    protected void tearDown() throws Exception {
+        this.file.delete();
+    }
+
+    /**
+     * Load a classifier from the rules.
+     *
+     * @param rules the lines of the rules file
+     * @return the result classifier
+     * @throws IOException Signals that an I/O exception has occurred.
+     * @throws JBTException the jBT exception
+     */
+    private JBTResultClassifier load(final String... rules)
+            throws IOException, JBTException {
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(this.file),
+                "UTF-8");
+        try {
+            for (String rule : rules) {
+                writer.write(rule + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        return JBTResultClassifier.load(this.file);
+    }
+
+    /**
+     * Test the default rules.
+     */
+    public void testDefault() {
+
+        final JBTResultClassifier classifier = JBTResultClassifier.getDefault();
+
+        assertEquals(EnumSet.of(JBTResultType.ATTACHMENT_FAILURE),
+                classifier.classify(ATTACHMENT));
+        assertEquals(EnumSet.of(JBTResultType.TRANSITION_FAILURE),
+                classifier.classify(TRANSITION));
+        assertTrue(classifier.classify("\n").isEmpty());
+        assertTrue(classifier.classify(null).isEmpty());
+    }
+
+    /**
+     * Test that every failure in the text is found, and the primary type
+     * follows the rule order.
+     */
+    public void testPrimaryType() {
+
+        final JBTResultClassifier classifier = JBTResultClassifier.getDefault();
+
+        final Set<JBTResultType> matched = classifier.classify(
+                TRANSITION + "\n" + ATTACHMENT);
+        assertEquals(EnumSet.of(JBTResultType.ATTACHMENT_FAILURE,
+                JBTResultType.TRANSITION_FAILURE), matched);
+        assertEquals(JBTResultType.ATTACHMENT_FAILURE, classifier.getPrimaryType(matched));
+        assertNull(classifier.getPrimaryType(EnumSet.noneOf(JBTResultType.class)));
+    }
+
+    /**
+     * Test that loaded rules are added to the default rules.
+     *
+     * @throws Exception the exception
+     */
+    public void testLoadKeepsDefaults() throws Exception {
+
+        final JBTResultClassifier classifier = this.load(
+                "# Custom rules", "", "SCRIPT_EXCEPTION=Could not find project");
+
+        assertEquals(EnumSet.of(JBTResultType.SCRIPT_EXCEPTION),
+                classifier.classify("Could not find project BT"));
+        assertEquals(EnumSet.of(JBTResultType.ATTACHMENT_FAILURE),
+                classifier.classify(ATTACHMENT));
+        assertEquals(EnumSet.of(JBTResultType.TRANSITION_FAILURE),
+                classifier.classify(TRANSITION));
+    }
+
+    /**
+     * Test that loaded rules take precedence over the default rules.
+     *
+     * @throws Exception the exception
+     */
+    public void testLoadPrecedence() throws Exception {
+
+        final JBTResultClassifier classifier = this.load(
+                "SCRIPT_EXCEPTION=Unable to make temporary copy of file");
+
+        final Set<JBTResultType> matched = classifier.classify(ATTACHMENT);
+        assertEquals(JBTResultType.SCRIPT_EXCEPTION, classifier.getPrimaryType(matched));
+    }
+
+    /**
+     * Test that rules are matched as text, not as patterns.
+     *
+     * @throws Exception the exception
+     */
+    public void testLoadLiteral() throws Exception {
+
+        final JBTResultClassifier classifier = this.load("SCRIPT_EXCEPTION=a.b(c)");
+
+        assertTrue(classifier.classify("axb(c)").isEmpty());
+        assertEquals(EnumSet.of(JBTResultType.SCRIPT_EXCEPTION),
+                classifier.classify("x a.b(c) y"));
+    }
+
+    /**
+     * Test that invalid rules are rejected.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testLoadInvalid() throws IOException {
+
+        final String[] invalid = {"no equals sign", "=no type", "SCRIPT_EXCEPTION=",
+                "NOT_A_TYPE=message"};
+        for (String rule : invalid) {
+            try {
+                this.load(rule);
+                fail("Loaded the invalid rule: " + rule);
+            } catch (JBTException jbte) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright 2010 David Harrison.
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ * 
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ ******************************************************************************/
+package com.sfs.jbtimporter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * The Class JBTScriptRequestEntityTest.
+ */
+public class JBTScriptRequestEntityTest extends TestCase {
+
+    /**
+     * Gets the form parameters preceding the script.
+     *
+     * @return the parameters
+     */
+    private static Map<String, String> parameters() {
+        final Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("atl_token", "a b&c");
+        return parameters;
+    }
+
+    /**
+     * Gets a script longer than the copy buffer, with characters that are
+     * URL encoded and characters outside the form character set.
+     *
+     * @return the script
+     */
+    private static String script() {
+        final StringBuilder script = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            script.append("<jira:CreateIssue summary=\"caf\u00e9 \u20ac \ud83d\ude00\"/>\n");
+        }
+        return script.toString();
+    }
+
+    /**
+     * Test that the length of a script held in memory is known before it is
+     * written, and is the length of the body written.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testContentLength() throws IOException {
+
+        final String script = script();
+        final JBTScriptRequestEntity entity = new JBTScriptRequestEntity(
+                new JBTRequest("http://localhost/", parameters(), "script", script,
+                        null));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long length = entity.getContentLength();
+        entity.writeRequest(out);
+
+        final String expected = "atl_token=a+b%26c&script="
+                + URLEncoder.encode(script, JBTRequest.FORM_CHARSET);
+        assertEquals(expected, out.toString("US-ASCII"));
+        assertEquals(out.size(), length);
+        assertEquals(out.size(), entity.getBytesWritten());
+    }
+
+    /**
+     * Test that a script read from a file is sent chunked, and its body
+     * matches that of the script held in memory.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testFileContentLength() throws IOException {
+
+        final String script = script();
+        final File file = File.createTempFile("jbt", ".xml");
+        try {
+            final OutputStream fileOut = new FileOutputStream(file);
+            try {
+                fileOut.write(script.getBytes("UTF-8"));
+            } finally {
+                fileOut.close();
+            }
+            final JBTScriptRequestEntity entity = new JBTScriptRequestEntity(
+                    new JBTRequest("http://localhost/", parameters(), "script", null,
+                            file));
+            final JBTScriptRequestEntity inMemory = new JBTScriptRequestEntity(
+                    new JBTRequest("http://localhost/", parameters(), "script", script,
+                            null));
+
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            entity.writeRequest(out);
+            final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            inMemory.writeRequest(expected);
+
+            assertEquals(-1, entity.getContentLength());
+            assertEquals(expected.toString("US-ASCII"), out.toString("US-ASCII"));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test the length of a form without a script.
+     *
+     * @throws IOException Signals that an I/O exception has occurred.
+     */
+    public void testNoScriptContentLength() throws IOException {
+
+        final JBTScriptRequestEntity entity = new JBTScriptRequestEntity(
+                new JBTRequest("http://localhost/", parameters()));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        entity.writeRequest(out);
+
+        assertEquals(out.size(), entity.getContentLength());
+    }
+}